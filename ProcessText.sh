@@ -29,5 +29,10 @@ OPT="${OPT} --useSentenceBreaker true"
 OPT="${OPT} --abbreviationPostProcessingArgs 1|1|false"
 OPT="${OPT} --consistencyPostProcessingArgs 10|1"
 OPT="${OPT} --abbreviationSource ncbi.taggerOne.abbreviation.Ab3PAbbreviationSource|${AB3P_COMMAND}|${AB3P_DIR}|${TEMP}|${Ab3P_TIMEOUT}"
+# To send documents to 4 persistent workers instead, add the worker command and count. identify_abbr as distributed reads one file and exits, so
+# the worker command must be a build of it that stays resident and loops over stdin (see WorkerProcessPool); otherwise nothing is saved.
+# OPT="${OPT} --abbreviationSource ncbi.taggerOne.abbreviation.Ab3PAbbreviationSource|${AB3P_COMMAND}|${AB3P_DIR}|${TEMP}|${Ab3P_TIMEOUT}|${AB3P_WORKER_COMMAND}|4"
+# To find abbreviations in-process instead of running Ab3P, use:
+# OPT="${OPT} --abbreviationSource ncbi.taggerOne.abbreviation.SchwartzHearstAbbreviationSource"
 echo ${OPT}
 java ${PR} -Xmx50G -Xms24G -cp ${CP} ncbi.taggerOne.ProcessText ${OPT}
@@ -0,0 +1,78 @@
+package ncbi.taggerOne;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
+import ncbi.taggerOne.model.recognition.RecognitionModelPredictor;
+import ncbi.taggerOne.processing.textInstance.Annotator;
+import ncbi.taggerOne.processing.textInstance.TextInstanceProcessingPipeline;
+import ncbi.taggerOne.processing.textInstance.TextInstanceProcessor;
+import ncbi.taggerOne.util.BinaryModelFormat;
+
+/*
+ * Converts a trained model to the binary model format, optionally compiling it first so that ProcessText does not need to compile it at startup
+ */
+public class ConvertModel {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConvertModel.class);
+
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		OptionParser parser = new OptionParser();
+		OptionSpec<String> modelInputFilename = parser.accepts("modelInputFilename").withRequiredArg().ofType(String.class).required();
+		OptionSpec<String> modelOutputFilename = parser.accepts("modelOutputFilename").withRequiredArg().ofType(String.class).required();
+		OptionSpec<Boolean> compileModel = parser.accepts("compileModel").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
+		OptionSpec<String> recognitionPrecision = parser.accepts("recognitionPrecision").withRequiredArg().ofType(String.class).defaultsTo("double");
+		OptionSpec<Double> maxRecognitionScoreError = parser.accepts("maxRecognitionScoreError").withRequiredArg().ofType(Double.class).defaultsTo(0.01);
+		OptionSet options = parser.parse(args);
+		logger.info("Command line options:");
+		for (OptionSpec<?> spec : options.specs()) {
+			StringBuilder str = new StringBuilder();
+			List<String> optionNames = spec.options();
+			if (optionNames.size() == 1) {
+				str.append(optionNames.get(0));
+			} else {
+				str.append(optionNames.toString());
+			}
+			str.append(" = ");
+			List<?> values = spec.values(options);
+			if (values.size() == 1) {
+				str.append(values.get(0).toString());
+			} else {
+				str.append(values.toString());
+			}
+			logger.info("\t" + str.toString());
+		}
+
+		logger.info("Loading model");
+		long start = System.currentTimeMillis();
+		TextInstanceProcessingPipeline annotationPipeline = (TextInstanceProcessingPipeline) BinaryModelFormat.readModel(options.valueOf(modelInputFilename));
+		logger.info("Elapsed = " + (System.currentTimeMillis() - start));
+
+		if (options.valueOf(compileModel)) {
+			logger.info("Compiling model");
+			start = System.currentTimeMillis();
+			List<TextInstanceProcessor> processors = new ArrayList<TextInstanceProcessor>(annotationPipeline.getProcessors());
+			Annotator originalAnnotator = (Annotator) processors.get(5);
+			RecognitionModelPredictor recognitionModel = ProcessText.compileRecognitionModel(originalAnnotator.getRecognitionModel(), options.valueOf(recognitionPrecision), annotationPipeline.getProcessors(), options.valueOf(maxRecognitionScoreError));
+			Map<String, NormalizationModelPredictor> normalizationPredictorModels = ProcessText.compileNormalizationModels(originalAnnotator.getNormalizationModels());
+			processors.set(5, new Annotator(originalAnnotator.getLexicon(), recognitionModel, normalizationPredictorModels));
+			ProcessText.useSortedSparseVectors(processors);
+			annotationPipeline = new TextInstanceProcessingPipeline(processors);
+			logger.info("Elapsed = " + (System.currentTimeMillis() - start));
+		}
+
+		logger.info("Writing model");
+		start = System.currentTimeMillis();
+		BinaryModelFormat.write(annotationPipeline, options.valueOf(modelOutputFilename));
+		logger.info("Elapsed = " + (System.currentTimeMillis() - start));
+	}
+}
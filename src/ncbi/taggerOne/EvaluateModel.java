@@ -1,8 +1,6 @@
 package ncbi.taggerOne;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -10,7 +8,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +53,7 @@ import ncbi.taggerOne.processing.textInstance.TextInstanceProcessingPipeline;
 import ncbi.taggerOne.processing.textInstance.TextInstanceProcessor;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.AbbreviationResolver;
+import ncbi.taggerOne.util.BinaryModelFormat;
 import ncbi.taggerOne.util.Dictionary;
 import ncbi.util.Profiler;
 import ncbi.util.ProgressReporter;
@@ -77,6 +75,7 @@ public class EvaluateModel {
 		OptionSpec<Boolean> usefalseModifierRemoverPostProcessing = parser.accepts("usefalseModifierRemoverPostProcessing").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
 		OptionSpec<String> abbreviationSources = parser.accepts("abbreviationSource").withRequiredArg().ofType(String.class);
 		OptionSpec<String> analysisFilename = parser.accepts("analysisFilename").withRequiredArg().ofType(String.class);
+		OptionSpec<Integer> threads = parser.accepts("threads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
 		// TODO Add options for post-processing
 		OptionSet options = parser.parse(args);
 		// TODO Validate
@@ -102,9 +101,7 @@ public class EvaluateModel {
 		// Load the annotation pipeline
 		logger.info("Loading model");
 		long start = System.currentTimeMillis();
-		ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(options.valueOf(modelInputFilename))));
-		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) ois.readObject();
-		ois.close();
+		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) BinaryModelFormat.readModel(options.valueOf(modelInputFilename));
 		List<TextInstanceProcessor> originalProcessors = originalAnnotationPipeline.getProcessors();
 		AbbreviationResolverProcessor abbreviationResolverProcessor = (AbbreviationResolverProcessor) originalProcessors.get(3);
 		AbbreviationResolver abbreviationResolver = abbreviationResolverProcessor.getAbbreviationResolver();
@@ -157,6 +154,7 @@ public class EvaluateModel {
 			}
 			Annotator annotator = new Annotator(lexicon, recognitionModel, normalizationPredictorModels);
 			processors.set(6, annotator);
+			ProcessText.useSortedSparseVectors(processors);
 			logger.info("Elapsed = " + (System.currentTimeMillis() - start));
 		}
 		TextInstanceProcessingPipeline annotationPipeline = new TextInstanceProcessingPipeline(processors);
@@ -194,6 +192,7 @@ public class EvaluateModel {
 		postProcessors.add(new FilterByMentionText("death", "psychiatric", "TNF", "CIN", "CPO", "LV", "l-sotalol", "P9605", "ZnSO", "GEM-P", "PKCa KO", "SHR", "SPH", "CC", "Gemfibrozil-lovastatin", "gemfibrozil-lovastatin",
 				"sterile leukocyturia", "LF", "AgSD cream", "FDA", "PTRA", "Lactoferrin", "lactoferrin"));
 		TextInstanceProcessingPipeline postProcessingPipeline = new TextInstanceProcessingPipeline(new ProgressReporter("PostProcessingPipeline", 10), postProcessors);
+		postProcessingPipeline.setThreads(options.valueOf(threads));
 		postProcessingPipeline.processAll(evaluationInstances);
 
 		if (options.has(coordinationPostProcessingArgs)) {
@@ -276,26 +275,28 @@ public class EvaluateModel {
 
 		private static final long serialVersionUID = 1L;
 
-		private String timerName;
 		private TextInstanceProcessor wrappedProcessor;
+		private Profiler.Timer processTimer;
+		private Profiler.Timer processAllTimer;
 
 		public ProcessingTimer(String timerName, TextInstanceProcessor wrappedProcessor) {
-			this.timerName = timerName;
 			this.wrappedProcessor = wrappedProcessor;
+			this.processTimer = Profiler.timer(timerName + ".process()");
+			this.processAllTimer = Profiler.timer(timerName + ".processAll()");
 		}
 
 		@Override
 		public void process(TextInstance input) {
-			Profiler.start(timerName + ".process()");
+			processTimer.start();
 			wrappedProcessor.process(input);
-			Profiler.stop(timerName + ".process()");
+			processTimer.stop();
 		}
 
 		@Override
 		public void processAll(List<TextInstance> input) {
-			Profiler.start(timerName + ".processAll()");
+			processAllTimer.start();
 			wrappedProcessor.processAll(input);
-			Profiler.stop(timerName + ".processAll()");
+			processAllTimer.stop();
 		}
 
 	}
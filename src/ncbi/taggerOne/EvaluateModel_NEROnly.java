@@ -1,8 +1,6 @@
 package ncbi.taggerOne;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -10,7 +8,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +47,7 @@ import ncbi.taggerOne.processing.textInstance.TextInstanceProcessingPipeline;
 import ncbi.taggerOne.processing.textInstance.TextInstanceProcessor;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.AbbreviationResolver;
+import ncbi.taggerOne.util.BinaryModelFormat;
 import ncbi.taggerOne.util.Dictionary;
 import ncbi.util.Profiler;
 import ncbi.util.ProgressReporter;
@@ -94,9 +92,7 @@ public class EvaluateModel_NEROnly {
 		// Load the annotation pipeline
 		logger.info("Loading model");
 		long start = System.currentTimeMillis();
-		ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(options.valueOf(modelInputFilename))));
-		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) ois.readObject();
-		ois.close();
+		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) BinaryModelFormat.readModel(options.valueOf(modelInputFilename));
 		List<TextInstanceProcessor> originalProcessors = originalAnnotationPipeline.getProcessors();
 		AbbreviationResolverProcessor abbreviationResolverProcessor = (AbbreviationResolverProcessor) originalProcessors.get(3);
 		AbbreviationResolver abbreviationResolver = abbreviationResolverProcessor.getAbbreviationResolver();
@@ -239,26 +235,28 @@ public class EvaluateModel_NEROnly {
 
 		private static final long serialVersionUID = 1L;
 
-		private String timerName;
 		private TextInstanceProcessor wrappedProcessor;
+		private Profiler.Timer processTimer;
+		private Profiler.Timer processAllTimer;
 
 		public ProcessingTimer(String timerName, TextInstanceProcessor wrappedProcessor) {
-			this.timerName = timerName;
 			this.wrappedProcessor = wrappedProcessor;
+			this.processTimer = Profiler.timer(timerName + ".process()");
+			this.processAllTimer = Profiler.timer(timerName + ".processAll()");
 		}
 
 		@Override
 		public void process(TextInstance input) {
-			Profiler.start(timerName + ".process()");
+			processTimer.start();
 			wrappedProcessor.process(input);
-			Profiler.stop(timerName + ".process()");
+			processTimer.stop();
 		}
 
 		@Override
 		public void processAll(List<TextInstance> input) {
-			Profiler.start(timerName + ".processAll()");
+			processAllTimer.start();
 			wrappedProcessor.processAll(input);
-			Profiler.stop(timerName + ".processAll()");
+			processAllTimer.stop();
 		}
 
 	}
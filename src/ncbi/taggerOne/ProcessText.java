@@ -2,11 +2,11 @@ package ncbi.taggerOne;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,7 +16,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -38,11 +37,19 @@ import ncbi.taggerOne.abbreviation.AbbreviationSourceProcessor;
 import ncbi.taggerOne.lexicon.Lexicon;
 import ncbi.taggerOne.model.normalization.AveragedNormalizationModel;
 import ncbi.taggerOne.model.normalization.CachedNormalizationModel;
+import ncbi.taggerOne.model.normalization.CompiledNormalizationModel;
 import ncbi.taggerOne.model.normalization.NormalizationModel;
 import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
+import ncbi.taggerOne.model.recognition.CompiledRecognitionModel;
+import ncbi.taggerOne.model.recognition.RecognitionModel;
 import ncbi.taggerOne.model.recognition.RecognitionModelPredictor;
 import ncbi.taggerOne.processing.SentenceBreaker;
 import ncbi.taggerOne.processing.analysis.OutputAnalysisProcessor;
+import ncbi.taggerOne.processing.features.CombinedPatternFeatureProcessor;
+import ncbi.taggerOne.processing.features.token.MultiCharNGramFeatureProcessor;
+import ncbi.taggerOne.processing.mentionName.MentionNameProcessingPipeline;
+import ncbi.taggerOne.processing.mentionName.MentionNameProcessor;
+import ncbi.taggerOne.processing.mentionName.TokenListToWeightedVectorConverter;
 import ncbi.taggerOne.processing.postProcessing.AbbreviationPostProcessing;
 import ncbi.taggerOne.processing.postProcessing.ConsistencyPostProcessing;
 import ncbi.taggerOne.processing.postProcessing.CoordinationPostProcessor;
@@ -50,6 +57,7 @@ import ncbi.taggerOne.processing.postProcessing.FilterByMentionText;
 import ncbi.taggerOne.processing.postProcessing.FalseModifierRemover;
 import ncbi.taggerOne.processing.textInstance.AbbreviationResolverProcessor;
 import ncbi.taggerOne.processing.textInstance.Annotator;
+import ncbi.taggerOne.processing.textInstance.FeatureInstantiator;
 import ncbi.taggerOne.processing.textInstance.PredictedStatesToAnnotationConverter;
 import ncbi.taggerOne.processing.textInstance.SegmentMentionProcessor;
 import ncbi.taggerOne.processing.textInstance.TextInstanceProcessingPipeline;
@@ -58,13 +66,25 @@ import ncbi.taggerOne.types.AnnotatedSegment;
 import ncbi.taggerOne.types.Entity;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.AbbreviationResolver;
+import ncbi.taggerOne.util.BinaryModelFormat;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.RankedList;
+import ncbi.taggerOne.util.vector.SortedSparseVector;
 import ncbi.util.Profiler;
+import ncbi.util.StreamingProcessor;
 
 public class ProcessText {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProcessText.class);
 
+	// Sentences used to compare the scores of a reduced precision recognition model with the double precision model
+	private static final String[] RECOGNITION_CHECK_SAMPLE = { //
+			"Mutations in the cystic fibrosis transmembrane conductance regulator (CFTR) gene cause cystic fibrosis.", //
+			"Treatment with 5 mg/kg cisplatin induced acute renal failure and hepatotoxicity in 12 of 40 rats (30%).", //
+			"Patients with type 2 diabetes mellitus and Alzheimer's disease were given metformin, aspirin or placebo.", //
+			"BRCA1 and BRCA2 carriers have an increased risk of breast and ovarian cancer, but not of colorectal adenoma.", //
+			"The IL-2 receptor alpha-chain was expressed on CD4+ T cells after exposure to lipopolysaccharide (LPS)." };
+
 	public static void main(String[] args) throws IOException, ClassNotFoundException, XMLStreamException {
 		OptionParser parser = new OptionParser();
 		// Input data
@@ -73,12 +93,23 @@ public class ProcessText {
 		OptionSpec<String> outputFilename = parser.accepts("outputFilename").withRequiredArg().ofType(String.class).required();
 		OptionSpec<String> modelInputFilename = parser.accepts("modelInputFilename").withRequiredArg().ofType(String.class).required();
 		OptionSpec<Boolean> compileModel = parser.accepts("compileModel").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
+		OptionSpec<String> recognitionPrecision = parser.accepts("recognitionPrecision").withRequiredArg().ofType(String.class).defaultsTo("double");
+		OptionSpec<Double> maxRecognitionScoreError = parser.accepts("maxRecognitionScoreError").withRequiredArg().ofType(Double.class).defaultsTo(0.01);
 		OptionSpec<Boolean> useSentenceBreaker = parser.accepts("useSentenceBreaker").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
 		OptionSpec<String> coordinationPostProcessingArgs = parser.accepts("coordinationPostProcessingArgs").withRequiredArg().ofType(String.class);
 		OptionSpec<String> consistencyPostProcessingArgs = parser.accepts("consistencyPostProcessingArgs").withRequiredArg().ofType(String.class);
 		OptionSpec<String> abbreviationPostProcessingArgs = parser.accepts("abbreviationPostProcessingArgs").withRequiredArg().ofType(String.class);
 		OptionSpec<Boolean> usefalseModifierRemoverPostProcessing = parser.accepts("usefalseModifierRemoverPostProcessing").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
 		OptionSpec<String> abbreviationSources = parser.accepts("abbreviationSource").withRequiredArg().ofType(String.class);
+		OptionSpec<Integer> threads = parser.accepts("threads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+		OptionSpec<Integer> maxDocumentsInFlight = parser.accepts("maxDocumentsInFlight").withRequiredArg().ofType(Integer.class).defaultsTo(100);
+		OptionSpec<Integer> nBest = parser.accepts("nBest").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+		OptionSpec<Boolean> arrayDecoder = parser.accepts("arrayDecoder").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
+		OptionSpec<Long> normalizationCacheMaxBytes = parser.accepts("normalizationCacheMaxBytes").withRequiredArg().ofType(Long.class).defaultsTo(0L);
+		OptionSpec<Boolean> combinePatternFeatures = parser.accepts("combinePatternFeatures").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
+		OptionSpec<Boolean> combineCharNGramFeatures = parser.accepts("combineCharNGramFeatures").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
+		OptionSpec<Integer> featureCacheSize = parser.accepts("featureCacheSize").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+		OptionSpec<Long> featureCacheMaxBytes = parser.accepts("featureCacheMaxBytes").withRequiredArg().ofType(Long.class).defaultsTo(0L);
 		// TODO Add options for post-processing
 		OptionSet options = parser.parse(args);
 		// TODO Validate
@@ -104,9 +135,7 @@ public class ProcessText {
 		// Load the annotation pipeline
 		logger.info("Loading model");
 		long start = System.currentTimeMillis();
-		ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(options.valueOf(modelInputFilename))));
-		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) ois.readObject();
-		ois.close();
+		TextInstanceProcessingPipeline originalAnnotationPipeline = (TextInstanceProcessingPipeline) BinaryModelFormat.readModel(options.valueOf(modelInputFilename));
 		List<TextInstanceProcessor> originalProcessors = originalAnnotationPipeline.getProcessors();
 		AbbreviationResolverProcessor abbreviationResolverProcessor = (AbbreviationResolverProcessor) originalProcessors.get(3);
 		AbbreviationResolver abbreviationResolver = abbreviationResolverProcessor.getAbbreviationResolver();
@@ -139,29 +168,38 @@ public class ProcessText {
 		logger.info("Elapsed = " + (System.currentTimeMillis() - start));
 
 		// Compile model
+		Annotator annotator = originalAnnotator;
 		if (options.valueOf(compileModel)) {
 			logger.info("Compiling model");
-			RecognitionModelPredictor recognitionModel = originalAnnotator.getRecognitionModel().compile();
-			normalizationPredictorModels = new HashMap<String, NormalizationModelPredictor>();
-			for (String entityType : originalNormalizationPredictorModels.keySet()) {
-				NormalizationModelPredictor originalPredictor = originalNormalizationPredictorModels.get(entityType);
-				int maxCacheSize = ((CachedNormalizationModel) originalPredictor).getMaxCacheSize();
-				NormalizationModelPredictor wrappedPredictor = ((CachedNormalizationModel) originalPredictor).getWrappedPredictor();
-				if (wrappedPredictor instanceof AveragedNormalizationModel) {
-					CachedNormalizationModel newPredictor = new CachedNormalizationModel(wrappedPredictor.compile(), maxCacheSize);
-					normalizationPredictorModels.put(entityType, newPredictor);
-				} else if (wrappedPredictor instanceof NormalizationModel) {
-					CachedNormalizationModel newPredictor = new CachedNormalizationModel(wrappedPredictor.compile(), maxCacheSize);
-					normalizationPredictorModels.put(entityType, newPredictor);
-				} else {
-					throw new RuntimeException("Not implemented");
-				}
-			}
-			Annotator annotator = new Annotator(lexicon, recognitionModel, normalizationPredictorModels);
-			processors.set(6, annotator);
+			RecognitionModelPredictor recognitionModel = compileRecognitionModel(originalAnnotator.getRecognitionModel(), options.valueOf(recognitionPrecision), originalProcessors, options.valueOf(maxRecognitionScoreError));
+			normalizationPredictorModels = compileNormalizationModels(originalNormalizationPredictorModels);
+			annotator = new Annotator(lexicon, recognitionModel, normalizationPredictorModels);
+			processors.set(processors.indexOf(originalAnnotator), annotator);
+			useSortedSparseVectors(processors);
 			annotationPipeline = new TextInstanceProcessingPipeline(processors);
 			logger.info("Elapsed = " + (System.currentTimeMillis() - start));
 		}
+		annotator.setArrayDecoder(options.valueOf(arrayDecoder));
+		annotator.setNBest(options.valueOf(nBest));
+		if (options.valueOf(normalizationCacheMaxBytes) > 0) {
+			for (NormalizationModelPredictor predictor : normalizationPredictorModels.values()) {
+				if (predictor instanceof CachedNormalizationModel) {
+					((CachedNormalizationModel) predictor).setMaxCacheBytes(options.valueOf(normalizationCacheMaxBytes));
+				}
+			}
+		}
+		for (TextInstanceProcessor processor : processors) {
+			if (processor instanceof FeatureInstantiator) {
+				FeatureInstantiator featureInstantiator = (FeatureInstantiator) processor;
+				if (options.valueOf(combinePatternFeatures)) {
+					featureInstantiator.setFeatureProcessors(CombinedPatternFeatureProcessor.combine(featureInstantiator.getFeatureProcessors()));
+				}
+				if (options.valueOf(combineCharNGramFeatures)) {
+					featureInstantiator.setFeatureProcessors(MultiCharNGramFeatureProcessor.combine(featureInstantiator.getFeatureProcessors()));
+				}
+				featureInstantiator.setFeatureCache(options.valueOf(featureCacheSize), options.valueOf(featureCacheMaxBytes));
+			}
+		}
 
 		// Set up post-processing filters
 		ProcessingTimer processingTimerPipeline = new ProcessingTimer("AnnotationPipeline", annotationPipeline);
@@ -203,56 +241,181 @@ public class ProcessText {
 			consistencyPostProcessing = new ConsistencyPostProcessing(lexicon, entityClassStates, changeThreshold, addThreshold);
 		}
 
-
-		if (options.valueOf(fileFormat).toLowerCase(Locale.US).equals("pubtator")) {
-			processPubtator(options.valueOf(inputFilename), options.valueOf(outputFilename), options.valueOf(useSentenceBreaker), evaluationPipeline, coordinationPostProcessor, abbreviationPostProcessing, consistencyPostProcessing);
-		} else if (options.valueOf(fileFormat).toLowerCase(Locale.US).equals("bioc")) {
-			processBioC(options.valueOf(inputFilename), options.valueOf(outputFilename), options.valueOf(useSentenceBreaker), evaluationPipeline, coordinationPostProcessor, abbreviationPostProcessing, consistencyPostProcessing);
-		} else {
-			throw new RuntimeException("File format must be BioC or Pubtator = " + options.valueOf(fileFormat));
+		DocumentAnnotator documentAnnotator = new DocumentAnnotator(options.valueOf(useSentenceBreaker), options.valueOf(nBest), evaluationPipeline, coordinationPostProcessor, abbreviationPostProcessing, consistencyPostProcessing, abbreviationResolver);
+		try {
+			if (options.valueOf(fileFormat).toLowerCase(Locale.US).equals("pubtator")) {
+				processPubtator(options.valueOf(inputFilename), options.valueOf(outputFilename), documentAnnotator, options.valueOf(threads), options.valueOf(maxDocumentsInFlight));
+			} else if (options.valueOf(fileFormat).toLowerCase(Locale.US).equals("bioc")) {
+				processBioC(options.valueOf(inputFilename), options.valueOf(outputFilename), documentAnnotator, options.valueOf(threads), options.valueOf(maxDocumentsInFlight));
+			} else {
+				throw new RuntimeException("File format must be BioC or Pubtator = " + options.valueOf(fileFormat));
+			}
+		} finally {
+			// Stop any worker processes
+			for (AbbreviationSource source : abbreviationSourceList) {
+				if (source instanceof Closeable) {
+					((Closeable) source).close();
+				}
+			}
+			if (coordinationPostProcessor != null) {
+				coordinationPostProcessor.close();
+			}
+		}
+		for (String entityType : normalizationPredictorModels.keySet()) {
+			NormalizationModelPredictor predictor = normalizationPredictorModels.get(entityType);
+			if (predictor instanceof CachedNormalizationModel) {
+				logger.info("Normalization cache for type " + entityType + ": " + ((CachedNormalizationModel) predictor).getCacheStatistics());
+			}
+		}
+		for (TextInstanceProcessor processor : processors) {
+			if (processor instanceof FeatureInstantiator) {
+				logger.info("Feature cache: " + ((FeatureInstantiator) processor).getFeatureCacheStatistics());
+			}
 		}
 		Profiler.print("\t");
 	}
 
-	private static void processBioC(String inputFilename, String outputFilename, boolean useSentenceBreaker, TextInstanceProcessingPipeline evaluationPipeline, CoordinationPostProcessor coordinationPostProcessor, AbbreviationPostProcessing abbreviationPostProcessing, ConsistencyPostProcessing consistencyPostProcessing)
-			throws XMLStreamException, IOException {
+	/*
+	 * Compiles the recognition model and, unless precision is "double", converts it to a feature-major CompiledRecognitionModel with the precision given
+	 * ("float" or "int8"). The converted model is then checked against the double precision model on sample sentences, whose features are instantiated
+	 * with the model processors, and a warning is logged if any score differs by more than maxScoreError.
+	 */
+	protected static RecognitionModelPredictor compileRecognitionModel(RecognitionModelPredictor originalPredictor, String precision, List<TextInstanceProcessor> modelProcessors, double maxScoreError) {
+		RecognitionModelPredictor compiledPredictor = originalPredictor.compile();
+		if (precision.toLowerCase(Locale.US).equals("double") || compiledPredictor instanceof CompiledRecognitionModel) {
+			// Model was already compiled, e.g. by ConvertModel
+			return compiledPredictor;
+		}
+		if (!(compiledPredictor instanceof RecognitionModel)) {
+			throw new RuntimeException("Not implemented");
+		}
+		CompiledRecognitionModel.Precision compiledPrecision = CompiledRecognitionModel.Precision.valueOf(precision.toUpperCase(Locale.US));
+		CompiledRecognitionModel compiledRecognitionModel = new CompiledRecognitionModel((RecognitionModel) compiledPredictor, compiledPrecision);
+		logger.info("Recognition model precision = " + compiledPrecision + ", max weight error = " + compiledRecognitionModel.getMaxWeightError());
+		double scoreError = getMaxScoreError(compiledRecognitionModel, compiledPredictor, modelProcessors);
+		logger.info("Recognition model max score error on " + RECOGNITION_CHECK_SAMPLE.length + " sample sentences = " + scoreError);
+		if (scoreError > maxScoreError) {
+			logger.warn("Recognition model max score error " + scoreError + " is above " + maxScoreError + "; tagging output may differ from the double precision model");
+		}
+		return compiledRecognitionModel;
+	}
+
+	private static double getMaxScoreError(CompiledRecognitionModel compiledModel, RecognitionModelPredictor referenceModel, List<TextInstanceProcessor> modelProcessors) {
+		double maxScoreError = 0.0;
+		for (int sampleIndex = 0; sampleIndex < RECOGNITION_CHECK_SAMPLE.length; sampleIndex++) {
+			String id = "RecognitionCheck" + sampleIndex;
+			TextInstance instance = new TextInstance(id, id, RECOGNITION_CHECK_SAMPLE[sampleIndex], 0);
+			instance.setTargetAnnotation(new ArrayList<AnnotatedSegment>());
+			// Tokenize, segment and instantiate features
+			for (TextInstanceProcessor processor : modelProcessors) {
+				processor.process(instance);
+				if (processor instanceof FeatureInstantiator) {
+					break;
+				}
+			}
+			maxScoreError = Math.max(maxScoreError, compiledModel.getMaxScoreError(referenceModel, instance));
+		}
+		return maxScoreError;
+	}
+
+	protected static Map<String, NormalizationModelPredictor> compileNormalizationModels(Map<String, NormalizationModelPredictor> originalNormalizationPredictorModels) {
+		Map<String, NormalizationModelPredictor> normalizationPredictorModels = new HashMap<String, NormalizationModelPredictor>();
+		for (String entityType : originalNormalizationPredictorModels.keySet()) {
+			NormalizationModelPredictor originalPredictor = originalNormalizationPredictorModels.get(entityType);
+			int maxCacheSize = ((CachedNormalizationModel) originalPredictor).getMaxCacheSize();
+			NormalizationModelPredictor wrappedPredictor = ((CachedNormalizationModel) originalPredictor).getWrappedPredictor();
+			if (wrappedPredictor instanceof AveragedNormalizationModel) {
+				CachedNormalizationModel newPredictor = new CachedNormalizationModel(wrappedPredictor.compile(), maxCacheSize);
+				normalizationPredictorModels.put(entityType, newPredictor);
+			} else if (wrappedPredictor instanceof NormalizationModel) {
+				CachedNormalizationModel newPredictor = new CachedNormalizationModel(wrappedPredictor.compile(), maxCacheSize);
+				normalizationPredictorModels.put(entityType, newPredictor);
+			} else if (wrappedPredictor instanceof CompiledNormalizationModel) {
+				// Model was already compiled, e.g. by ConvertModel
+				CachedNormalizationModel newPredictor = new CachedNormalizationModel(wrappedPredictor, maxCacheSize);
+				normalizationPredictorModels.put(entityType, newPredictor);
+			} else {
+				throw new RuntimeException("Not implemented");
+			}
+		}
+		return normalizationPredictorModels;
+	}
+
+	/*
+	 * Switches the feature and mention vectors created during annotation to SortedSparseVector, which is cheaper to score than SparseVector
+	 */
+	protected static void useSortedSparseVectors(List<TextInstanceProcessor> processors) {
+		for (TextInstanceProcessor processor : processors) {
+			if (processor instanceof FeatureInstantiator) {
+				((FeatureInstantiator) processor).setVectorFactory(SortedSparseVector.factory);
+			} else if (processor instanceof SegmentMentionProcessor) {
+				useSortedSparseVectors(((SegmentMentionProcessor) processor).getProcessor());
+			}
+		}
+	}
+
+	private static void useSortedSparseVectors(MentionNameProcessor processor) {
+		if (processor instanceof TokenListToWeightedVectorConverter) {
+			((TokenListToWeightedVectorConverter) processor).setVectorFactory(SortedSparseVector.factory);
+		} else if (processor instanceof MentionNameProcessingPipeline) {
+			for (MentionNameProcessor subProcessor : ((MentionNameProcessingPipeline) processor).getProcessors()) {
+				useSortedSparseVectors(subProcessor);
+			}
+		}
+	}
+
+	private static void processBioC(String inputFilename, String outputFilename, final DocumentAnnotator documentAnnotator, int threads, int maxDocumentsInFlight) throws XMLStreamException, IOException {
 		// Open BioC files for input & output
-		ConnectorWoodstox connector = new ConnectorWoodstox();
+		final ConnectorWoodstox connector = new ConnectorWoodstox();
 		BioCCollection collection = connector.startRead(new InputStreamReader(new FileInputStream(inputFilename), T1Constants.UTF8_FORMAT));
 		String bioCParser = BioCFactory.WOODSTOX;
 		BioCFactory factory = BioCFactory.newFactory(bioCParser);
-		BioCDocumentWriter writer = factory.createBioCDocumentWriter(new OutputStreamWriter(new FileOutputStream(outputFilename), T1Constants.UTF8_FORMAT));
+		final BioCDocumentWriter writer = factory.createBioCDocumentWriter(new OutputStreamWriter(new FileOutputStream(outputFilename), T1Constants.UTF8_FORMAT));
 		writer.writeCollectionInfo(collection);
-		while (connector.hasNext()) {
-			BioCDocument document = connector.next();
-			String documentId = document.getID();
-			logger.info("ID=" + documentId);
-			for (BioCPassage passage : document.getPassages()) {
-				// Get instance
-				List<TextInstance> instances = new ArrayList<TextInstance>();
-				int offset = passage.getOffset();
-				TextInstance instance = new TextInstance(documentId, documentId, passage.getText(), offset);
-				instance.setTargetAnnotation(new ArrayList<AnnotatedSegment>());
-				instances.add(instance);
-				// Break into sentences
-				if (useSentenceBreaker) {
-					SentenceBreaker sentenceBreaker = new SentenceBreaker();
-					instances = sentenceBreaker.breakSentences(instances);
+		StreamingProcessor<BioCDocument, BioCDocument> streamingProcessor = new StreamingProcessor<BioCDocument, BioCDocument>(threads, maxDocumentsInFlight);
+		streamingProcessor.process(new StreamingProcessor.Source<BioCDocument>() {
+			@Override
+			public BioCDocument next() {
+				if (connector.hasNext()) {
+					return connector.next();
 				}
-				// Process
-				evaluationPipeline.processAll(instances);
-				if (coordinationPostProcessor != null) {
-					coordinationPostProcessor.processAll(instances);
-				}
-				if (abbreviationPostProcessing != null) {
-					abbreviationPostProcessing.processAll(instances);
-				}
-				if (consistencyPostProcessing != null) {
-					consistencyPostProcessing.processAll(instances);
+				return null;
+			}
+		}, new StreamingProcessor.Worker<BioCDocument, BioCDocument>() {
+			@Override
+			public BioCDocument process(BioCDocument document) {
+				annotateBioC(document, documentAnnotator);
+				return document;
+			}
+		}, new StreamingProcessor.Sink<BioCDocument>() {
+			@Override
+			public void write(BioCDocument document) throws IOException {
+				try {
+					writer.writeDocument(document);
+				} catch (XMLStreamException e) {
+					throw new IOException(e);
 				}
-				int counter = 0;
-				for (TextInstance instance2 : instances) {
-					List<AnnotatedSegment> predictedAnnotation = instance2.getPredictedAnnotations().getObject(0);
+			}
+		});
+		writer.close();
+	}
+
+	private static void annotateBioC(BioCDocument document, DocumentAnnotator documentAnnotator) {
+		String documentId = document.getID();
+		logger.info("ID=" + documentId);
+		for (BioCPassage passage : document.getPassages()) {
+			// Get instance
+			int offset = passage.getOffset();
+			TextInstance instance = new TextInstance(documentId, documentId, passage.getText(), offset);
+			List<TextInstance> instances = documentAnnotator.annotate(instance);
+			int counter = 0;
+			for (TextInstance instance2 : instances) {
+				RankedList<List<AnnotatedSegment>> predictedAnnotations = instance2.getPredictedAnnotations();
+				// With n-best output, annotations from all labelings are written, marked with their rank and score
+				boolean nBestOutput = documentAnnotator.isNBestOutput();
+				int labelings = nBestOutput ? predictedAnnotations.size() : 1;
+				for (int rank = 0; rank < labelings; rank++) {
+					List<AnnotatedSegment> predictedAnnotation = predictedAnnotations.getObject(rank);
 					for (AnnotatedSegment segment : predictedAnnotation) {
 						BioCAnnotation annotation = new BioCAnnotation();
 						annotation.setID(Integer.toString(counter));
@@ -262,6 +425,10 @@ public class ProcessText {
 						if (identifiers != null) {
 							infons.put("identifier", identifiers);
 						}
+						if (nBestOutput) {
+							infons.put("rank", Integer.toString(rank));
+							infons.put("score", String.format(T1Constants.SCORING_FORMAT, predictedAnnotations.getValue(rank)));
+						}
 						annotation.setInfons(infons);
 						annotation.setLocation(instance2.getOffset() + segment.getStartChar(), segment.getEndChar() - segment.getStartChar());
 						annotation.setText(segment.getText());
@@ -270,9 +437,8 @@ public class ProcessText {
 					}
 				}
 			}
-			writer.writeDocument(document);
 		}
-		writer.close();
+		documentAnnotator.release(documentId);
 	}
 
 	private static String visualizeIdentifiers(Set<Entity> entities) {
@@ -298,94 +464,187 @@ public class ProcessText {
 		return identifiers.toString();
 	}
 
-	private static void processPubtator(String inputFilename, String outputFilename, boolean useSentenceBreaker, TextInstanceProcessingPipeline evaluationPipeline, CoordinationPostProcessor coordinationPostProcessor, AbbreviationPostProcessing abbreviationPostProcessing, ConsistencyPostProcessing consistencyPostProcessing) throws IOException {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFilename), T1Constants.UTF8_FORMAT));
-		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFilename), T1Constants.UTF8_FORMAT));
-		String line = reader.readLine();
-		Map<String, String> titles = new HashMap<String, String>();
-		while (line != null) {
-			line = line.trim();
-			String[] fields = line.split("\\|");
-			if (fields.length == 3) {
-				String id = fields[0];
-				String type = fields[1];
-				String text = fields[2];
-
-				if (type.equals("t")) {
-					writer.write(id + "|t|" + text + "\n");
-					// Store title
-					titles.put(id, text);
-				} else if (type.equals("a")) {
-					writer.write(id + "|a|" + text + "\n");
-					// Process abstract
-					String title = titles.get(id);
-					List<TextInstance> instances = new ArrayList<TextInstance>();
-					TextInstance instance = new TextInstance(id, id, title + " " + text, 0);
-					instance.setTargetAnnotation(new ArrayList<AnnotatedSegment>());
-					instances.add(instance);
-					// Break into sentences
-					if (useSentenceBreaker) {
-						SentenceBreaker sentenceBreaker = new SentenceBreaker();
-						instances = sentenceBreaker.breakSentences(instances);
-					}
-					// Process
-					evaluationPipeline.processAll(instances);
-					if (coordinationPostProcessor != null) {
-						coordinationPostProcessor.processAll(instances);
-					}
-					if (abbreviationPostProcessing != null) {
-						abbreviationPostProcessing.processAll(instances);
-					}
-					if (consistencyPostProcessing != null) {
-						consistencyPostProcessing.processAll(instances);
-					}
-					for (TextInstance instance2 : instances) {
-						List<AnnotatedSegment> predictedAnnotation = instance2.getPredictedAnnotations().getObject(0);
-						for (AnnotatedSegment segment : predictedAnnotation) {
-							int start = instance2.getOffset() + segment.getStartChar();
-							int end = instance2.getOffset() + segment.getEndChar();
-							writer.write(id + "\t" + start + "\t" + end + "\t" + segment.getText() + "\t");
-							String identifiers = visualizeIdentifiers(segment.getEntities());
-							if (identifiers == null) {
-								writer.write(segment.getEntityClass() + "\n");
-							} else {
-								writer.write(segment.getEntityClass() + "\t" + Entity.visualizePrimaryIdentifiers(segment.getEntities()) + "\n");
-							}
+	private static void processPubtator(String inputFilename, String outputFilename, final DocumentAnnotator documentAnnotator, int threads, int maxDocumentsInFlight) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFilename), T1Constants.UTF8_FORMAT));
+		final BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFilename), T1Constants.UTF8_FORMAT));
+		StreamingProcessor<String[], String> streamingProcessor = new StreamingProcessor<String[], String>(threads, maxDocumentsInFlight);
+		streamingProcessor.process(new StreamingProcessor.Source<String[]>() {
+
+			private Map<String, String> titles = new HashMap<String, String>();
+
+			@Override
+			public String[] next() throws IOException {
+				String line = reader.readLine();
+				while (line != null) {
+					line = line.trim();
+					String[] fields = line.split("\\|");
+					if (fields.length == 3) {
+						String id = fields[0];
+						String type = fields[1];
+						String text = fields[2];
+						if (type.equals("t")) {
+							// Store title
+							titles.put(id, text);
+							return fields;
+						} else if (type.equals("a")) {
+							// Pass the title along with the abstract; it is no longer needed once the abstract is read
+							return new String[] { id, type, text, titles.remove(id) };
 						}
 					}
-					writer.write("\n");
+					line = reader.readLine();
 				}
+				return null;
 			}
-			line = reader.readLine();
-		}
+		}, new StreamingProcessor.Worker<String[], String>() {
+			@Override
+			public String process(String[] fields) {
+				return annotatePubtator(fields, documentAnnotator);
+			}
+		}, new StreamingProcessor.Sink<String>() {
+			@Override
+			public void write(String output) throws IOException {
+				writer.write(output);
+			}
+		});
 		reader.close();
 		writer.close();
 	}
 
+	private static String annotatePubtator(String[] fields, DocumentAnnotator documentAnnotator) {
+		String id = fields[0];
+		String type = fields[1];
+		String text = fields[2];
+		if (type.equals("t")) {
+			return id + "|t|" + text + "\n";
+		}
+		StringBuilder output = new StringBuilder();
+		output.append(id + "|a|" + text + "\n");
+		// Process abstract
+		String title = fields[3];
+		TextInstance instance = new TextInstance(id, id, title + " " + text, 0);
+		List<TextInstance> instances = documentAnnotator.annotate(instance);
+		for (TextInstance instance2 : instances) {
+			RankedList<List<AnnotatedSegment>> predictedAnnotations = instance2.getPredictedAnnotations();
+			if (documentAnnotator.isNBestOutput()) {
+				// With n-best output, annotations from all labelings are written, with the identifier column always present, followed by rank and score
+				for (int rank = 0; rank < predictedAnnotations.size(); rank++) {
+					String score = String.format(T1Constants.SCORING_FORMAT, predictedAnnotations.getValue(rank));
+					for (AnnotatedSegment segment : predictedAnnotations.getObject(rank)) {
+						int start = instance2.getOffset() + segment.getStartChar();
+						int end = instance2.getOffset() + segment.getEndChar();
+						String identifiers = visualizeIdentifiers(segment.getEntities());
+						output.append(id + "\t" + start + "\t" + end + "\t" + segment.getText() + "\t" + segment.getEntityClass() + "\t");
+						output.append((identifiers == null ? "" : Entity.visualizePrimaryIdentifiers(segment.getEntities())) + "\t" + rank + "\t" + score + "\n");
+					}
+				}
+				continue;
+			}
+			List<AnnotatedSegment> predictedAnnotation = predictedAnnotations.getObject(0);
+			for (AnnotatedSegment segment : predictedAnnotation) {
+				int start = instance2.getOffset() + segment.getStartChar();
+				int end = instance2.getOffset() + segment.getEndChar();
+				output.append(id + "\t" + start + "\t" + end + "\t" + segment.getText() + "\t");
+				String identifiers = visualizeIdentifiers(segment.getEntities());
+				if (identifiers == null) {
+					output.append(segment.getEntityClass() + "\n");
+				} else {
+					output.append(segment.getEntityClass() + "\t" + Entity.visualizePrimaryIdentifiers(segment.getEntities()) + "\n");
+				}
+			}
+		}
+		output.append("\n");
+		documentAnnotator.release(id);
+		return output.toString();
+	}
+
+	/*
+	 * Annotates a single document: sentence breaking, the annotation pipeline and the document-level post-processing. Safe to call from multiple threads.
+	 */
+	private static class DocumentAnnotator {
+
+		private boolean useSentenceBreaker;
+		private int nBest;
+		private TextInstanceProcessingPipeline evaluationPipeline;
+		private CoordinationPostProcessor coordinationPostProcessor;
+		private AbbreviationPostProcessing abbreviationPostProcessing;
+		private ConsistencyPostProcessing consistencyPostProcessing;
+		private AbbreviationResolver abbreviationResolver;
+
+		public DocumentAnnotator(boolean useSentenceBreaker, int nBest, TextInstanceProcessingPipeline evaluationPipeline, CoordinationPostProcessor coordinationPostProcessor, AbbreviationPostProcessing abbreviationPostProcessing,
+				ConsistencyPostProcessing consistencyPostProcessing, AbbreviationResolver abbreviationResolver) {
+			this.useSentenceBreaker = useSentenceBreaker;
+			this.nBest = nBest;
+			this.evaluationPipeline = evaluationPipeline;
+			this.coordinationPostProcessor = coordinationPostProcessor;
+			this.abbreviationPostProcessing = abbreviationPostProcessing;
+			this.consistencyPostProcessing = consistencyPostProcessing;
+			this.abbreviationResolver = abbreviationResolver;
+		}
+
+		/*
+		 * The output format depends only on the configured number of labelings, not on how many a document has
+		 */
+		public boolean isNBestOutput() {
+			return nBest > 1;
+		}
+
+		public List<TextInstance> annotate(TextInstance instance) {
+			instance.setTargetAnnotation(new ArrayList<AnnotatedSegment>());
+			List<TextInstance> instances = new ArrayList<TextInstance>();
+			instances.add(instance);
+			// Break into sentences
+			if (useSentenceBreaker) {
+				SentenceBreaker sentenceBreaker = new SentenceBreaker();
+				instances = sentenceBreaker.breakSentences(instances);
+			}
+			// Process
+			evaluationPipeline.processAll(instances);
+			if (coordinationPostProcessor != null) {
+				coordinationPostProcessor.processAll(instances);
+			}
+			if (abbreviationPostProcessing != null) {
+				abbreviationPostProcessing.processAll(instances);
+			}
+			if (consistencyPostProcessing != null) {
+				consistencyPostProcessing.processAll(instances);
+			}
+			return instances;
+		}
+
+		/*
+		 * Discards the abbreviations for a document once its output is complete, so memory does not grow with the size of the input.
+		 */
+		public void release(String documentId) {
+			abbreviationResolver.removeAbbreviations(documentId);
+		}
+	}
+
 	private static class ProcessingTimer extends TextInstanceProcessor {
 
 		private static final long serialVersionUID = 1L;
 
-		private String timerName;
 		private TextInstanceProcessor wrappedProcessor;
+		private Profiler.Timer processTimer;
+		private Profiler.Timer processAllTimer;
 
 		public ProcessingTimer(String timerName, TextInstanceProcessor wrappedProcessor) {
-			this.timerName = timerName;
 			this.wrappedProcessor = wrappedProcessor;
+			this.processTimer = Profiler.timer(timerName + ".process()");
+			this.processAllTimer = Profiler.timer(timerName + ".processAll()");
 		}
 
 		@Override
 		public void process(TextInstance input) {
-			Profiler.start(timerName + ".process()");
+			processTimer.start();
 			wrappedProcessor.process(input);
-			Profiler.stop(timerName + ".process()");
+			processTimer.stop();
 		}
 
 		@Override
 		public void processAll(List<TextInstance> input) {
-			Profiler.start(timerName + ".processAll()");
+			processAllTimer.start();
 			wrappedProcessor.processAll(input);
-			Profiler.stop(timerName + ".processAll()");
+			processAllTimer.stop();
 		}
 
 	}
@@ -8,6 +8,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -37,6 +38,7 @@ import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
 import ncbi.taggerOne.model.normalization.NormalizationModelUpdater;
 import ncbi.taggerOne.model.optimization.MIRAUpdate;
 import ncbi.taggerOne.model.optimization.OnlineOptimizer;
+import ncbi.taggerOne.model.optimization.QuadraticProgram;
 import ncbi.taggerOne.model.recognition.AveragedRecognitionModel;
 import ncbi.taggerOne.model.recognition.RecognitionModel;
 import ncbi.taggerOne.model.recognition.RecognitionModelPredictor;
@@ -48,6 +50,7 @@ import ncbi.taggerOne.processing.evaluation.AnnotationLevelEvaluationProcessor.C
 import ncbi.taggerOne.processing.evaluation.EvaluationProcessor;
 import ncbi.taggerOne.processing.evaluation.InstanceLevelEvaluationProcessor;
 import ncbi.taggerOne.processing.evaluation.PerfectNERInstanceLevelEvaluationProcessor;
+import ncbi.taggerOne.processing.features.CombinedPatternFeatureProcessor;
 import ncbi.taggerOne.processing.features.FeatureProcessor;
 import ncbi.taggerOne.processing.features.segment.BiasFeatureProcessor;
 import ncbi.taggerOne.processing.features.segment.SegmentLengthFeatureProcessor;
@@ -58,6 +61,7 @@ import ncbi.taggerOne.processing.features.segment.SurroundingCharactersFeaturePr
 import ncbi.taggerOne.processing.features.segment.SurroundingTokensFeatureProcessor;
 import ncbi.taggerOne.processing.features.segment.UnbalancedParenFeatureProcessor;
 import ncbi.taggerOne.processing.features.token.CharNGramFeatureProcessor;
+import ncbi.taggerOne.processing.features.token.MultiCharNGramFeatureProcessor;
 import ncbi.taggerOne.processing.features.token.POSFeatureProcessor;
 import ncbi.taggerOne.processing.features.token.POSFeatureProcessor.HepplePOSTaggerFactory;
 import ncbi.taggerOne.processing.features.token.TokenFeatureProcessor;
@@ -100,6 +104,7 @@ import ncbi.taggerOne.processing.textInstance.TextInstanceTokenizer;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.AbbreviationResolver;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.HashedDictionary;
 import ncbi.taggerOne.util.tokenization.Tokenizer;
 import ncbi.taggerOne.util.vector.SparseVector;
 import ncbi.util.Profiler;
@@ -131,11 +136,15 @@ public class TrainModel {
 		OptionSpec<Double> regularization = parser.accepts("regularization").withRequiredArg().ofType(Double.class).required();
 		OptionSpec<Double> maxStepSize = parser.accepts("maxStepSize").withRequiredArg().ofType(Double.class).required();
 		OptionSpec<Long> solverTimeout = parser.accepts("solverTimeout").withRequiredArg().ofType(Long.class).defaultsTo(5000L);
+		OptionSpec<String> qpSolver = parser.accepts("qpSolver").withRequiredArg().ofType(String.class).defaultsTo("convex");
+		OptionSpec<Integer> featureHashBits = parser.accepts("featureHashBits").withRequiredArg().ofType(Integer.class).defaultsTo(0);
 		OptionSpec<Integer> topNLabelings = parser.accepts("topNLabelings").withRequiredArg().ofType(Integer.class).defaultsTo(1);
 		OptionSpec<Integer> topNNormalization = parser.accepts("topNNormalization").withRequiredArg().ofType(Integer.class).defaultsTo(0);
 		OptionSpec<Integer> maxTrainingIterations = parser.accepts("maxTrainingIterations").withRequiredArg().ofType(Integer.class).required();
 		OptionSpec<Integer> normalizationCacheSize = parser.accepts("normalizationCacheSize").withRequiredArg().ofType(Integer.class).defaultsTo(1000);
 		OptionSpec<Integer> iterationsPastLastImprovement = parser.accepts("iterationsPastLastImprovement").withRequiredArg().ofType(Integer.class).required();
+		OptionSpec<Integer> evaluationThreads = parser.accepts("evaluationThreads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+		OptionSpec<Boolean> asyncModelOutput = parser.accepts("asyncModelOutput").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
 		OptionSpec<Boolean> enforceNonNegativeDiagonal = parser.accepts("enforceNonNegativeDiagonal").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
 		OptionSpec<Boolean> deterministicOrdering = parser.accepts("deterministicOrdering").withRequiredArg().ofType(Boolean.class).defaultsTo(false);
 		OptionSpec<Boolean> averageRecognitionModel = parser.accepts("averageRecognitionModel").withRequiredArg().ofType(Boolean.class).defaultsTo(true);
@@ -323,7 +332,11 @@ public class TrainModel {
 		start = System.currentTimeMillis();
 		Segmenter segmenter = new Segmenter(maxSegmentLength);
 		Dictionary<String> featureSet = new Dictionary<String>();
-		List<FeatureProcessor> featureProcessors = getFeatureProcessors(maxSegmentLength);
+		if (options.valueOf(featureHashBits) > 0) {
+			// Features are hashed into a fixed space instead of being extracted
+			featureSet = new HashedDictionary(options.valueOf(featureHashBits));
+		}
+		List<FeatureProcessor> featureProcessors = MultiCharNGramFeatureProcessor.combine(CombinedPatternFeatureProcessor.combine(getFeatureProcessors(maxSegmentLength)));
 		Dictionary<String> mentionVectorSpace = new Dictionary<String>();
 		// Add all elements in name vector space to the mention vector space
 		for (String entityType : entityTypeSet) {
@@ -462,14 +475,17 @@ public class TrainModel {
 		additionalProcessors.add(new PerfectNERInstanceLevelEvaluationProcessor("PERFORMANCE", normalizationEvaluationPredictionModels));
 		EvaluationProcessorStoppingCriteria stoppingCriteria = new EvaluationProcessorStoppingCriteria(options.valueOf(maxTrainingIterations), options.valueOf(iterationsPastLastImprovement), trainingProgressTracker, holdoutInstances,
 				preEvaluationPipeline, postEvaluationPipeline, annotationPipeline, options.valueOf(modelOutputFilename), evaluationProcessors, additionalProcessors);
+		stoppingCriteria.setThreads(options.valueOf(evaluationThreads));
+		stoppingCriteria.setAsyncModelOutput(options.valueOf(asyncModelOutput));
 
 		logger.info("Elapsed = " + (System.currentTimeMillis() - start));
 
 		logger.info("Training");
 		start = System.currentTimeMillis();
 		OnlineOptimizer optimizer = new MIRAUpdate(lexicon, featureSet, trainingRecognitionPredictor, recognitionModel, normalizationTrainingPredictionModels, normalizationUpdaterModels, options.valueOf(regularization),
-				options.valueOf(maxStepSize), options.valueOf(solverTimeout), options.valueOf(topNLabelings), options.valueOf(topNNormalization), options.valueOf(enforceNonNegativeDiagonal));
+				options.valueOf(maxStepSize), options.valueOf(solverTimeout), QuadraticProgram.SolverType.valueOf(options.valueOf(qpSolver).toUpperCase(Locale.US)), options.valueOf(topNLabelings), options.valueOf(topNNormalization), options.valueOf(enforceNonNegativeDiagonal));
 		Annotator annotator = new Annotator(lexicon, trainingRecognitionPredictor, normalizationTrainingPredictionModels);
+		annotator.setNBest(options.valueOf(topNLabelings));
 		AnnotationModelTrainingIteration trainingIteration = new AnnotationModelTrainingIteration(annotator, normalizationTrainingPredictionModels, optimizer, trainingProgressTracker);
 		int trainingPipelineReportingIncrement = options.valueOf(useSentenceBreaker) ? 100 : 10;
 		TextInstanceProcessingPipeline trainingPipeline = new TextInstanceProcessingPipeline(new ProgressReporter("TrainingPipeline", trainingPipelineReportingIncrement), trainingIteration,
@@ -480,6 +496,7 @@ public class TrainModel {
 		}
 		AnnotationModelTrainer trainer = new AnnotationModelTrainer(trainingPipeline, stoppingCriteria, trainingProgressTracker, shuffler);
 		trainer.processAll(trainingInstances);
+		stoppingCriteria.awaitModelOutput();
 		logger.info("Training complete.");
 		logger.info("Highest evaluation score= " + stoppingCriteria.getHighestScore());
 		logger.info("Total elapsed time= " + (System.currentTimeMillis() - start));
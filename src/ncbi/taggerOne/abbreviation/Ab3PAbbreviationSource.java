@@ -2,6 +2,7 @@ package ncbi.taggerOne.abbreviation;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -17,8 +18,16 @@ import org.slf4j.LoggerFactory;
 import ncbi.taggerOne.T1Constants;
 import ncbi.util.ProcessRunner;
 import ncbi.util.Profiler;
+import ncbi.util.WorkerProcessPool;
 
-public class Ab3PAbbreviationSource implements AbbreviationSource {
+/*
+ * Gets abbreviations from Ab3P. By default each document is written to a temp file and the command is run on it. If a worker command is given, it is
+ * instead started up to the number of workers given and kept running, and each document is sent to one of them through a WorkerProcessPool; the worker
+ * command must read documents from stdin and reply in the identify_abbr output format, with each document and reply followed by the pool's end marker.
+ * identify_abbr as distributed reads one file and exits, so it cannot be used as the worker command; a build that stays resident and loops over stdin
+ * is needed. Documents that contain the end marker still use the command and a temp file.
+ */
+public class Ab3PAbbreviationSource implements AbbreviationSource, Closeable {
 
 	private static final Logger logger = LoggerFactory.getLogger(Ab3PAbbreviationSource.class);
 
@@ -28,6 +37,9 @@ public class Ab3PAbbreviationSource implements AbbreviationSource {
 	private String commandDir;
 	private File tempDir;
 	private long timeout;
+	private String workerCommand;
+	private int workers;
+	private transient WorkerProcessPool workerPool;
 
 	public Ab3PAbbreviationSource() {
 		// Empty
@@ -36,16 +48,50 @@ public class Ab3PAbbreviationSource implements AbbreviationSource {
 	@Override
 	public void setArgs(String... args) {
 		if (args.length < 5) {
-			throw new IllegalArgumentException("Ab3PAbbreviationSource must have four arguments: command, commandDir, tempDir, timeout: " + Arrays.asList(args));
+			throw new IllegalArgumentException("Ab3PAbbreviationSource must have four arguments: command, commandDir, tempDir, timeout, and optionally workerCommand, workers: " + Arrays.asList(args));
 		}
 		command = args[1];
 		commandDir = args[2];
 		tempDir = new File(args[3]);
 		tempDir.mkdirs();
 		timeout = Long.parseLong(args[4]);
+		workerCommand = args.length > 5 ? args[5] : null;
+		workers = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+		close();
+	}
+
+	/*
+	 * Stops the worker processes, if any; they are started again if more documents are processed
+	 */
+	@Override
+	public synchronized void close() {
+		if (workerPool != null) {
+			workerPool.close();
+			workerPool = null;
+		}
+	}
+
+	private synchronized WorkerProcessPool getWorkerPool() {
+		if (workerPool == null) {
+			workerPool = new WorkerProcessPool(workerCommand, commandDir, workers, timeout);
+		}
+		return workerPool;
 	}
 
 	public Map<String, String> getAbbreviations(String id, String text) {
+		if (workerCommand != null) {
+			WorkerProcessPool workerPool = getWorkerPool();
+			if (workerPool.accepts(text)) {
+				Profiler.start("Ab3PAbbreviationSource.getAbbreviations()");
+				logger.debug("Getting abbreviations for: " + id);
+				String result = workerPool.process(text);
+				logger.debug("Abbreviation result is: " + result);
+				Map<String, String> abbreviations = result == null ? new HashMap<String, String>() : parseAbbreviations(result);
+				Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
+				return abbreviations;
+			}
+			logger.debug("Document " + id + " contains the worker end marker, using a temp file instead");
+		}
 		Profiler.start("Ab3PAbbreviationSource.getAbbreviations()");
 		try {
 			logger.debug("Getting abbreviations for: " + id);
@@ -73,8 +119,20 @@ public class Ab3PAbbreviationSource implements AbbreviationSource {
 
 			// Return abbreviations found
 			if (result == null || error != null) {
+				Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
 				return new HashMap<String, String>();
 			}
+			Map<String, String> abbreviations = parseAbbreviations(result);
+			Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
+			return abbreviations;
+		} catch (IOException e) {
+			Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static Map<String, String> parseAbbreviations(String result) {
+		try {
 			Map<String, String> abbreviations = new HashMap<String, String>();
 			BufferedReader reader = new BufferedReader(new StringReader(result));
 			String line = reader.readLine();
@@ -88,10 +146,8 @@ public class Ab3PAbbreviationSource implements AbbreviationSource {
 				line = reader.readLine();
 			}
 			reader.close();
-			Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
 			return abbreviations;
 		} catch (IOException e) {
-			Profiler.stop("Ab3PAbbreviationSource.getAbbreviations()");
 			throw new RuntimeException(e);
 		}
 	}
@@ -0,0 +1,133 @@
+package ncbi.taggerOne.abbreviation;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ncbi.taggerOne.T1Constants;
+
+/*
+ * Regression harness comparing the abbreviation pairs found by one AbbreviationSource with a reference, usually Ab3P output recorded in the format read
+ * by FileAbbreviationSource (document id, short form and long form, separated by tabs). Documents are read from the title and abstract lines of a
+ * PubTator file, joined the same way as PubtatorDataset joins them.
+ *
+ * Usage: AbbreviationSourceComparison pubtatorFile recordedAbbreviationsFile [abbreviationSourceClass]
+ */
+public class AbbreviationSourceComparison {
+
+	private int agreed;
+	private int candidateOnly;
+	private int referenceOnly;
+	private List<String> differences;
+
+	public AbbreviationSourceComparison() {
+		differences = new ArrayList<String>();
+	}
+
+	/*
+	 * Compares the pairs from candidate and reference for each document, given as a map from document id to text
+	 */
+	public void compare(AbbreviationSource candidate, AbbreviationSource reference, Map<String, String> documents) {
+		for (Map.Entry<String, String> document : documents.entrySet()) {
+			String id = document.getKey();
+			Map<String, String> candidatePairs = candidate.getAbbreviations(id, document.getValue());
+			Map<String, String> referencePairs = reference.getAbbreviations(id, document.getValue());
+			for (Map.Entry<String, String> pair : candidatePairs.entrySet()) {
+				String referenceLongForm = referencePairs.get(pair.getKey());
+				if (pair.getValue().equals(referenceLongForm)) {
+					agreed++;
+				} else {
+					candidateOnly++;
+					differences.add(id + "\t+\t" + pair.getKey() + "\t" + pair.getValue());
+				}
+			}
+			for (Map.Entry<String, String> pair : referencePairs.entrySet()) {
+				if (!pair.getValue().equals(candidatePairs.get(pair.getKey()))) {
+					referenceOnly++;
+					differences.add(id + "\t-\t" + pair.getKey() + "\t" + pair.getValue());
+				}
+			}
+		}
+	}
+
+	public int getAgreed() {
+		return agreed;
+	}
+
+	public int getCandidateOnly() {
+		return candidateOnly;
+	}
+
+	public int getReferenceOnly() {
+		return referenceOnly;
+	}
+
+	/*
+	 * Each difference is the document id, "+" for a pair only the candidate found or "-" for a pair only the reference found, the short form and the
+	 * long form, separated by tabs
+	 */
+	public List<String> getDifferences() {
+		return differences;
+	}
+
+	public double getPrecision() {
+		int found = agreed + candidateOnly;
+		return found == 0 ? 0.0 : (double) agreed / found;
+	}
+
+	public double getRecall() {
+		int expected = agreed + referenceOnly;
+		return expected == 0 ? 0.0 : (double) agreed / expected;
+	}
+
+	public static Map<String, String> loadPubtatorText(String filename) throws IOException {
+		Map<String, String> documents = new LinkedHashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filename), T1Constants.UTF8_FORMAT));
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				String[] split = line.trim().split("\\|", 3);
+				if (split.length == 3 && split[1].equals("t")) {
+					documents.put(split[0], split[2] + " ");
+				} else if (split.length == 3 && split[1].equals("a")) {
+					String title = documents.get(split[0]);
+					documents.put(split[0], (title == null ? "" : title) + split[2]);
+				}
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+		return documents;
+	}
+
+	public static void main(String[] args) throws IOException, ReflectiveOperationException {
+		if (args.length < 2) {
+			System.err.println("Usage: AbbreviationSourceComparison pubtatorFile recordedAbbreviationsFile [abbreviationSourceClass]");
+			System.exit(1);
+		}
+		String className = args.length > 2 ? args[2] : SchwartzHearstAbbreviationSource.class.getName();
+		AbbreviationSource candidate = (AbbreviationSource) Class.forName(className).newInstance();
+		candidate.setArgs(className);
+		FileAbbreviationSource reference = new FileAbbreviationSource();
+		reference.setArgs(FileAbbreviationSource.class.getName(), args[1]);
+
+		Map<String, String> documents = loadPubtatorText(args[0]);
+		AbbreviationSourceComparison comparison = new AbbreviationSourceComparison();
+		long start = System.currentTimeMillis();
+		comparison.compare(candidate, reference, documents);
+		long elapsed = System.currentTimeMillis() - start;
+
+		for (String difference : comparison.getDifferences()) {
+			System.out.println(difference);
+		}
+		System.out.println("Documents = " + documents.size() + ", elapsed = " + elapsed + " ms");
+		System.out.println("Agreed = " + comparison.getAgreed() + ", candidate only = " + comparison.getCandidateOnly() + ", reference only = " + comparison.getReferenceOnly());
+		System.out.println(String.format("Precision = %.4f, recall = %.4f", comparison.getPrecision(), comparison.getRecall()));
+	}
+}
@@ -0,0 +1,168 @@
+package ncbi.taggerOne.abbreviation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ncbi.util.Profiler;
+
+/*
+ * Finds abbreviations in the text itself, without an external process, using the algorithm of Schwartz and Hearst (A simple algorithm for identifying
+ * abbreviation definitions in biomedical text, PSB 2003). Each parenthesized expression after a space is a candidate: either "long form (short form)"
+ * or, if the text in parentheses has more than two words or is longer than the text before it, "short form (long form)". The long form is the shortest
+ * suffix of the preceding text that contains the characters of the short form in order, with the first character of the short form at the start of a
+ * word. Returns the same kind of map as Ab3PAbbreviationSource, so it can be used in its place.
+ */
+public class SchwartzHearstAbbreviationSource implements AbbreviationSource {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchwartzHearstAbbreviationSource.class);
+
+	private static final long serialVersionUID = 1L;
+
+	// Candidates whose closing parenthesis is further than this from the opening parenthesis are skipped
+	private static final int MAX_PARENTHESIS_LENGTH = 200;
+
+	public SchwartzHearstAbbreviationSource() {
+		// Empty
+	}
+
+	@Override
+	public void setArgs(String... args) {
+		// No arguments
+	}
+
+	@Override
+	public Map<String, String> getAbbreviations(String id, String text) {
+		Profiler.start("SchwartzHearstAbbreviationSource.getAbbreviations()");
+		Map<String, String> abbreviations = new HashMap<String, String>();
+		int sentenceStart = 0;
+		int openIndex = text.indexOf(" (");
+		while (openIndex >= 0) {
+			openIndex++;
+			int closeIndex = text.indexOf(')', openIndex);
+			if (closeIndex < 0 || closeIndex - openIndex > MAX_PARENTHESIS_LENGTH) {
+				openIndex = text.indexOf(" (", openIndex);
+				continue;
+			}
+			// The long form may not cross a sentence or clause boundary
+			int boundary = Math.max(text.lastIndexOf(". ", openIndex), text.lastIndexOf(", ", openIndex));
+			int longFormStart = Math.max(sentenceStart, boundary < 0 ? 0 : boundary + 2);
+			String longFormCandidate = text.substring(longFormStart, openIndex);
+			String shortFormCandidate = text.substring(openIndex + 1, closeIndex);
+			if (shortFormCandidate.length() > 1 && longFormCandidate.length() > 1) {
+				// Include nested parentheses, such as "(IL-2(R))"
+				if (shortFormCandidate.indexOf('(') >= 0) {
+					int nextCloseIndex = text.indexOf(')', closeIndex + 1);
+					if (nextCloseIndex >= 0) {
+						closeIndex = nextCloseIndex;
+						shortFormCandidate = text.substring(openIndex + 1, closeIndex);
+					}
+				}
+				shortFormCandidate = truncate(shortFormCandidate, ", ");
+				shortFormCandidate = truncate(shortFormCandidate, "; ");
+				if (new StringTokenizer(shortFormCandidate).countTokens() > 2 || shortFormCandidate.length() > longFormCandidate.length()) {
+					// Short form before the parentheses, long form inside
+					int wordStart = text.lastIndexOf(' ', openIndex - 2) + 1;
+					longFormCandidate = shortFormCandidate;
+					shortFormCandidate = wordStart < openIndex - 1 ? text.substring(wordStart, openIndex - 1) : "";
+					if (!hasCapital(shortFormCandidate)) {
+						shortFormCandidate = "";
+					}
+				}
+				shortFormCandidate = shortFormCandidate.trim();
+				if (isValidShortForm(shortFormCandidate)) {
+					String longForm = getLongForm(shortFormCandidate, longFormCandidate.trim());
+					if (longForm != null) {
+						logger.debug("Found abbreviation pair: " + shortFormCandidate + "->" + longForm);
+						abbreviations.put(shortFormCandidate, longForm);
+					}
+				}
+			}
+			sentenceStart = closeIndex + 1;
+			openIndex = text.indexOf(" (", closeIndex);
+		}
+		Profiler.stop("SchwartzHearstAbbreviationSource.getAbbreviations()");
+		return abbreviations;
+	}
+
+	private static String truncate(String text, String separator) {
+		int index = text.indexOf(separator);
+		if (index < 0) {
+			return text;
+		}
+		return text.substring(0, index);
+	}
+
+	private static boolean hasCapital(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (Character.isUpperCase(text.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isValidShortForm(String shortForm) {
+		if (shortForm.length() < 2) {
+			return false;
+		}
+		char firstChar = shortForm.charAt(0);
+		if (!Character.isLetterOrDigit(firstChar) && firstChar != '(') {
+			return false;
+		}
+		for (int i = 0; i < shortForm.length(); i++) {
+			if (Character.isLetter(shortForm.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the long form for the short form from the end of the candidate text, or null if there is none or it fails the length limits
+	 */
+	static String getLongForm(String shortForm, String longFormCandidate) {
+		String longForm = findBestLongForm(shortForm, longFormCandidate);
+		if (longForm == null) {
+			return null;
+		}
+		int longFormWords = new StringTokenizer(longForm, " \t\n\r\f-").countTokens();
+		int shortFormChars = 0;
+		for (int i = 0; i < shortForm.length(); i++) {
+			if (Character.isLetterOrDigit(shortForm.charAt(i))) {
+				shortFormChars++;
+			}
+		}
+		if (longForm.length() < shortForm.length() || longForm.indexOf(shortForm + " ") >= 0 || longForm.endsWith(shortForm)) {
+			return null;
+		}
+		if (longFormWords > shortFormChars * 2 || longFormWords > shortFormChars + 5 || shortFormChars > 10) {
+			return null;
+		}
+		return longForm;
+	}
+
+	private static String findBestLongForm(String shortForm, String longFormCandidate) {
+		int longIndex = longFormCandidate.length() - 1;
+		for (int shortIndex = shortForm.length() - 1; shortIndex >= 0; shortIndex--) {
+			char shortChar = Character.toLowerCase(shortForm.charAt(shortIndex));
+			if (!Character.isLetterOrDigit(shortChar)) {
+				continue;
+			}
+			// The first character of the short form must begin a word of the long form
+			while ((longIndex >= 0 && Character.toLowerCase(longFormCandidate.charAt(longIndex)) != shortChar)
+					|| (shortIndex == 0 && longIndex > 0 && Character.isLetterOrDigit(longFormCandidate.charAt(longIndex - 1)))) {
+				longIndex--;
+			}
+			if (longIndex < 0) {
+				return null;
+			}
+			longIndex--;
+		}
+		int start = longFormCandidate.lastIndexOf(' ', longIndex) + 1;
+		return longFormCandidate.substring(start);
+	}
+}
@@ -0,0 +1,75 @@
+package ncbi.taggerOne.abbreviation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.T1Constants;
+
+public class SchwartzHearstAbbreviationSourceTest {
+
+	private static final String PUBTATOR_TEXT = "" //
+			+ "1|t|Von Hippel-Lindau (VHL) disease and renal cell carcinoma\n" //
+			+ "1|a|Cystic fibrosis transmembrane conductance regulator (CFTR) mutations were found in 12 patients (n = 25).\n" //
+			+ "1\t0\t17\tVon Hippel-Lindau\tDisease\tD006623\n" //
+			+ "\n" //
+			+ "2|t|Tumor necrosis factor alpha (TNF-alpha) and interleukin-2 (IL-2) in sepsis\n" //
+			+ "2|a|In this study, magnetic resonance imaging (MRI) showed lesions in carriers of BRCA1 (breast cancer gene 1).\n";
+
+	// Pairs the Schwartz-Hearst algorithm should find in the crafted text above, written by hand in the format read by FileAbbreviationSource
+	private static final String EXPECTED_PAIRS = "" //
+			+ "1\tVHL\tVon Hippel-Lindau\n" //
+			+ "1\tCFTR\tCystic fibrosis transmembrane conductance regulator\n" //
+			+ "2\tTNF-alpha\tTumor necrosis factor alpha\n" //
+			+ "2\tIL-2\tinterleukin-2\n" //
+			+ "2\tMRI\tmagnetic resonance imaging\n" //
+			+ "2\tBRCA1\tbreast cancer gene 1\n";
+
+	@Test
+	public void testFindsExpectedPairsInCraftedText() throws IOException {
+		File pubtatorFile = write("abbreviations", ".pubtator", PUBTATOR_TEXT);
+		File pairsFile = write("abbreviations", ".txt", EXPECTED_PAIRS);
+		try {
+			Map<String, String> documents = AbbreviationSourceComparison.loadPubtatorText(pubtatorFile.getPath());
+			assertEquals(2, documents.size());
+			FileAbbreviationSource expected = new FileAbbreviationSource();
+			expected.loadAbbreviations(pairsFile.getPath());
+
+			AbbreviationSourceComparison comparison = new AbbreviationSourceComparison();
+			comparison.compare(new SchwartzHearstAbbreviationSource(), expected, documents);
+			assertTrue(comparison.getDifferences().toString(), comparison.getDifferences().isEmpty());
+			assertEquals(6, comparison.getAgreed());
+			assertEquals(1.0, comparison.getRecall(), 0.0);
+		} finally {
+			pubtatorFile.delete();
+			pairsFile.delete();
+		}
+	}
+
+	@Test
+	public void testRejectsInvalidPairs() {
+		SchwartzHearstAbbreviationSource source = new SchwartzHearstAbbreviationSource();
+		// No capital before the parentheses, so "n = 25" is not a long form
+		assertTrue(source.getAbbreviations("1", "We studied 12 patients (n = 25).").isEmpty());
+		// The characters of the short form do not appear in order
+		assertTrue(source.getAbbreviations("1", "heart rate variability (XYZ) was measured").isEmpty());
+		// The long form would need more words than the short form allows
+		assertTrue(source.getAbbreviations("1", "the data from the many other various tests (DT) here").isEmpty());
+	}
+
+	private static File write(String prefix, String suffix, String text) throws IOException {
+		File file = File.createTempFile(prefix, suffix);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), T1Constants.UTF8_FORMAT);
+		writer.write(text);
+		writer.close();
+		return file;
+	}
+}
@@ -1,7 +1,12 @@
 package ncbi.taggerOne.model.normalization;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.atomic.LongAdder;
+
 import ncbi.taggerOne.types.Entity;
 import ncbi.taggerOne.types.MentionName;
+import ncbi.taggerOne.util.ConcurrentClockCache;
 import ncbi.taggerOne.util.LRUCache;
 import ncbi.taggerOne.util.RankedList;
 import ncbi.taggerOne.util.matrix.Matrix;
@@ -14,9 +19,13 @@ public class CachedNormalizationModel implements NormalizationModelPredictor, No
 
 	private NormalizationModelPredictor wrappedPredictor;
 	private NormalizationModelUpdater wrappedUpdater;
-	private LRUCache<Vector<String>, RankedList<Entity>> cache;
-
-	// TODO PERFORMANCE Cache the score bound
+	private LRUCache<Vector<String>, RankedList<Entity>> cache; // Only present in models serialized before findBestCache was added
+	private ConcurrentClockCache<Vector<String>, RankedList<Entity>> findBestCache;
+	private ConcurrentClockCache<Vector<String>, Double> scoreBoundCache;
+	private transient LongAdder findBestHits;
+	private transient LongAdder findBestMisses;
+	private transient LongAdder scoreBoundHits;
+	private transient LongAdder scoreBoundMisses;
 
 	public CachedNormalizationModel(NormalizationModelPredictor wrappedPredictor, int maxCacheSize) {
 		this(wrappedPredictor, null, maxCacheSize);
@@ -28,12 +37,40 @@ public class CachedNormalizationModel implements NormalizationModelPredictor, No
 		}
 		this.wrappedPredictor = wrappedPredictor;
 		this.wrappedUpdater = wrappedUpdater;
-		cache = new LRUCache<Vector<String>, RankedList<Entity>>(LRUCache.DEFAULT_CAPACITY, LRUCache.DEFAULT_LOAD_FACTOR, maxCacheSize);
+		createCaches(maxCacheSize, 0L);
+		initTransients();
+	}
+
+	private void createCaches(int maxCacheSize, long maxCacheBytes) {
+		if (maxCacheBytes > 0) {
+			findBestCache = new ConcurrentClockCache<Vector<String>, RankedList<Entity>>(maxCacheSize, maxCacheBytes / 2, new FindBestWeigher());
+			scoreBoundCache = new ConcurrentClockCache<Vector<String>, Double>(maxCacheSize, maxCacheBytes / 2, new ScoreBoundWeigher());
+		} else {
+			findBestCache = new ConcurrentClockCache<Vector<String>, RankedList<Entity>>(maxCacheSize);
+			scoreBoundCache = new ConcurrentClockCache<Vector<String>, Double>(maxCacheSize);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (findBestCache == null) {
+			// Serialized before the concurrent caches were added
+			createCaches(cache.getMaxSize(), 0L);
+			cache = null;
+		}
+		initTransients();
+	}
+
+	private void initTransients() {
+		findBestHits = new LongAdder();
+		findBestMisses = new LongAdder();
+		scoreBoundHits = new LongAdder();
+		scoreBoundMisses = new LongAdder();
 	}
 
 	@Override
 	public NormalizationModelPredictor compile() {
-		cache.clear();
+		clearCache();
 		wrappedPredictor = wrappedPredictor.compile();
 		return this;
 	}
@@ -47,12 +84,23 @@ public class CachedNormalizationModel implements NormalizationModelPredictor, No
 	}
 
 	public int getMaxCacheSize() {
-		return cache.getMaxSize();
+		return findBestCache.getMaxSize();
+	}
+
+	public long getMaxCacheBytes() {
+		return findBestCache.getMaxBytes() + scoreBoundCache.getMaxBytes();
+	}
+
+	/*
+	 * Replaces the caches with empty caches that are also bounded by an estimate of their total size in bytes; 0 removes the bound
+	 */
+	public void setMaxCacheBytes(long maxCacheBytes) {
+		createCaches(getMaxCacheSize(), maxCacheBytes);
 	}
 
 	@Override
 	public void update(double cosineSimWeight, Matrix<String, String> weights) {
-		cache.clear();
+		clearCache();
 		wrappedUpdater.update(cosineSimWeight, weights);
 	}
 
@@ -60,16 +108,26 @@ public class CachedNormalizationModel implements NormalizationModelPredictor, No
 	public double getScoreBound(Vector<String> mentionVector) {
 		// If mentionVector is present in cache, use it as the highest score
 		double highest = Double.NEGATIVE_INFINITY;
-		RankedList<Entity> cachedEntities = cache.get(mentionVector);
-		if (cachedEntities == null) {
-			// TODO PERFORMANCE Add a cache for the scoreBound times
-			Profiler.start("CachedNormalizationModel.getScoreBound()@wrapped");
-			highest = wrappedPredictor.getScoreBound(mentionVector);
-			Profiler.stop("CachedNormalizationModel.getScoreBound()@wrapped");
-		} else {
+		RankedList<Entity> cachedEntities = findBestCache.get(mentionVector);
+		if (cachedEntities != null) {
 			Profiler.start("CachedNormalizationModel.getScoreBound()@cache");
 			highest = cachedEntities.getValue(0);
+			scoreBoundHits.increment();
 			Profiler.stop("CachedNormalizationModel.getScoreBound()@cache");
+			return highest;
+		}
+		Double cachedBound = scoreBoundCache.get(mentionVector);
+		if (cachedBound != null) {
+			Profiler.start("CachedNormalizationModel.getScoreBound()@boundCache");
+			highest = cachedBound.doubleValue();
+			scoreBoundHits.increment();
+			Profiler.stop("CachedNormalizationModel.getScoreBound()@boundCache");
+		} else {
+			Profiler.start("CachedNormalizationModel.getScoreBound()@wrapped");
+			highest = wrappedPredictor.getScoreBound(mentionVector);
+			scoreBoundCache.put(mentionVector, Double.valueOf(highest));
+			scoreBoundMisses.increment();
+			Profiler.stop("CachedNormalizationModel.getScoreBound()@wrapped");
 		}
 		return highest;
 	}
@@ -85,24 +143,84 @@ public class CachedNormalizationModel implements NormalizationModelPredictor, No
 	}
 
 	public void clearCache() {
-		cache.clear();
+		findBestCache.clear();
+		scoreBoundCache.clear();
+	}
+
+	public long getFindBestHits() {
+		return findBestHits.sum();
+	}
+
+	public long getFindBestMisses() {
+		return findBestMisses.sum();
+	}
+
+	public long getScoreBoundHits() {
+		return scoreBoundHits.sum();
+	}
+
+	public long getScoreBoundMisses() {
+		return scoreBoundMisses.sum();
+	}
+
+	public long getFindBestEvictions() {
+		return findBestCache.getEvictions();
+	}
+
+	public long getScoreBoundEvictions() {
+		return scoreBoundCache.getEvictions();
+	}
+
+	public String getCacheStatistics() {
+		return "findBest hits = " + getFindBestHits() + ", misses = " + getFindBestMisses() + ", evictions = " + getFindBestEvictions() + ", size = " + findBestCache.size() + "; getScoreBound hits = "
+				+ getScoreBoundHits() + ", misses = " + getScoreBoundMisses() + ", evictions = " + getScoreBoundEvictions() + ", size = " + scoreBoundCache.size();
+	}
+
+	/*
+	 * Rough estimates of the memory used by cache entries, for bounding the caches in bytes
+	 */
+	private static long weighMentionVector(Vector<String> mentionVector) {
+		return 64L + 48L * mentionVector.cardinality();
+	}
+
+	private static class FindBestWeigher implements ConcurrentClockCache.Weigher<Vector<String>, RankedList<Entity>> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public long weigh(Vector<String> mentionVector, RankedList<Entity> bestEntities) {
+			return weighMentionVector(mentionVector) + 64L + 24L * bestEntities.maxSize();
+		}
+	}
+
+	private static class ScoreBoundWeigher implements ConcurrentClockCache.Weigher<Vector<String>, Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public long weigh(Vector<String> mentionVector, Double bound) {
+			return weighMentionVector(mentionVector) + 16L;
+		}
 	}
 
 	@Override
 	public void findBest(Vector<String> mentionVector, RankedList<Entity> bestEntities) {
-		RankedList<Entity> cachedEntities = cache.get(mentionVector);
+		RankedList<Entity> cachedEntities = findBestCache.get(mentionVector);
 		if (cachedEntities == null) {
 			Profiler.start("CachedNormalizationModel.findBest()@wrapped");
+			findBestMisses.increment();
 			wrappedPredictor.findBest(mentionVector, bestEntities);
-			cache.put(mentionVector, bestEntities);
+			findBestCache.put(mentionVector, bestEntities.copy());
 			Profiler.stop("CachedNormalizationModel.findBest()@wrapped");
 		} else if (cachedEntities.maxSize() < bestEntities.maxSize()) {
 			Profiler.start("CachedNormalizationModel.findBest()@expand");
+			findBestMisses.increment();
 			wrappedPredictor.findBest(mentionVector, bestEntities);
-			cache.put(mentionVector, bestEntities);
+			findBestCache.put(mentionVector, bestEntities.copy());
 			Profiler.stop("CachedNormalizationModel.findBest()@expand");
 		} else {
 			Profiler.start("CachedNormalizationModel.findBest()@cache");
+			findBestHits.increment();
 			for (int i = 0; i < cachedEntities.size(); i++) {
 				bestEntities.add(cachedEntities.getValue(i), cachedEntities.getObject(i));
 			}
@@ -1,6 +1,9 @@
 package ncbi.taggerOne.model.normalization;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -10,6 +13,7 @@ import ncbi.taggerOne.types.Entity;
 import ncbi.taggerOne.types.MentionName;
 import ncbi.taggerOne.util.Dictionary;
 import ncbi.taggerOne.util.RankedList;
+import ncbi.taggerOne.util.matrix.CompressedSparseRowMatrix;
 import ncbi.taggerOne.util.matrix.DenseBySparseMatrix;
 import ncbi.taggerOne.util.vector.DenseVector;
 import ncbi.taggerOne.util.vector.SparseVector;
@@ -29,7 +33,10 @@ public class CompiledNormalizationModel implements NormalizationModelPredictor {
 
 	private Vector<String> highestVector;
 	private int[] indexOfHighestVector;
-	private DenseBySparseMatrix<String, Vector<String>> shortcutMatrix; // rows indexed by mention vector space, columns indexed by name vector dictionary
+	private DenseBySparseMatrix<String, Vector<String>> shortcutMatrix; // Only set when deserializing models compiled before shortcuts were stored in compressed form
+	private CompressedSparseRowMatrix<String, Vector<String>> shortcuts; // rows indexed by mention vector space, columns indexed by name vector dictionary
+	private boolean exhaustiveSearch;
+	private transient ThreadLocal<ScoreBuffer> scoreBuffers;
 
 	public CompiledNormalizationModel(Index index, Dictionary<String> mentionVectorSpace, Dictionary<String> nameVectorSpace, DenseBySparseMatrix<String, String> weights) {
 		this.mentionVectorSpace = mentionVectorSpace;
@@ -48,36 +55,84 @@ public class CompiledNormalizationModel implements NormalizationModelPredictor {
 				lexiconMatrix.set(nameVectorSpaceIndex, nameVectorIndex, value);
 			}
 		}
-		// Initialize shortcutMatrix
-		shortcutMatrix = new DenseBySparseMatrix<String, Vector<String>>(mentionVectorSpace, nameVectorDictionary);
+		// Initialize shortcuts
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Vector<Vector<String>>[] shortcutRows = new Vector[mentionVectorSpace.size()];
 		for (int mentionVectorSpaceIndex = 0; mentionVectorSpaceIndex < mentionVectorSpace.size(); mentionVectorSpaceIndex++) {
 			Vector<String> nameVectorEquivalent = weights.getRowVector(mentionVectorSpaceIndex);
 			if (nameVectorEquivalent != null) {
-				Vector<Vector<String>> nameScores = convertNameVectorToNameScores(lexiconMatrix, nameVectorEquivalent);
-				shortcutMatrix.incrementRow(mentionVectorSpaceIndex, nameScores);
+				shortcutRows[mentionVectorSpaceIndex] = convertNameVectorToNameScores(lexiconMatrix, nameVectorEquivalent);
 			}
 		}
 		lexiconMatrix = null;
+		shortcuts = new CompressedSparseRowMatrix<String, Vector<String>>(mentionVectorSpace, nameVectorDictionary, shortcutRows);
+		shortcutRows = null;
 		// Initialize highestVector
 		this.highestVector = new DenseVector<String>(mentionVectorSpace);
 		this.indexOfHighestVector = new int[mentionVectorSpace.size()];
+		int[] shortcutColumns = shortcuts.getColumnIndices();
+		double[] shortcutValues = shortcuts.getValues();
 		for (int i = 0; i < mentionVectorSpace.size(); i++) {
 			double highest = 0.0;
 			int highestIndex = -1;
-			Vector<Vector<String>> shortcutVector = shortcutMatrix.getRowVector(i);
-			if (shortcutVector != null) {
-				VectorIterator shortcutIterator = shortcutVector.getIterator();
-				while (shortcutIterator.next()) {
-					double value = shortcutIterator.getValue();
-					if (highest < value) {
-						highest = value;
-						highestIndex = shortcutIterator.getIndex();
-					}
+			int end = shortcuts.getRowEnd(i);
+			for (int position = shortcuts.getRowStart(i); position < end; position++) {
+				double value = shortcutValues[position];
+				if (highest < value) {
+					highest = value;
+					highestIndex = shortcutColumns[position];
 				}
 			}
 			highestVector.set(i, highest);
 			indexOfHighestVector[i] = highestIndex;
 		}
+		initTransients();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (shortcuts == null && shortcutMatrix != null) {
+			shortcuts = new CompressedSparseRowMatrix<String, Vector<String>>(shortcutMatrix);
+			shortcutMatrix = null;
+		}
+		initTransients();
+	}
+
+	private void initTransients() {
+		final int size = nameVectorDictionary.size();
+		scoreBuffers = new ThreadLocal<ScoreBuffer>() {
+			@Override
+			protected ScoreBuffer initialValue() {
+				return new ScoreBuffer(size);
+			}
+		};
+	}
+
+	/*
+	 * Dense per-thread accumulator for the scores of each name vector, with the list of name vectors touched so it can be reset sparsely
+	 */
+	private static class ScoreBuffer {
+
+		double[] scores;
+		boolean[] touched;
+		int[] touchedIndices;
+		int touchedCount;
+
+		public ScoreBuffer(int size) {
+			scores = new double[size];
+			touched = new boolean[size];
+			touchedIndices = new int[size];
+			touchedCount = 0;
+		}
+
+		public void clear() {
+			for (int i = 0; i < touchedCount; i++) {
+				int index = touchedIndices[i];
+				scores[index] = 0.0;
+				touched[index] = false;
+			}
+			touchedCount = 0;
+		}
 	}
 
 	private Vector<Vector<String>> convertNameVectorToNameScores(DenseBySparseMatrix<String, Vector<String>> lexiconMatrix, Vector<String> nameVectorEquivalent) {
@@ -116,8 +171,19 @@ public class CompiledNormalizationModel implements NormalizationModelPredictor {
 		return weights;
 	}
 
-	public DenseBySparseMatrix<String, Vector<String>> getShortcutMatrix() {
-		return shortcutMatrix;
+	public CompressedSparseRowMatrix<String, Vector<String>> getShortcutMatrix() {
+		return shortcuts;
+	}
+
+	public boolean isExhaustiveSearch() {
+		return exhaustiveSearch;
+	}
+
+	/*
+	 * If true, findBest scores every name vector that shares a token with the mention instead of using the pruned search. Both return the same results.
+	 */
+	public void setExhaustiveSearch(boolean exhaustiveSearch) {
+		this.exhaustiveSearch = exhaustiveSearch;
 	}
 
 	@Override
@@ -140,34 +206,352 @@ public class CompiledNormalizationModel implements NormalizationModelPredictor {
 			Profiler.stop("CompiledNormalizationModel.findBest()");
 			return;
 		}
+		if (!exhaustiveSearch) {
+			Profiler.start("CompiledNormalizationModel.findBest()@PRUNED");
+			boolean pruned = findBestPruned(mentionVector, bestEntities);
+			Profiler.stop("CompiledNormalizationModel.findBest()@PRUNED");
+			if (pruned) {
+				Profiler.stop("CompiledNormalizationModel.findBest()");
+				return;
+			}
+		}
 		Profiler.start("CompiledNormalizationModel.findBest()@1");
-		SparseVector<Vector<String>> nameVectorScores = new SparseVector<Vector<String>>(nameVectorDictionary);
+		ScoreBuffer buffer = scoreBuffers.get();
+		double[] scores = buffer.scores;
+		boolean[] touched = buffer.touched;
+		int[] touchedIndices = buffer.touchedIndices;
+		int[] shortcutColumns = shortcuts.getColumnIndices();
+		double[] shortcutValues = shortcuts.getValues();
+		try {
+			VectorIterator mentionIterator = mentionVector.getIterator();
+			while (mentionIterator.next()) {
+				int mentionIndex = mentionIterator.getIndex();
+				double mentionValue = mentionIterator.getValue();
+				int end = shortcuts.getRowEnd(mentionIndex);
+				for (int position = shortcuts.getRowStart(mentionIndex); position < end; position++) {
+					int nameVectorIndex = shortcutColumns[position];
+					if (!touched[nameVectorIndex]) {
+						touched[nameVectorIndex] = true;
+						touchedIndices[buffer.touchedCount] = nameVectorIndex;
+						buffer.touchedCount++;
+					}
+					scores[nameVectorIndex] += mentionValue * shortcutValues[position];
+				}
+			}
+			Profiler.stop("CompiledNormalizationModel.findBest()@1");
+			Profiler.start("CompiledNormalizationModel.findBest()@2");
+			// Visit candidates in index order so that ties are broken consistently
+			Arrays.sort(touchedIndices, 0, buffer.touchedCount);
+			for (int i = 0; i < buffer.touchedCount; i++) {
+				int nameVectorIndex = touchedIndices[i];
+				double score = scores[nameVectorIndex];
+				if (bestEntities.check(score)) {
+					Vector<String> nameVector = nameVectorDictionary.getElement(nameVectorIndex);
+					Set<Entity> entities = index.getEntities(nameVector);
+					for (Entity entity : entities) {
+						bestEntities.add(score, entity);
+					}
+				}
+			}
+			Profiler.stop("CompiledNormalizationModel.findBest()@2");
+		} finally {
+			buffer.clear();
+		}
+		Profiler.stop("CompiledNormalizationModel.findBest()");
+	}
+
+	/*
+	 * Top-k search over the shortcut rows using MaxScore pruning. Each mention token t contributes at most mentionValue(t) * highestVector(t) to any name
+	 * vector, so once the current k-th best score exceeds the combined bound of the weakest tokens, name vectors found only through those tokens cannot
+	 * enter the list and the rows of those tokens are only probed, not scanned. Rows are sorted by name vector index, so candidates are visited in index
+	 * order. Surviving candidates are rescored in the same order as the exhaustive search and added in index order, so the results are identical. Returns
+	 * false without modifying bestEntities if the search does not apply because the mention vector has negative values.
+	 */
+	private boolean findBestPruned(Vector<String> mentionVector, RankedList<Entity> bestEntities) {
+		if (bestEntities.maxSize() < 1) {
+			return false;
+		}
+		int termCount = mentionVector.cardinality();
+		int[] termRows = new int[termCount];
+		double[] termValues = new double[termCount];
 		VectorIterator mentionIterator = mentionVector.getIterator();
+		int termIndex = 0;
 		while (mentionIterator.next()) {
-			int mentionIndex = mentionIterator.getIndex();
 			double mentionValue = mentionIterator.getValue();
-			Vector<Vector<String>> shortcutVector = shortcutMatrix.getRowVector(mentionIndex);
-			if (shortcutVector != null) {
-				nameVectorScores.increment(mentionValue, shortcutVector);
+			if (!(mentionValue >= 0.0)) {
+				return false;
 			}
+			termRows[termIndex] = mentionIterator.getIndex();
+			termValues[termIndex] = mentionValue;
+			termIndex++;
 		}
-		Profiler.stop("CompiledNormalizationModel.findBest()@1");
-		// TODO PERFORMANCE 2% speedup possible if
-		Profiler.start("CompiledNormalizationModel.findBest()@2");
-		VectorIterator nameVectorIterator = nameVectorScores.getIterator();
-		while (nameVectorIterator.next()) {
-			double score = nameVectorIterator.getValue();
+		int[] columns = shortcuts.getColumnIndices();
+		double[] values = shortcuts.getValues();
+
+		// Per-token upper bounds and cursors, with tokens ordered by increasing bound
+		double[] upperBounds = new double[termCount];
+		int[] positions = new int[termCount];
+		int[] ends = new int[termCount];
+		int[] order = new int[termCount];
+		for (int t = 0; t < termCount; t++) {
+			upperBounds[t] = termValues[t] * highestVector.get(termRows[t]);
+			positions[t] = shortcuts.getRowStart(termRows[t]);
+			ends[t] = shortcuts.getRowEnd(termRows[t]);
+			int j = t;
+			while (j > 0 && upperBounds[order[j - 1]] > upperBounds[t]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = t;
+		}
+		double[] prefixBounds = new double[termCount + 1];
+		for (int j = 0; j < termCount; j++) {
+			prefixBounds[j + 1] = prefixBounds[j] + upperBounds[order[j]];
+		}
+
+		// The k lowest values that would currently be in the list, starting with what is already there
+		TopValues topValues = new TopValues(bestEntities.maxSize());
+		for (int rank = 0; rank < bestEntities.size(); rank++) {
+			topValues.add(bestEntities.getValue(rank), 1);
+		}
+
+		// Seed the threshold with the best name vector for each token
+		CandidateList candidates = new CandidateList();
+		for (int t = 0; t < termCount; t++) {
+			int nameVectorIndex = indexOfHighestVector[termRows[t]];
+			if (nameVectorIndex != -1 && !candidates.contains(nameVectorIndex)) {
+				double score = scoreShortcuts(termRows, termValues, nameVectorIndex);
+				candidates.add(nameVectorIndex, score);
+				topValues.add(score, getEntityCount(nameVectorIndex));
+			}
+		}
+		int seedCount = candidates.size;
+
+		double threshold = topValues.getThreshold();
+		int nonEssentialCount = countNonEssential(prefixBounds, threshold);
+		while (nonEssentialCount < termCount) {
+			// Next candidate is the lowest name vector index in the rows of the essential tokens
+			int nameVectorIndex = Integer.MAX_VALUE;
+			for (int j = nonEssentialCount; j < termCount; j++) {
+				int t = order[j];
+				if (positions[t] < ends[t] && columns[positions[t]] < nameVectorIndex) {
+					nameVectorIndex = columns[positions[t]];
+				}
+			}
+			if (nameVectorIndex == Integer.MAX_VALUE) {
+				break;
+			}
+			double bound = prefixBounds[nonEssentialCount];
+			double magnitude = prefixBounds[termCount];
+			for (int j = nonEssentialCount; j < termCount; j++) {
+				int t = order[j];
+				if (positions[t] < ends[t] && columns[positions[t]] == nameVectorIndex) {
+					double contribution = termValues[t] * values[positions[t]];
+					bound += contribution;
+					magnitude += Math.abs(contribution);
+					positions[t]++;
+				}
+			}
+			// Probe the rows of the non-essential tokens, strongest first, while the candidate can still make the list
+			boolean viable = bound >= threshold - tolerance(magnitude, threshold);
+			for (int j = nonEssentialCount - 1; viable && j >= 0; j--) {
+				int t = order[j];
+				int position = Arrays.binarySearch(columns, positions[t], ends[t], nameVectorIndex);
+				bound -= upperBounds[t];
+				if (position >= 0) {
+					double contribution = termValues[t] * values[position];
+					bound += contribution;
+					magnitude += Math.abs(contribution);
+					positions[t] = position + 1;
+				} else {
+					positions[t] = -position - 1;
+				}
+				viable = bound >= threshold - tolerance(magnitude, threshold);
+			}
+			if (!viable || candidates.contains(nameVectorIndex, seedCount)) {
+				continue;
+			}
+			double score = scoreShortcuts(termRows, termValues, nameVectorIndex);
+			if (score >= threshold) {
+				candidates.add(nameVectorIndex, score);
+				topValues.add(score, getEntityCount(nameVectorIndex));
+				double newThreshold = topValues.getThreshold();
+				if (newThreshold != threshold) {
+					threshold = newThreshold;
+					nonEssentialCount = countNonEssential(prefixBounds, threshold);
+				}
+			}
+		}
+
+		// Add the candidates in name vector index order, as the exhaustive search does
+		candidates.sort();
+		for (int i = 0; i < candidates.size; i++) {
+			double score = candidates.scores[i];
 			if (bestEntities.check(score)) {
-				int nameVectorIndex = nameVectorIterator.getIndex();
-				Vector<String> nameVector = nameVectorDictionary.getElement(nameVectorIndex);
+				Vector<String> nameVector = nameVectorDictionary.getElement(candidates.indices[i]);
 				Set<Entity> entities = index.getEntities(nameVector);
 				for (Entity entity : entities) {
 					bestEntities.add(score, entity);
 				}
 			}
 		}
-		Profiler.stop("CompiledNormalizationModel.findBest()@2");
-		Profiler.stop("CompiledNormalizationModel.findBest()");
+		return true;
+	}
+
+	/*
+	 * Allowance for rounding when comparing bounds accumulated in a different order than the exact scores
+	 */
+	private static double tolerance(double magnitude, double threshold) {
+		return 1.0e-10 * (1.0 + magnitude + Math.abs(threshold));
+	}
+
+	/*
+	 * Returns the number of weakest tokens whose combined bound is below the threshold
+	 */
+	private static int countNonEssential(double[] prefixBounds, double threshold) {
+		int count = 0;
+		while (count + 1 < prefixBounds.length && prefixBounds[count + 1] < threshold - tolerance(prefixBounds[prefixBounds.length - 1], threshold)) {
+			count++;
+		}
+		return count;
+	}
+
+	/*
+	 * Score of one name vector, summed in the same order as the exhaustive search
+	 */
+	private double scoreShortcuts(int[] termRows, double[] termValues, int nameVectorIndex) {
+		int[] columns = shortcuts.getColumnIndices();
+		double[] values = shortcuts.getValues();
+		double score = 0.0;
+		for (int t = 0; t < termRows.length; t++) {
+			int position = Arrays.binarySearch(columns, shortcuts.getRowStart(termRows[t]), shortcuts.getRowEnd(termRows[t]), nameVectorIndex);
+			if (position >= 0) {
+				score += termValues[t] * values[position];
+			}
+		}
+		return score;
+	}
+
+	private int getEntityCount(int nameVectorIndex) {
+		return index.getEntities(nameVectorDictionary.getElement(nameVectorIndex)).size();
+	}
+
+	/*
+	 * Min-heap of the k highest values seen, counting each entity of a name vector separately as RankedList does
+	 */
+	private static class TopValues {
+
+		private double[] heap;
+		private int size;
+
+		public TopValues(int maxSize) {
+			heap = new double[maxSize];
+			size = 0;
+		}
+
+		public void add(double value, int count) {
+			for (int i = 0; i < count; i++) {
+				if (size < heap.length) {
+					heap[size] = value;
+					int child = size;
+					size++;
+					while (child > 0 && heap[(child - 1) / 2] > heap[child]) {
+						swap((child - 1) / 2, child);
+						child = (child - 1) / 2;
+					}
+				} else if (value > heap[0]) {
+					heap[0] = value;
+					int parent = 0;
+					while (true) {
+						int smallest = parent;
+						int left = 2 * parent + 1;
+						int right = left + 1;
+						if (left < size && heap[left] < heap[smallest]) {
+							smallest = left;
+						}
+						if (right < size && heap[right] < heap[smallest]) {
+							smallest = right;
+						}
+						if (smallest == parent) {
+							break;
+						}
+						swap(parent, smallest);
+						parent = smallest;
+					}
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void swap(int i, int j) {
+			double temp = heap[i];
+			heap[i] = heap[j];
+			heap[j] = temp;
+		}
+
+		/*
+		 * Scores below this value cannot make the list
+		 */
+		public double getThreshold() {
+			if (size < heap.length) {
+				return Double.NEGATIVE_INFINITY;
+			}
+			return heap[0];
+		}
+	}
+
+	private static class CandidateList {
+
+		int[] indices;
+		double[] scores;
+		int size;
+
+		public CandidateList() {
+			indices = new int[16];
+			scores = new double[16];
+			size = 0;
+		}
+
+		public void add(int index, double score) {
+			if (size == indices.length) {
+				indices = Arrays.copyOf(indices, 2 * size);
+				scores = Arrays.copyOf(scores, 2 * size);
+			}
+			indices[size] = index;
+			scores[size] = score;
+			size++;
+		}
+
+		public boolean contains(int index) {
+			return contains(index, size);
+		}
+
+		// Checks only the first count candidates
+		public boolean contains(int index, int count) {
+			for (int i = 0; i < count; i++) {
+				if (indices[i] == index) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void sort() {
+			// Insertion sort; the candidates found by the scan are already in index order, only the seeds are not
+			for (int i = 1; i < size; i++) {
+				int index = indices[i];
+				double score = scores[i];
+				int j = i;
+				while (j > 0 && indices[j - 1] > index) {
+					indices[j] = indices[j - 1];
+					scores[j] = scores[j - 1];
+					j--;
+				}
+				indices[j] = index;
+				scores[j] = score;
+			}
+		}
 	}
 
 	@Override
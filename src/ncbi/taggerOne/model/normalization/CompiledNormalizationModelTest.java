@@ -0,0 +1,97 @@
+package ncbi.taggerOne.model.normalization;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.lexicon.Index;
+import ncbi.taggerOne.types.Entity;
+import ncbi.taggerOne.types.MentionName;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.RankedList;
+import ncbi.taggerOne.util.matrix.DenseBySparseMatrix;
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector;
+
+public class CompiledNormalizationModelTest {
+
+	private static final int TOKENS = 20;
+	private static final int ENTITIES = 60;
+
+	// Few distinct values, so that many name vectors tie
+	private static final double[] VALUES = { 0.5, 1.0, 2.0 };
+
+	@Test
+	public void testPrunedSearchMatchesExhaustiveSearch() {
+		Random random = new Random(1);
+		for (int model = 0; model < 20; model++) {
+			CompiledNormalizationModel normalizationModel = createModel(random);
+			Dictionary<String> space = normalizationModel.getWeights().getRowDictionary();
+			for (int mention = 0; mention < 200; mention++) {
+				Vector<String> mentionVector = createVector(random, space, 1 + random.nextInt(5));
+				// Includes lists longer than the number of candidates
+				for (int k : new int[] { 1, 2, 3, 5, 10, 1000 }) {
+					normalizationModel.setExhaustiveSearch(true);
+					RankedList<Entity> expected = new RankedList<Entity>(k);
+					normalizationModel.findBest(mentionVector, expected);
+					normalizationModel.setExhaustiveSearch(false);
+					RankedList<Entity> actual = new RankedList<Entity>(k);
+					normalizationModel.findBest(mentionVector, actual);
+					String message = "model " + model + ", mention " + mentionVector + ", k = " + k;
+					assertEquals(message, expected.size(), actual.size());
+					for (int rank = 0; rank < expected.size(); rank++) {
+						assertEquals(message + ", rank " + rank, expected.getValue(rank), actual.getValue(rank), 0.0);
+						assertEquals(message + ", rank " + rank, expected.getObject(rank), actual.getObject(rank));
+					}
+				}
+			}
+		}
+	}
+
+	private static CompiledNormalizationModel createModel(Random random) {
+		Dictionary<String> space = new Dictionary<String>();
+		for (int i = 0; i < TOKENS; i++) {
+			space.addElement("t" + i);
+		}
+		space.freeze();
+		Set<Entity> entities = new HashSet<Entity>();
+		Vector<String> sharedVector = createVector(random, space, 2);
+		for (int i = 0; i < ENTITIES; i++) {
+			Entity entity = new Entity("Disease", "D" + i, createName("name" + i, random.nextInt(10) == 0 ? sharedVector : createVector(random, space, 1 + random.nextInt(3))));
+			if (random.nextBoolean()) {
+				Set<MentionName> names = new HashSet<MentionName>();
+				names.add(createName("synonym" + i, createVector(random, space, 1 + random.nextInt(3))));
+				entity.addNames(names);
+			}
+			entities.add(entity);
+		}
+		Entity unknownEntity = new Entity("Disease", "Unknown", new MentionName("Unknown"));
+		Index index = new Index(space, space, entities, unknownEntity);
+		DenseBySparseMatrix<String, String> weights = new DenseBySparseMatrix<String, String>(space, space);
+		for (int i = 0; i < TOKENS; i++) {
+			weights.set(i, i, VALUES[random.nextInt(VALUES.length)]);
+			for (int j = 0; j < 3; j++) {
+				weights.set(i, random.nextInt(TOKENS), VALUES[random.nextInt(VALUES.length)]);
+			}
+		}
+		return new CompiledNormalizationModel(index, space, space, weights);
+	}
+
+	private static MentionName createName(String name, Vector<String> vector) {
+		MentionName mentionName = new MentionName(name);
+		mentionName.setVector(vector);
+		return mentionName;
+	}
+
+	private static Vector<String> createVector(Random random, Dictionary<String> space, int cardinality) {
+		Vector<String> vector = new SparseVector<String>(space);
+		for (int i = 0; i < cardinality; i++) {
+			vector.set(random.nextInt(space.size()), VALUES[random.nextInt(VALUES.length)]);
+		}
+		return vector;
+	}
+}
@@ -0,0 +1,211 @@
+package ncbi.taggerOne.model.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ncbi.taggerOne.model.optimization.QuadraticProgram.QPConstraint;
+
+/*
+ * Solves the MIRA quadratic program by coordinate ascent on its dual (Hildreth's algorithm). The program minimizes the squared length of the non-slack
+ * variables plus the regularization times the sum of the slack variables, subject to linear constraints in which each slack variable appears at most
+ * once, with coefficient -1, and is non-negative. The dual variable of each constraint is then bounded by the regularization (unbounded if the constraint
+ * has no slack variable), and each coordinate step only touches the non-zero coefficients of one constraint, so nothing of size variables x variables or
+ * constraints x variables is ever allocated.
+ */
+public class DualCoordinateAscentSolver {
+
+	private static final Logger logger = LoggerFactory.getLogger(DualCoordinateAscentSolver.class);
+
+	private static final double TOLERANCE = 1.0e-9;
+	private static final int MAX_SWEEPS = 100000;
+
+	private int varCount;
+	private boolean supported;
+	private int[][] vars; // Non-slack variables of each constraint
+	private double[][] values; // Non-slack coefficients of each constraint
+	private double[] b;
+	private double[] halfSquaredNorm;
+	private double[] upperBound;
+	private int[] slackVar;
+	private double[] solution;
+	private String state;
+
+	public DualCoordinateAscentSolver(int varCount, boolean[] isSlackVar, double regularization, List<QPConstraint> constraints) {
+		this.varCount = varCount;
+		this.supported = true;
+		boolean[] slackVarUsed = new boolean[varCount];
+		List<int[]> varList = new ArrayList<int[]>();
+		List<double[]> valueList = new ArrayList<double[]>();
+		List<Double> bList = new ArrayList<Double>();
+		List<Integer> slackVarList = new ArrayList<Integer>();
+		for (QPConstraint constraint : constraints) {
+			int[] keys = constraint.getVariables();
+			int constraintSlackVar = -1;
+			int nonSlackCount = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int var = keys[i];
+				if (!isSlackVar[var]) {
+					nonSlackCount++;
+				} else if (constraint.getCoefficient(var) != 0.0) {
+					if (constraintSlackVar >= 0 || constraint.getCoefficient(var) != -1.0) {
+						supported = false;
+						return;
+					}
+					constraintSlackVar = var;
+				}
+			}
+			if (nonSlackCount == 0 && constraintSlackVar >= 0 && constraint.getB() == 0.0) {
+				// Slack non-negativity constraint, handled by the bounds on the dual variables
+				continue;
+			}
+			if (constraintSlackVar >= 0) {
+				if (slackVarUsed[constraintSlackVar]) {
+					supported = false;
+					return;
+				}
+				slackVarUsed[constraintSlackVar] = true;
+			}
+			int[] constraintVars = new int[nonSlackCount];
+			double[] constraintValues = new double[nonSlackCount];
+			int index = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int var = keys[i];
+				if (!isSlackVar[var]) {
+					constraintVars[index] = var;
+					constraintValues[index] = constraint.getCoefficient(var);
+					index++;
+				}
+			}
+			varList.add(constraintVars);
+			valueList.add(constraintValues);
+			bList.add(constraint.getB());
+			slackVarList.add(constraintSlackVar);
+		}
+		int constraintCount = varList.size();
+		vars = varList.toArray(new int[constraintCount][]);
+		values = valueList.toArray(new double[constraintCount][]);
+		b = new double[constraintCount];
+		halfSquaredNorm = new double[constraintCount];
+		upperBound = new double[constraintCount];
+		slackVar = new int[constraintCount];
+		for (int i = 0; i < constraintCount; i++) {
+			b[i] = bList.get(i);
+			double sqrSum = 0.0;
+			for (int k = 0; k < values[i].length; k++) {
+				sqrSum += values[i][k] * values[i][k];
+			}
+			halfSquaredNorm[i] = 0.5 * sqrSum;
+			slackVar[i] = slackVarList.get(i);
+			upperBound[i] = slackVar[i] >= 0 ? regularization : Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/*
+	 * Returns false if the program does not have the structure this solver requires
+	 */
+	public boolean isSupported() {
+		return supported;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public double[] getSolution() {
+		return solution;
+	}
+
+	/*
+	 * Returns true if the solver converged within the timeout (in milliseconds)
+	 */
+	public boolean solve(long timeout) {
+		if (!supported) {
+			throw new IllegalStateException("Quadratic program structure not supported");
+		}
+		long start = System.currentTimeMillis();
+		int constraintCount = b.length;
+		double[] w = new double[varCount];
+		double[] alpha = new double[constraintCount];
+		double scale = 1.0;
+		for (int i = 0; i < constraintCount; i++) {
+			scale = Math.max(scale, Math.abs(b[i]));
+		}
+
+		// Constraints without non-slack variables have a closed form solution
+		for (int i = 0; i < constraintCount; i++) {
+			if (halfSquaredNorm[i] == 0.0 && b[i] < 0.0) {
+				if (upperBound[i] == Double.POSITIVE_INFINITY) {
+					state = "INFEASIBLE";
+					logger.warn("\tConstraint " + i + " has no non-slack variables and cannot be satisfied: 0.0 <= " + b[i]);
+					return false;
+				}
+				alpha[i] = upperBound[i];
+			}
+		}
+
+		int sweep = 0;
+		double maxViolation = Double.POSITIVE_INFINITY;
+		while (maxViolation > TOLERANCE * scale) {
+			if (sweep >= MAX_SWEEPS) {
+				state = "ITERATION_LIMIT";
+				logger.warn("\tDual coordinate ascent did not converge after " + sweep + " sweeps, max violation = " + maxViolation);
+				return false;
+			}
+			if (System.currentTimeMillis() - start > timeout) {
+				state = "TIMEOUT";
+				logger.warn("\tDual coordinate ascent exceeded timeout after " + sweep + " sweeps, max violation = " + maxViolation);
+				return false;
+			}
+			maxViolation = 0.0;
+			for (int i = 0; i < constraintCount; i++) {
+				if (halfSquaredNorm[i] == 0.0) {
+					continue;
+				}
+				int[] constraintVars = vars[i];
+				double[] constraintValues = values[i];
+				// Gradient of the dual with respect to alpha[i]
+				double gradient = -b[i];
+				for (int k = 0; k < constraintVars.length; k++) {
+					gradient += constraintValues[k] * w[constraintVars[k]];
+				}
+				double violation;
+				if (alpha[i] <= 0.0) {
+					violation = Math.max(gradient, 0.0);
+				} else if (alpha[i] >= upperBound[i]) {
+					violation = Math.max(-gradient, 0.0);
+				} else {
+					violation = Math.abs(gradient);
+				}
+				maxViolation = Math.max(maxViolation, violation);
+				double newAlpha = Math.min(Math.max(alpha[i] + gradient / halfSquaredNorm[i], 0.0), upperBound[i]);
+				double delta = newAlpha - alpha[i];
+				if (delta != 0.0) {
+					for (int k = 0; k < constraintVars.length; k++) {
+						w[constraintVars[k]] -= 0.5 * delta * constraintValues[k];
+					}
+					alpha[i] = newAlpha;
+				}
+			}
+			sweep++;
+		}
+
+		// Copy the solution; each slack variable takes the amount by which its constraint is violated
+		solution = Arrays.copyOf(w, varCount);
+		for (int i = 0; i < constraintCount; i++) {
+			if (slackVar[i] >= 0) {
+				double value = -b[i];
+				for (int k = 0; k < vars[i].length; k++) {
+					value += values[i][k] * w[vars[i][k]];
+				}
+				solution[slackVar[i]] = Math.max(value, 0.0);
+			}
+		}
+		state = "OPTIMAL";
+		logger.info("\tDual coordinate ascent converged after " + sweep + " sweeps and " + (System.currentTimeMillis() - start) + " ms");
+		return true;
+	}
+}
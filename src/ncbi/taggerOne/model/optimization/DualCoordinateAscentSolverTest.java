@@ -0,0 +1,216 @@
+package ncbi.taggerOne.model.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.model.optimization.QuadraticProgram.QPConstraint;
+import ncbi.taggerOne.model.optimization.QuadraticProgram.SolverType;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.matrix.Matrix;
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector;
+
+public class DualCoordinateAscentSolverTest {
+
+	private static final int STATES = 2;
+	private static final int FEATURES = 6;
+	private static final double REGULARIZATION = 0.5;
+	private static final long TIMEOUT = 10000;
+
+	// Feature differences between a target and a prediction are mostly small integers
+	private static final double[] VALUES = { -2.0, -1.0, -1.0, -0.5, 0.5, 1.0, 1.0, 2.0 };
+
+	@Test
+	public void testMatchesConvexSolverWithOneConstraint() {
+		Random random = new Random(1);
+		for (int trial = 0; trial < 30; trial++) {
+			List<Row> rows = new ArrayList<Row>();
+			rows.add(createRow(random, true));
+			compareSolvers("trial " + trial, rows, false);
+		}
+	}
+
+	@Test
+	public void testMatchesConvexSolverWithSeveralConstraints() {
+		Random random = new Random(2);
+		for (int trial = 0; trial < 30; trial++) {
+			// One constraint per prediction, as MIRAUpdate.updateAll() creates for the k best labelings, each with its own slack variable
+			List<Row> rows = new ArrayList<Row>();
+			int count = 2 + random.nextInt(5);
+			for (int i = 0; i < count; i++) {
+				rows.add(createRow(random, true));
+			}
+			// Sometimes a hard constraint without slack, like the non-negative cosine similarity constraints
+			if (random.nextBoolean()) {
+				Row row = new Row(-random.nextDouble(), false);
+				row.coefficients[random.nextInt(row.coefficients.length)] = -1.0;
+				rows.add(row);
+			}
+			compareSolvers("trial " + trial, rows, false);
+		}
+	}
+
+	@Test
+	public void testFallsBackToConvexSolver() {
+		Random random = new Random(3);
+		for (int trial = 0; trial < 10; trial++) {
+			List<Row> rows = new ArrayList<Row>();
+			for (int i = 0; i < 3; i++) {
+				rows.add(createRow(random, false));
+			}
+			// The first two constraints share one slack variable, which the dual solver does not support
+			QuadraticProgram qp = createProgram(rows, SolverType.DUAL, true);
+			boolean[] isSlackVar = new boolean[qp.getVariableCount()];
+			isSlackVar[STATES * FEATURES] = true;
+			assertFalse(new DualCoordinateAscentSolver(qp.getVariableCount(), isSlackVar, REGULARIZATION, qp.getConstraints()).isSupported());
+			compareSolvers("trial " + trial, rows, true);
+		}
+	}
+
+	private static Row createRow(Random random, boolean hasSlack) {
+		// A negative b is a margin the current weights violate
+		Row row = new Row(-3.0 * random.nextDouble() + 0.5, hasSlack);
+		int nonZero = 1 + random.nextInt(4);
+		for (int i = 0; i < nonZero; i++) {
+			row.coefficients[random.nextInt(row.coefficients.length)] = VALUES[random.nextInt(VALUES.length)];
+		}
+		return row;
+	}
+
+	/*
+	 * Solves the program with both solvers and checks that the weight updates and the objective agree. If sharedSlack is set, the first two rows share
+	 * one slack variable instead of their own.
+	 */
+	private static void compareSolvers(String message, List<Row> rows, boolean sharedSlack) {
+		double[] convex = solve(createProgram(rows, SolverType.CONVEX, sharedSlack));
+		double[] dual = solve(createProgram(rows, SolverType.DUAL, sharedSlack));
+		double convexObjective = getObjective(rows, convex, sharedSlack);
+		double dualObjective = getObjective(rows, dual, sharedSlack);
+		assertEquals(message, convexObjective, dualObjective, 1.0e-6 * Math.max(1.0, convexObjective));
+		for (int var = 0; var < convex.length; var++) {
+			assertEquals(message + ", variable " + var, convex[var], dual[var], 1.0e-4);
+		}
+		for (int i = sharedSlack ? 2 : 0; i < rows.size(); i++) {
+			Row row = rows.get(i);
+			if (!row.hasSlack) {
+				assertTrue(message, row.getValue(dual) <= row.b + 1.0e-6);
+			}
+		}
+	}
+
+	private static QuadraticProgram createProgram(List<Row> rows, SolverType solverType, boolean sharedSlack) {
+		Dictionary<String> states = new Dictionary<String>();
+		for (int state = 0; state < STATES; state++) {
+			states.addElement("S" + state);
+		}
+		states.freeze();
+		QuadraticProgram qp = new QuadraticProgram(null, createFeatureSet(), states, null, Collections.<String> emptySet(), REGULARIZATION, 0.0, TIMEOUT, solverType);
+		// Create the weight variables first, so that variable state * FEATURES + feature is the weight of that feature for that state
+		for (int state = 0; state < STATES; state++) {
+			for (int feature = 0; feature < FEATURES; feature++) {
+				qp.getRecognitionVar(state, feature);
+			}
+		}
+		int sharedSlackVar = sharedSlack ? qp.getSlackVar() : -1;
+		for (int i = 0; i < rows.size(); i++) {
+			Row row = rows.get(i);
+			QPConstraint constraint = new QPConstraint(qp);
+			for (int var = 0; var < row.coefficients.length; var++) {
+				constraint.addRaw(var, row.coefficients[var]);
+			}
+			constraint.addBValue(row.b);
+			if (sharedSlack && i < 2) {
+				constraint.addRaw(sharedSlackVar, -1.0);
+			} else if (row.hasSlack) {
+				constraint.addSlackVariable();
+			}
+			qp.addConstraint(constraint);
+		}
+		return qp;
+	}
+
+	private static Dictionary<String> createFeatureSet() {
+		Dictionary<String> featureSet = new Dictionary<String>();
+		for (int feature = 0; feature < FEATURES; feature++) {
+			featureSet.addElement("F" + feature);
+		}
+		featureSet.freeze();
+		return featureSet;
+	}
+
+	/*
+	 * Returns the weight updates found by the program's solver, indexed as the weight variables
+	 */
+	private static double[] solve(QuadraticProgram qp) {
+		Dictionary<String> featureSet = createFeatureSet();
+		@SuppressWarnings("unchecked")
+		Vector<String>[] featureWeightUpdates = new SparseVector[STATES];
+		for (int state = 0; state < STATES; state++) {
+			featureWeightUpdates[state] = new SparseVector<String>(featureSet);
+		}
+		TObjectDoubleMap<String> cosineSimUpdates = new TObjectDoubleHashMap<String>();
+		assertTrue(qp.solve(featureWeightUpdates, cosineSimUpdates, new HashMap<String, Matrix<String, String>>()));
+		double[] weights = new double[STATES * FEATURES];
+		for (int state = 0; state < STATES; state++) {
+			for (int feature = 0; feature < FEATURES; feature++) {
+				weights[state * FEATURES + feature] = featureWeightUpdates[state].get(feature);
+			}
+		}
+		return weights;
+	}
+
+	/*
+	 * Returns the squared length of the weights plus the regularization times the smallest slack values that satisfy the constraints
+	 */
+	private static double getObjective(List<Row> rows, double[] weights, boolean sharedSlack) {
+		double objective = 0.0;
+		for (int var = 0; var < weights.length; var++) {
+			objective += weights[var] * weights[var];
+		}
+		double sharedViolation = 0.0;
+		for (int i = 0; i < rows.size(); i++) {
+			Row row = rows.get(i);
+			double violation = Math.max(row.getValue(weights) - row.b, 0.0);
+			if (sharedSlack && i < 2) {
+				sharedViolation = Math.max(sharedViolation, violation);
+			} else if (row.hasSlack) {
+				objective += REGULARIZATION * violation;
+			}
+		}
+		return objective + REGULARIZATION * sharedViolation;
+	}
+
+	// A constraint coefficients . weights (- slack) <= b
+	private static class Row {
+
+		protected double[] coefficients;
+		protected double b;
+		protected boolean hasSlack;
+
+		public Row(double b, boolean hasSlack) {
+			this.coefficients = new double[STATES * FEATURES];
+			this.b = b;
+			this.hasSlack = hasSlack;
+		}
+
+		public double getValue(double[] weights) {
+			double value = 0.0;
+			for (int var = 0; var < coefficients.length; var++) {
+				value += coefficients[var] * weights[var];
+			}
+			return value;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import gnu.trove.map.hash.TObjectDoubleHashMap;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -55,10 +56,11 @@ public class MIRAUpdate implements OnlineOptimizer {
 	private int topNNormalization;
 	private boolean enforceNonNegativeDiagonal;
 	private long solverTimeout;
+	private QuadraticProgram.SolverType solverType;
 
 	public MIRAUpdate(Lexicon lexicon, Dictionary<String> recognitionFeatureSet, RecognitionModelPredictor recognitionModelPredictor, RecognitionModelUpdater recognitionModelUpdater,
 			Map<String, NormalizationModelPredictor> normalizationPredictionModels, Map<String, NormalizationModelUpdater> normalizationUpdaterModels, double regularization, double maxStepSize,
-			long solverTimeout, int topNLabelings, int topNNormalization, boolean enforceNonNegativeDiagonal) {
+			long solverTimeout, QuadraticProgram.SolverType solverType, int topNLabelings, int topNNormalization, boolean enforceNonNegativeDiagonal) {
 		this.lexicon = lexicon;
 		this.recognitionFeatureSet = recognitionFeatureSet;
 		this.recognitionModelPredictor = recognitionModelPredictor;
@@ -67,6 +69,7 @@ public class MIRAUpdate implements OnlineOptimizer {
 		this.normalizationUpdaterModels = normalizationUpdaterModels;
 		this.regularization = regularization;
 		this.solverTimeout = solverTimeout;
+		this.solverType = solverType;
 		this.maxStepSize = maxStepSize;
 		this.topNLabelings = topNLabelings;
 		this.topNNormalization = topNNormalization;
@@ -99,55 +102,27 @@ public class MIRAUpdate implements OnlineOptimizer {
 
 	@Override
 	public void update(List<AnnotatedSegment> targetStateSequence, List<AnnotatedSegment> predictedStateSequence) {
+		updateAll(targetStateSequence, Collections.singletonList(predictedStateSequence));
+	}
+
+	@Override
+	public void updateAll(List<AnnotatedSegment> targetStateSequence, List<List<AnnotatedSegment>> predictedStateSequences) {
 		Profiler.start("MIRAUpdate.update()");
 		Profiler.start("MIRAUpdate.update()@setup");
 
 		logger.info("Updating sequence");
 		logger.info("\ttarget= " + AnnotatedSegment.visualizeStates(targetStateSequence));
-		logger.info("\tprediction= " + AnnotatedSegment.visualizeStates(predictedStateSequence));
 
 		QuadraticProgram qp = new QuadraticProgram(lexicon, recognitionFeatureSet, recognitionModelPredictor.getEntityClassStates(), mentionIndexToNameIndex, normalizationPredictionModels.keySet(),
-				regularization, maxStepSize, solverTimeout);
-
-		// Prepare base constraints
-		QPConstraint baseConstraint = new QPConstraint(qp);
-		baseConstraint.addPath(targetStateSequence, true);
-		baseConstraint.addPath(predictedStateSequence, false);
-
-		double targetScore = scoreStateSequenceNER(targetStateSequence);
-		double predictedScore = scoreStateSequenceNER(predictedStateSequence);
-		double loss = targetScore - predictedScore; // Use a margin equal to the loss
-		logger.info("\tNER loss = " + loss);
-		baseConstraint.addBValue(2.0 * loss);
+				regularization, maxStepSize, solverTimeout, solverType);
 
+		// Add margin constraints separating the target from each prediction
 		List<QPConstraint> constraints = new ArrayList<QPConstraint>();
-		constraints.add(baseConstraint);
-
-		logger.info("Base:");
-		for (int i = 0; i < constraints.size(); i++) {
-			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
+		for (List<AnnotatedSegment> predictedStateSequence : predictedStateSequences) {
+			logger.info("\tprediction= " + AnnotatedSegment.visualizeStates(predictedStateSequence));
+			constraints.addAll(getPredictionConstraints(qp, targetStateSequence, predictedStateSequence));
 		}
 
-		// Add normalization constraint terms from NER FNs
-		addNERFNNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
-
-		logger.info("After adding FNs:");
-		for (int i = 0; i < constraints.size(); i++) {
-			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
-		}
-
-		// Add normalization constraint terms from NER FPs
-		addNERFPNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
-		logger.info("After adding FPs:");
-		for (int i = 0; i < constraints.size(); i++) {
-			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
-		}
-		// Add normalization constraint terms from NER is correct but normalization is not
-		addIncorrectNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
-		logger.info("After adding incorrect normalizations:");
-		for (int i = 0; i < constraints.size(); i++) {
-			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
-		}
 		// Add normalization only constraints
 		if (topNNormalization > 0) {
 			addNormalizationOnlyConstraints(targetStateSequence, qp, constraints);
@@ -229,6 +204,51 @@ public class MIRAUpdate implements OnlineOptimizer {
 		Profiler.stop("MIRAUpdate.update()");
 	}
 
+	/*
+	 * Creates the constraints requiring the target to outscore one prediction by a margin equal to the loss, including the normalization terms
+	 */
+	private List<QPConstraint> getPredictionConstraints(QuadraticProgram qp, List<AnnotatedSegment> targetStateSequence, List<AnnotatedSegment> predictedStateSequence) {
+		QPConstraint baseConstraint = new QPConstraint(qp);
+		baseConstraint.addPath(targetStateSequence, true);
+		baseConstraint.addPath(predictedStateSequence, false);
+
+		double targetScore = scoreStateSequenceNER(targetStateSequence);
+		double predictedScore = scoreStateSequenceNER(predictedStateSequence);
+		double loss = targetScore - predictedScore; // Use a margin equal to the loss
+		logger.info("\tNER loss = " + loss);
+		baseConstraint.addBValue(2.0 * loss);
+
+		List<QPConstraint> constraints = new ArrayList<QPConstraint>();
+		constraints.add(baseConstraint);
+
+		logger.info("Base:");
+		for (int i = 0; i < constraints.size(); i++) {
+			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
+		}
+
+		// Add normalization constraint terms from NER FNs
+		addNERFNNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
+
+		logger.info("After adding FNs:");
+		for (int i = 0; i < constraints.size(); i++) {
+			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
+		}
+
+		// Add normalization constraint terms from NER FPs
+		addNERFPNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
+		logger.info("After adding FPs:");
+		for (int i = 0; i < constraints.size(); i++) {
+			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
+		}
+		// Add normalization constraint terms from NER is correct but normalization is not
+		addIncorrectNormalizationTerms(targetStateSequence, predictedStateSequence, constraints);
+		logger.info("After adding incorrect normalizations:");
+		for (int i = 0; i < constraints.size(); i++) {
+			logger.info("\t" + i + ": loss = " + constraints.get(i).getB());
+		}
+		return constraints;
+	}
+
 	private double scoreStateSequenceNER(List<AnnotatedSegment> stateSequence) {
 		Profiler.start("MIRAUpdate.scoreStateSequenceNER()");
 		double score = 0.0;
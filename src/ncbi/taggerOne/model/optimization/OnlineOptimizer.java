@@ -8,4 +8,9 @@ public interface OnlineOptimizer {
 
 	public void update(List<AnnotatedSegment> targetStateSequence, List<AnnotatedSegment> predictedStateSequence);
 
+	/*
+	 * Updates using several predictions at once, such as the k best labelings, each of which should score below the target
+	 */
+	public void updateAll(List<AnnotatedSegment> targetStateSequence, List<List<AnnotatedSegment>> predictedStateSequences);
+
 }
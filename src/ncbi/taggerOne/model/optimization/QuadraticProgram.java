@@ -32,7 +32,6 @@ import ncbi.util.Profiler;
 
 import org.ojalgo.matrix.store.PrimitiveDenseStore;
 import org.ojalgo.optimisation.Optimisation;
-import org.ojalgo.optimisation.Optimisation.Result;
 import org.ojalgo.optimisation.convex.ConvexSolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,9 +56,10 @@ public class QuadraticProgram {
 	private double regularization;
 	private double maxStepSize;
 	private long solverTimeout;
+	private SolverType solverType;
 
 	public QuadraticProgram(Lexicon lexicon, Dictionary<String> recognitionFeatureSet, Dictionary<String> entityClassStates, Map<String, int[]> mentionIndexToNameIndex, Set<String> entityTypes,
-			double regularization, double maxStepSize, long solverTimeout) {
+			double regularization, double maxStepSize, long solverTimeout, SolverType solverType) {
 		this.lexicon = lexicon;
 		this.recognitionFeatureSet = recognitionFeatureSet;
 		this.entityClassStates = entityClassStates;
@@ -82,6 +82,14 @@ public class QuadraticProgram {
 		}
 		this.maxStepSize = maxStepSize;
 		this.solverTimeout = solverTimeout;
+		this.solverType = solverType;
+	}
+
+	/*
+	 * CONVEX uses the dense ojalgo ConvexSolver; DUAL uses the sparse DualCoordinateAscentSolver
+	 */
+	public enum SolverType {
+		CONVEX, DUAL;
 	}
 
 	public int getConstraintCount() {
@@ -161,16 +169,13 @@ public class QuadraticProgram {
 		return var;
 	}
 
-	private boolean isSlackVar(int variableIndex) {
+	private boolean[] getSlackVarMask() {
+		boolean[] isSlackVar = new boolean[varCount];
 		int[] slackVarKeys = slackVars.keys();
 		for (int i = 0; i < slackVarKeys.length; i++) {
-			int index = slackVarKeys[i];
-			int var = slackVars.get(index);
-			if (variableIndex == var) {
-				return true;
-			}
+			isSlackVar[slackVars.get(slackVarKeys[i])] = true;
 		}
-		return false;
+		return isSlackVar;
 	}
 
 	@SuppressWarnings("static-method")
@@ -209,7 +214,7 @@ public class QuadraticProgram {
 
 	public QuadraticProgram convertQP(boolean[] retainVariables) {
 		QuadraticProgram convertedQP = new QuadraticProgram(lexicon, recognitionFeatureSet, entityClassStates, mentionIndexToNameIndex, normalizationTypeToVars.keySet(), regularization, maxStepSize,
-				solverTimeout);
+				solverTimeout, solverType);
 
 		// Create mapping from old variable indices to new
 		int[] mapping = new int[varCount];
@@ -279,8 +284,6 @@ public class QuadraticProgram {
 	public boolean solve(Vector<String>[] featureWeightUpdates, TObjectDoubleMap<String> cosineSimUpdates, Map<String, Matrix<String, String>> normalizationTypeToWeightUpdates) {
 		Profiler.start("QP.solve()");
 
-		// TODO PERFORMANCE Can we create the stores directly?
-
 		if (logger.isTraceEnabled()) {
 			logger.trace("QP variable descriptions:");
 			String[] varDesc = getVariableDescriptions();
@@ -289,6 +292,86 @@ public class QuadraticProgram {
 			}
 		}
 
+		double[] solution;
+		if (solverType == SolverType.DUAL) {
+			solution = solveDual();
+		} else {
+			solution = solveConvex();
+		}
+		if (solution == null) {
+			Profiler.stop("QP.solve()");
+			return false;
+		}
+
+		if (logger.isTraceEnabled()) {
+			logger.trace("QP solution:");
+			String[] varDesc = getVariableDescriptions();
+			for (int i = 0; i < varDesc.length; i++) {
+				logger.trace(i + "\t" + solution[i] + "\t" + varDesc[i]);
+			}
+		}
+
+		Profiler.start("QP.solve()@finalization");
+
+		// Determine scaling
+		boolean[] isSlackVar = getSlackVarMask();
+		double sqrlen = 0.0;
+		for (int i = 0; i < varCount; i++) {
+			if (!isSlackVar[i]) {
+				sqrlen += solution[i] * solution[i];
+			}
+		}
+		double length = Math.sqrt(sqrlen);
+		logger.info("\tSolution length = " + length);
+		double stepMultiplier = 1.0;
+		if (maxStepSize != 0.0 && length > maxStepSize) {
+			stepMultiplier = maxStepSize / length;
+		}
+		logger.info("\tStep multiplier = " + stepMultiplier);
+
+		// Copy solution
+		double sqrSum = 0.0;
+		sqrSum += copyRecognitionResult(solution, stepMultiplier, featureWeightUpdates);
+		sqrSum += copyCosineSimResult(solution, stepMultiplier, cosineSimUpdates);
+		sqrSum += copyNormalizationResult(solution, stepMultiplier, normalizationTypeToWeightUpdates);
+		logger.info("\tSize of full update = " + Math.sqrt(sqrSum));
+		checkSlackResult(solution);
+
+		Profiler.stop("QP.solve()@finalization");
+		Profiler.stop("QP.solve()");
+		return true;
+	}
+
+	/*
+	 * Solves the QP with the sparse dual coordinate ascent solver, falling back to the convex solver if the QP does not have the structure it requires.
+	 * Returns null on failure.
+	 */
+	private double[] solveDual() {
+		Profiler.start("QP.solve()@solve");
+		DualCoordinateAscentSolver solver = new DualCoordinateAscentSolver(varCount, getSlackVarMask(), regularization, constraints);
+		if (!solver.isSupported()) {
+			Profiler.stop("QP.solve()@solve");
+			logger.warn("QP structure not supported by dual coordinate ascent solver; using convex solver");
+			return solveConvex();
+		}
+		logger.info("\tSolving QP");
+		boolean solved = solver.solve(solverTimeout);
+		Profiler.stop("QP.solve()@solve");
+		if (!solved) {
+			logger.warn("QP solution failed; state = " + solver.getState());
+			logProgram();
+			return null;
+		}
+		logger.info("\tSolution state = " + solver.getState());
+		return solver.getSolution();
+	}
+
+	/*
+	 * Solves the QP with the dense ojalgo convex solver. Returns null on failure.
+	 */
+	private double[] solveConvex() {
+		// TODO PERFORMANCE Can we create the stores directly?
+
 		Profiler.start("QP.solve()@setup");
 
 		// Constrain any slack variables to be non-negative
@@ -365,69 +448,34 @@ public class QuadraticProgram {
 		// Check for failures
 		if (result == null) {
 			logger.warn("QP solution exceeded timeout");
-			logger.warn("QP variable descriptions:");
-			String[] varDesc = getVariableDescriptions();
-			for (int i = 0; i < varDesc.length; i++) {
-				logger.warn(i + "\t" + varDesc[i]);
-			}
-			logger.warn("\tConstraints, in form Ax <= b:");
-			for (int i = 0; i < constraintCount; i++) {
-				logger.warn("\t" + Arrays.toString(aiArray[i]) + " <= " + biArray[i][0]);
-			}
-			Profiler.stop("QP.solve()");
-			return false;
+			logProgram();
+			return null;
 		} else if (result.getState().isFailure()) {
 			logger.warn("QP solution failed; state = " + result.getState().toString());
-			logger.warn("QP variable descriptions:");
-			String[] varDesc = getVariableDescriptions();
-			for (int i = 0; i < varDesc.length; i++) {
-				logger.warn(i + "\t" + varDesc[i]);
-			}
-			logger.warn("\tConstraints, in form Ax <= b:");
-			for (int i = 0; i < constraintCount; i++) {
-				logger.warn("\t" + Arrays.toString(aiArray[i]) + " <= " + biArray[i][0]);
-			}
-			Profiler.stop("QP.solve()");
-			return false;
-		}
-
-		if (logger.isTraceEnabled()) {
-			logger.trace("QP solution:");
-			String[] varDesc = getVariableDescriptions();
-			for (int i = 0; i < varDesc.length; i++) {
-				logger.trace(i + "\t" + result.doubleValue(i) + "\t" + varDesc[i]);
-			}
+			logProgram();
+			return null;
 		}
-
-		Profiler.start("QP.solve()@finalization");
 		logger.info("\tSolution state = " + result.getState().toString());
 
-		// Determine scaling
-		double sqrlen = 0.0;
+		double[] solution = new double[varCount];
 		for (int i = 0; i < varCount; i++) {
-			if (!isSlackVar(i)) {
-				sqrlen += result.doubleValue(i) * result.doubleValue(i);
-			}
-		}
-		double length = Math.sqrt(sqrlen);
-		logger.info("\tSolution length = " + length);
-		double stepMultiplier = 1.0;
-		if (maxStepSize != 0.0 && length > maxStepSize) {
-			stepMultiplier = maxStepSize / length;
+			solution[i] = result.doubleValue(i);
 		}
-		logger.info("\tStep multiplier = " + stepMultiplier);
-
-		// Copy solution
-		double sqrSum = 0.0;
-		sqrSum += copyRecognitionResult(result, stepMultiplier, featureWeightUpdates);
-		sqrSum += copyCosineSimResult(result, stepMultiplier, cosineSimUpdates);
-		sqrSum += copyNormalizationResult(result, stepMultiplier, normalizationTypeToWeightUpdates);
-		logger.info("\tSize of full update = " + Math.sqrt(sqrSum));
-		checkSlackResult(result);
+		return solution;
+	}
 
-		Profiler.stop("QP.solve()@finalization");
-		Profiler.stop("QP.solve()");
-		return true;
+	private void logProgram() {
+		logger.warn("QP variable descriptions:");
+		String[] varDesc = getVariableDescriptions();
+		for (int i = 0; i < varDesc.length; i++) {
+			logger.warn(i + "\t" + varDesc[i]);
+		}
+		logger.warn("\tConstraints, in form Ax <= b:");
+		for (QPConstraint constraint : constraints) {
+			double[] coefficients = new double[varCount];
+			constraint.copyCoefficients(coefficients);
+			logger.warn("\t" + Arrays.toString(coefficients) + " <= " + constraint.getB());
+		}
 	}
 
 	private static class SolverThread extends Thread {
@@ -540,7 +588,7 @@ public class QuadraticProgram {
 		}
 	}
 
-	private double copyRecognitionResult(Result result, double stepSize, Vector<String>[] featureWeightUpdates) {
+	private double copyRecognitionResult(double[] solution, double stepSize, Vector<String>[] featureWeightUpdates) {
 		double sqrSum = 0.0;
 		long[] keys = recognitionVars.keys();
 		for (int i = 0; i < keys.length; i++) {
@@ -548,7 +596,7 @@ public class QuadraticProgram {
 			int state = getRow(joint);
 			int index = getColumn(joint);
 			int var = recognitionVars.get(joint);
-			double value = stepSize * result.doubleValue(var);
+			double value = stepSize * solution[var];
 			sqrSum += value * value;
 			featureWeightUpdates[state].set(index, value);
 		}
@@ -556,11 +604,11 @@ public class QuadraticProgram {
 		return sqrSum;
 	}
 
-	private double copyCosineSimResult(Result result, double stepSize, TObjectDoubleMap<String> cosineSimUpdates) {
+	private double copyCosineSimResult(double[] solution, double stepSize, TObjectDoubleMap<String> cosineSimUpdates) {
 		double totalSqrSum = 0.0;
 		for (String entityType : cosineSimVars.keySet()) {
 			int var = cosineSimVars.get(entityType);
-			double value = stepSize * result.doubleValue(var);
+			double value = stepSize * solution[var];
 			cosineSimUpdates.put(entityType, value);
 			double sqrSum = value * value;
 			logger.info("\tSize of cosine sim update for type " + entityType + " = " + Math.sqrt(sqrSum));
@@ -569,7 +617,7 @@ public class QuadraticProgram {
 		return totalSqrSum;
 	}
 
-	private double copyNormalizationResult(Result result, double stepSize, Map<String, Matrix<String, String>> normalizationTypeToWeightUpdates) {
+	private double copyNormalizationResult(double[] solution, double stepSize, Map<String, Matrix<String, String>> normalizationTypeToWeightUpdates) {
 		double totalSqrSum = 0.0;
 		for (String entityType : normalizationTypeToVars.keySet()) {
 			TLongIntMap normalizationVars = normalizationTypeToVars.get(entityType);
@@ -581,7 +629,7 @@ public class QuadraticProgram {
 				int row = getRow(index);
 				int col = getColumn(index);
 				int var = normalizationVars.get(index);
-				double value = stepSize * result.doubleValue(var);
+				double value = stepSize * solution[var];
 				sqrSum += value * value;
 				normalizationWeightUpdates.set(row, col, value);
 			}
@@ -591,13 +639,13 @@ public class QuadraticProgram {
 		return totalSqrSum;
 	}
 
-	private void checkSlackResult(Result result) {
+	private void checkSlackResult(double[] solution) {
 		double sum = 0.0;
 		int[] keys = slackVars.keys();
 		for (int i = 0; i < keys.length; i++) {
 			int index = keys[i];
 			int var = slackVars.get(index);
-			sum += result.doubleValue(var);
+			sum += solution[var];
 		}
 		logger.info("\tSize of slack loading = " + sum);
 	}
@@ -661,6 +709,10 @@ public class QuadraticProgram {
 			return b;
 		}
 
+		public int[] getVariables() {
+			return coefficients.keys();
+		}
+
 		public void addRaw(int index, double coefficient) {
 			updateCoefficient(index, coefficient, false);
 		}
@@ -768,4 +820,4 @@ public class QuadraticProgram {
 			}
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -4,6 +4,7 @@ import ncbi.taggerOne.processing.TrainingProgressTracker;
 import ncbi.taggerOne.types.Segment;
 import ncbi.taggerOne.types.Token;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.HashedDictionary;
 import ncbi.taggerOne.util.vector.DenseVector;
 import ncbi.taggerOne.util.vector.Vector;
 import ncbi.util.Profiler;
@@ -24,6 +25,9 @@ public class AveragedRecognitionModel extends RecognitionModel {
 	}
 
 	public String visualizeFeature(String featureName, String stateName) {
+		if (featureSet instanceof HashedDictionary) {
+			throw new IllegalStateException("Cannot visualize a feature by name when features are hashed");
+		}
 		StringBuilder visualization = new StringBuilder();
 		int featureIndex = featureSet.getIndex(featureName);
 		visualization.append(featureName + "\t" + featureIndex + "\t");
@@ -68,6 +72,11 @@ public class AveragedRecognitionModel extends RecognitionModel {
 		return score;
 	}
 
+	@Override
+	public double score(int stateIndex, Vector<String> features) {
+		return features.dotProduct(featureWeights[stateIndex]) - features.dotProduct(featureWeights2[stateIndex]) / trainingProgress.getInstances();
+	}
+
 	@Override
 	public void update(Vector<String>[] featureWeightUpdates) {
 		Profiler.start("AveragedRecognitionModel.update2()");
@@ -0,0 +1,13 @@
+package ncbi.taggerOne.model.recognition;
+
+import ncbi.taggerOne.types.TextInstance;
+
+/*
+ * A recognition model that can score all segments of a TextInstance from a table computed once per instance, instead of one predict() call per segment
+ * and state
+ */
+public interface BatchRecognitionModelPredictor extends RecognitionModelPredictor {
+
+	public RecognitionScoreTable getScoreTable(TextInstance input);
+
+}
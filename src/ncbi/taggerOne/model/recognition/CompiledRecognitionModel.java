@@ -0,0 +1,193 @@
+package ncbi.taggerOne.model.recognition;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.vector.Vector;
+import ncbi.taggerOne.util.vector.Vector.VectorIterator;
+import ncbi.util.Profiler;
+
+/*
+ * A read-only recognition model with the weights stored feature-major: the weights of feature f for all states are contiguous, at positions
+ * f * stateCount to (f + 1) * stateCount - 1, so each active feature contributes to every state score from a single cache line. Weights are stored as
+ * floats, or as bytes with one float scale per feature, to reduce memory bandwidth; scores are accumulated in double precision. Scores may therefore
+ * differ slightly from the RecognitionModel this was created from; getMaxWeightError() and getMaxScoreError() measure by how much.
+ */
+public class CompiledRecognitionModel implements BatchRecognitionModelPredictor, RecognitionScoreTable.FeatureScorer {
+
+	private static final Logger logger = LoggerFactory.getLogger(CompiledRecognitionModel.class);
+	private static final long serialVersionUID = 1L;
+
+	public enum Precision {
+		FLOAT, INT8;
+	}
+
+	private Dictionary<String> featureSet;
+	private Dictionary<String> entityClassStates;
+	private Precision precision;
+	private int stateCount;
+	private float[] weights; // Used if precision is FLOAT
+	private byte[] quantizedWeights; // Used if precision is INT8
+	private float[] scales; // Used if precision is INT8, the weight is quantizedWeights[f * stateCount + s] * scales[f]
+	private double maxWeightError;
+
+	public CompiledRecognitionModel(RecognitionModel model, Precision precision) {
+		this.featureSet = model.featureSet;
+		this.entityClassStates = model.entityClassStates;
+		this.precision = precision;
+		stateCount = entityClassStates.size();
+		int featureCount = featureSet.size();
+		double[] featureStateWeights = new double[featureCount * stateCount];
+		for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+			VectorIterator iterator = model.featureWeights[stateIndex].getIterator();
+			while (iterator.next()) {
+				featureStateWeights[iterator.getIndex() * stateCount + stateIndex] = iterator.getValue();
+			}
+		}
+		maxWeightError = 0.0;
+		if (precision == Precision.FLOAT) {
+			weights = new float[featureStateWeights.length];
+			for (int position = 0; position < featureStateWeights.length; position++) {
+				weights[position] = (float) featureStateWeights[position];
+				maxWeightError = Math.max(maxWeightError, Math.abs(weights[position] - featureStateWeights[position]));
+			}
+		} else if (precision == Precision.INT8) {
+			quantizedWeights = new byte[featureStateWeights.length];
+			scales = new float[featureCount];
+			for (int featureIndex = 0; featureIndex < featureCount; featureIndex++) {
+				int start = featureIndex * stateCount;
+				double maxAbsWeight = 0.0;
+				for (int position = start; position < start + stateCount; position++) {
+					maxAbsWeight = Math.max(maxAbsWeight, Math.abs(featureStateWeights[position]));
+				}
+				float scale = (float) (maxAbsWeight / Byte.MAX_VALUE);
+				scales[featureIndex] = scale;
+				for (int position = start; position < start + stateCount; position++) {
+					if (scale > 0.0f) {
+						quantizedWeights[position] = (byte) Math.max(-Byte.MAX_VALUE, Math.min(Byte.MAX_VALUE, Math.round(featureStateWeights[position] / scale)));
+					}
+					maxWeightError = Math.max(maxWeightError, Math.abs(quantizedWeights[position] * scale - featureStateWeights[position]));
+				}
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown precision " + precision);
+		}
+	}
+
+	@Override
+	public Dictionary<String> getEntityClassStates() {
+		return entityClassStates;
+	}
+
+	@Override
+	public Dictionary<String> getFeatureSet() {
+		return featureSet;
+	}
+
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/*
+	 * Returns the largest absolute difference between a stored weight and the corresponding weight of the original model
+	 */
+	public double getMaxWeightError() {
+		return maxWeightError;
+	}
+
+	/*
+	 * Returns the largest absolute difference between the score of this model and the score of the reference model, over all segments of the input and all
+	 * states; the segments and token features of the input must have been instantiated
+	 */
+	public double getMaxScoreError(RecognitionModelPredictor reference, TextInstance input) {
+		double maxScoreError = 0.0;
+		RecognitionScoreTable scoreTable = getScoreTable(input);
+		for (Segment segment : input.getSegments()) {
+			for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+				double referenceScore = reference.predict(entityClassStates.getElement(stateIndex), segment);
+				maxScoreError = Math.max(maxScoreError, Math.abs(scoreTable.predict(stateIndex, segment) - referenceScore));
+			}
+		}
+		return maxScoreError;
+	}
+
+	@Override
+	public void visualize() {
+		logger.info("Compiled recognition model with " + featureSet.size() + " features, " + stateCount + " states, precision " + precision + ", max weight error " + maxWeightError);
+	}
+
+	@Override
+	public RecognitionModelPredictor compile() {
+		return this;
+	}
+
+	@Override
+	public double predict(String toState, Segment segment) {
+		Profiler.start("CompiledRecognitionModel.predict()");
+		int toStateIndex = entityClassStates.getIndex(toState);
+		double score = score(toStateIndex, segment.getFeatures());
+		for (Token token : segment.getTokens()) {
+			score += score(toStateIndex, token.getFeatures());
+		}
+		Profiler.stop("CompiledRecognitionModel.predict()");
+		return score;
+	}
+
+	@Override
+	public double score(int stateIndex, Vector<String> features) {
+		double score = 0.0;
+		VectorIterator iterator = features.getIterator();
+		if (weights != null) {
+			while (iterator.next()) {
+				score += iterator.getValue() * weights[iterator.getIndex() * stateCount + stateIndex];
+			}
+		} else {
+			while (iterator.next()) {
+				int featureIndex = iterator.getIndex();
+				score += iterator.getValue() * scales[featureIndex] * quantizedWeights[featureIndex * stateCount + stateIndex];
+			}
+		}
+		return score;
+	}
+
+	@Override
+	public void scoreAllStates(Vector<String> features, double[] scores, int offset) {
+		for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+			scores[offset + stateIndex] = 0.0;
+		}
+		VectorIterator iterator = features.getIterator();
+		if (weights != null) {
+			while (iterator.next()) {
+				double value = iterator.getValue();
+				int position = iterator.getIndex() * stateCount;
+				for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+					scores[offset + stateIndex] += value * weights[position + stateIndex];
+				}
+			}
+		} else {
+			while (iterator.next()) {
+				int featureIndex = iterator.getIndex();
+				double value = iterator.getValue() * scales[featureIndex];
+				int position = featureIndex * stateCount;
+				for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+					scores[offset + stateIndex] += value * quantizedWeights[position + stateIndex];
+				}
+			}
+		}
+	}
+
+	@Override
+	public RecognitionScoreTable getScoreTable(TextInstance input) {
+		Profiler.start("CompiledRecognitionModel.getScoreTable()");
+		List<Token> tokens = input.getTokens();
+		RecognitionScoreTable scoreTable = new RecognitionScoreTable(entityClassStates, this, tokens);
+		Profiler.stop("CompiledRecognitionModel.getScoreTable()");
+		return scoreTable;
+	}
+}
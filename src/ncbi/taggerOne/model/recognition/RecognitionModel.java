@@ -9,14 +9,16 @@ import org.slf4j.LoggerFactory;
 
 import ncbi.taggerOne.processing.TrainingProgressTracker;
 import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.types.Token;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.HashedDictionary;
 import ncbi.taggerOne.util.vector.DenseVector;
 import ncbi.taggerOne.util.vector.Vector;
 import ncbi.util.Profiler;
 import ncbi.util.SimpleComparator;
 
-public class RecognitionModel implements RecognitionModelPredictor, RecognitionModelUpdater {
+public class RecognitionModel implements BatchRecognitionModelPredictor, RecognitionModelUpdater, RecognitionScoreTable.FeatureScorer {
 
 	private static final Logger logger = LoggerFactory.getLogger(RecognitionModel.class);
 	private static final long serialVersionUID = 1L;
@@ -66,6 +68,11 @@ public class RecognitionModel implements RecognitionModelPredictor, RecognitionM
 
 	@Override
 	public void visualize() {
+		if (featureSet instanceof HashedDictionary) {
+			// Feature names are not stored, so there is nothing to show for each index
+			logger.info("Features are hashed into " + featureSet.size() + " indices; feature names are not available");
+			return;
+		}
 		for (int stateIndex = 0; stateIndex < entityClassStates.size(); stateIndex++) {
 			logger.info("Features for state \"" + entityClassStates.getElement(stateIndex) + "\":");
 			Vector<String> featureWeightsForState = featureWeights[stateIndex];
@@ -118,6 +125,26 @@ public class RecognitionModel implements RecognitionModelPredictor, RecognitionM
 		return score;
 	}
 
+	@Override
+	public double score(int stateIndex, Vector<String> features) {
+		return features.dotProduct(featureWeights[stateIndex]);
+	}
+
+	@Override
+	public void scoreAllStates(Vector<String> features, double[] scores, int offset) {
+		for (int stateIndex = 0; stateIndex < entityClassStates.size(); stateIndex++) {
+			scores[offset + stateIndex] = score(stateIndex, features);
+		}
+	}
+
+	@Override
+	public RecognitionScoreTable getScoreTable(TextInstance input) {
+		Profiler.start("RecognitionModel.getScoreTable()");
+		RecognitionScoreTable scoreTable = new RecognitionScoreTable(entityClassStates, this, input.getTokens());
+		Profiler.stop("RecognitionModel.getScoreTable()");
+		return scoreTable;
+	}
+
 	@Override
 	public void update(Vector<String>[] featureWeightUpdates) {
 		Profiler.start("RecognitionModel.update()");
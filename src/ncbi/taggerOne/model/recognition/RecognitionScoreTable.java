@@ -0,0 +1,67 @@
+package ncbi.taggerOne.model.recognition;
+
+import java.util.List;
+
+import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.vector.Vector;
+
+/*
+ * Recognition scores for one TextInstance. The score of a segment is the score of its own features plus the scores of the features of its tokens; the
+ * token scores are computed once for every state and stored as prefix sums in a dense tokens x states matrix, so the token part of any segment is one
+ * subtraction instead of one dot product per token. Results may differ from RecognitionModelPredictor.predict() by floating point rounding.
+ */
+public class RecognitionScoreTable {
+
+	/*
+	 * Scores a feature vector for one state
+	 */
+	public interface FeatureScorer {
+		public double score(int stateIndex, Vector<String> features);
+
+		/*
+		 * Stores the score of the feature vector for every state in scores, starting at offset
+		 */
+		public void scoreAllStates(Vector<String> features, double[] scores, int offset);
+	}
+
+	private Dictionary<String> entityClassStates;
+	private FeatureScorer scorer;
+	private int stateCount;
+	private double[] tokenScorePrefixSums; // Entry (t * stateCount + s) is the sum of the scores of tokens 0 to t - 1 for state s
+
+	public RecognitionScoreTable(Dictionary<String> entityClassStates, FeatureScorer scorer, List<Token> tokens) {
+		this.entityClassStates = entityClassStates;
+		this.scorer = scorer;
+		stateCount = entityClassStates.size();
+		tokenScorePrefixSums = new double[(tokens.size() + 1) * stateCount];
+		int position = stateCount;
+		for (int tokenIndex = 0; tokenIndex < tokens.size(); tokenIndex++) {
+			scorer.scoreAllStates(tokens.get(tokenIndex).getFeatures(), tokenScorePrefixSums, position);
+			for (int stateIndex = 0; stateIndex < stateCount; stateIndex++) {
+				tokenScorePrefixSums[position] += tokenScorePrefixSums[position - stateCount];
+				position++;
+			}
+		}
+	}
+
+	public int getStateIndex(String state) {
+		return entityClassStates.getIndex(state);
+	}
+
+	/*
+	 * Returns the sum of the token scores for tokens startIndex to endIndex, inclusive
+	 */
+	public double getTokenScores(int stateIndex, int startIndex, int endIndex) {
+		return tokenScorePrefixSums[(endIndex + 1) * stateCount + stateIndex] - tokenScorePrefixSums[startIndex * stateCount + stateIndex];
+	}
+
+	public double predict(int stateIndex, Segment segment) {
+		return scorer.score(stateIndex, segment.getFeatures()) + getTokenScores(stateIndex, segment.getStartIndex(), segment.getEndIndex());
+	}
+
+	public double predict(String toState, Segment segment) {
+		return predict(entityClassStates.getIndex(toState), segment);
+	}
+}
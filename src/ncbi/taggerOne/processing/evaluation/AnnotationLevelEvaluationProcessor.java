@@ -1,9 +1,9 @@
 package ncbi.taggerOne.processing.evaluation;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import ncbi.taggerOne.T1Constants;
 import ncbi.taggerOne.types.AnnotatedSegment;
@@ -27,7 +27,8 @@ public class AnnotationLevelEvaluationProcessor extends EvaluationProcessor {
 	@Override
 	public void reset() {
 		overallScore = new ScoreKeeper();
-		scoresByType = new HashMap<String, ScoreKeeper>();
+		// Sorted so that the types are listed in the same order however the scores were accumulated
+		scoresByType = new TreeMap<String, ScoreKeeper>();
 	}
 
 	@Override
@@ -45,6 +46,20 @@ public class AnnotationLevelEvaluationProcessor extends EvaluationProcessor {
 		return detail.toString().trim();
 	}
 
+	@Override
+	public EvaluationProcessor newAccumulator() {
+		return new AnnotationLevelEvaluationProcessor(scoreDetailPrefix, conditions);
+	}
+
+	@Override
+	public void merge(EvaluationProcessor accumulator) {
+		AnnotationLevelEvaluationProcessor other = (AnnotationLevelEvaluationProcessor) accumulator;
+		overallScore.add(other.overallScore);
+		for (Map.Entry<String, ScoreKeeper> entry : other.scoresByType.entrySet()) {
+			getScoreKeeper(entry.getKey()).add(entry.getValue());
+		}
+	}
+
 	@Override
 	public void process(TextInstance input) {
 
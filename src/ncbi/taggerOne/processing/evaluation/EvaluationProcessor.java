@@ -17,6 +17,17 @@ public abstract class EvaluationProcessor extends TextInstanceProcessor {
 
 	public abstract String scoreDetail();
 
+	/*
+	 * Returns a processor with the same configuration and no counts, so that instances can be evaluated on several threads, each with its own
+	 * accumulator, and the accumulators then merged into this processor
+	 */
+	public abstract EvaluationProcessor newAccumulator();
+
+	/*
+	 * Adds the counts of an accumulator returned by newAccumulator(); the result is the same as if this processor had processed its instances
+	 */
+	public abstract void merge(EvaluationProcessor accumulator);
+
 	// TODO Create an n-best recall evaluator
 
 }
@@ -0,0 +1,210 @@
+package ncbi.taggerOne.processing.evaluation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.T1Constants;
+import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
+import ncbi.taggerOne.processing.evaluation.AnnotationLevelEvaluationProcessor.Condition;
+import ncbi.taggerOne.types.AnnotatedSegment;
+import ncbi.taggerOne.types.Entity;
+import ncbi.taggerOne.types.MentionName;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.RankedList;
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector;
+
+public class EvaluationProcessorMergeTest {
+
+	// Enough types that the per-type details would come out in a different order if they depended on insertion order
+	private static final String[] TYPES = { "Chemical", "Disease", "Gene", "Species", "CellLine", "Mutation", "Variant", "Organ" };
+	private static final int ENTITIES_PER_TYPE = 4;
+	private static final int ACCUMULATORS = 4;
+
+	@Test
+	public void testMergedAccumulatorsMatchSingleProcessor() {
+		Random random = new Random(1);
+		Dictionary<String> mentionVectorSpace = new Dictionary<String>();
+		for (int i = 0; i < 5; i++) {
+			mentionVectorSpace.addElement("w" + i);
+		}
+		mentionVectorSpace.freeze();
+		Map<String, List<Entity>> entitiesByType = new HashMap<String, List<Entity>>();
+		Map<String, NormalizationModelPredictor> normalizationModels = new HashMap<String, NormalizationModelPredictor>();
+		for (String type : TYPES) {
+			List<Entity> entities = new ArrayList<Entity>();
+			for (int i = 0; i < ENTITIES_PER_TYPE; i++) {
+				entities.add(new Entity(type, type + i, new MentionName(type + " name " + i)));
+			}
+			entitiesByType.put(type, entities);
+			normalizationModels.put(type, new HashNormalizationModel(entities));
+		}
+
+		for (int trial = 0; trial < 50; trial++) {
+			List<TextInstance> instances = new ArrayList<TextInstance>();
+			int instanceCount = 1 + random.nextInt(30);
+			for (int i = 0; i < instanceCount; i++) {
+				// Few source ids, so that instances from the same source are split across accumulators
+				instances.add(createInstance(random, i, "S" + random.nextInt(5), entitiesByType, mentionVectorSpace));
+			}
+			String message = "trial " + trial;
+			checkMerge(message, new MacroInstanceLevelEvaluationProcessor("TEST"), new MacroInstanceLevelEvaluationProcessor("TEST"), instances, random);
+			checkMerge(message, new PerfectNERInstanceLevelEvaluationProcessor("TEST", normalizationModels), new PerfectNERInstanceLevelEvaluationProcessor("TEST", normalizationModels), instances, random);
+			checkMerge(message, new PerfectNERAnnotationLevelEvaluationProcessor("TEST", normalizationModels), new PerfectNERAnnotationLevelEvaluationProcessor("TEST", normalizationModels), instances, random);
+			checkMerge(message, new InstanceLevelEvaluationProcessor("TEST"), new InstanceLevelEvaluationProcessor("TEST"), instances, random);
+			checkMerge(message, new AnnotationLevelEvaluationProcessor("TEST", Condition.EXACT_BOUNDARY, Condition.ENTITY_CLASS), new AnnotationLevelEvaluationProcessor("TEST", Condition.EXACT_BOUNDARY, Condition.ENTITY_CLASS), instances, random);
+			checkMerge(message, new AnnotationLevelEvaluationProcessor("TEST", Condition.OVERLAP_BOUNDARY, Condition.ENTITY_ID), new AnnotationLevelEvaluationProcessor("TEST", Condition.OVERLAP_BOUNDARY, Condition.ENTITY_ID), instances, random);
+		}
+	}
+
+	private static void checkMerge(String message, EvaluationProcessor single, EvaluationProcessor merged, List<TextInstance> instances, Random random) {
+		for (TextInstance instance : instances) {
+			single.process(instance);
+		}
+		// Includes accumulators that see no instances
+		List<EvaluationProcessor> accumulators = new ArrayList<EvaluationProcessor>();
+		for (int i = 0; i < ACCUMULATORS; i++) {
+			accumulators.add(merged.newAccumulator());
+		}
+		for (TextInstance instance : instances) {
+			accumulators.get(random.nextInt(ACCUMULATORS)).process(instance);
+		}
+		for (int i = ACCUMULATORS - 1; i >= 0; i--) {
+			merged.merge(accumulators.get(i));
+		}
+		message = message + ", " + single.getClass().getSimpleName();
+		assertEquals(message, single.score(), merged.score(), 0.0);
+		assertEquals(message, single.scoreDetail(), merged.scoreDetail());
+	}
+
+	private static TextInstance createInstance(Random random, int id, String sourceId, Map<String, List<Entity>> entitiesByType, Dictionary<String> mentionVectorSpace) {
+		int tokenCount = 1 + random.nextInt(10);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < tokenCount; i++) {
+			text.append(i == 0 ? "t" : " t");
+		}
+		TextInstance instance = new TextInstance(Integer.toString(id), sourceId, text.toString(), 0);
+		List<Token> tokens = new ArrayList<Token>();
+		for (int i = 0; i < tokenCount; i++) {
+			tokens.add(new Token(instance, 2 * i, 2 * i + 1, i));
+		}
+		instance.setTokens(tokens);
+
+		List<AnnotatedSegment> targetStateSequence = new ArrayList<AnnotatedSegment>();
+		List<AnnotatedSegment> targetAnnotation = new ArrayList<AnnotatedSegment>();
+		List<AnnotatedSegment> predictedAnnotation = new ArrayList<AnnotatedSegment>();
+		int start = 0;
+		while (start < tokenCount) {
+			int end = Math.min(tokenCount, start + 1 + random.nextInt(3));
+			List<Token> segmentTokens = tokens.subList(start, end);
+			int startChar = 2 * start;
+			int endChar = 2 * end - 1;
+			if (random.nextInt(3) == 0) {
+				targetStateSequence.add(new AnnotatedSegment(instance, startChar, endChar, segmentTokens, T1Constants.NONENTITY_STATE));
+			} else {
+				AnnotatedSegment target = new AnnotatedSegment(instance, startChar, endChar, segmentTokens, createEntities(random, entitiesByType));
+				if (random.nextInt(4) > 0) {
+					target.getMentionName().setVector(createVector(random, mentionVectorSpace));
+				}
+				targetStateSequence.add(target);
+				targetAnnotation.add(target);
+			}
+			// Predictions that match the target, differ in boundary, type or identifier, or are missing
+			int prediction = random.nextInt(4);
+			if (prediction == 0 && targetAnnotation.size() > 0 && targetAnnotation.get(targetAnnotation.size() - 1).getStartChar() == startChar) {
+				predictedAnnotation.add(targetAnnotation.get(targetAnnotation.size() - 1));
+			} else if (prediction == 1) {
+				int predictedEnd = start + 1 + random.nextInt(end - start);
+				predictedAnnotation.add(new AnnotatedSegment(instance, startChar, 2 * predictedEnd - 1, tokens.subList(start, predictedEnd), createEntities(random, entitiesByType)));
+			} else if (prediction == 2) {
+				predictedAnnotation.add(new AnnotatedSegment(instance, startChar, endChar, segmentTokens, createEntities(random, entitiesByType)));
+			}
+			start = end;
+		}
+		instance.setTargetStateSequence(targetStateSequence);
+		instance.setTargetAnnotation(targetAnnotation);
+		RankedList<List<AnnotatedSegment>> predictedAnnotations = new RankedList<List<AnnotatedSegment>>(1);
+		predictedAnnotations.add(0.0, predictedAnnotation);
+		instance.setPredictedAnnotations(predictedAnnotations);
+		return instance;
+	}
+
+	private static Set<Entity> createEntities(Random random, Map<String, List<Entity>> entitiesByType) {
+		List<Entity> entities = entitiesByType.get(TYPES[random.nextInt(TYPES.length)]);
+		Set<Entity> selected = new HashSet<Entity>();
+		int count = 1 + random.nextInt(2);
+		for (int i = 0; i < count; i++) {
+			selected.add(entities.get(random.nextInt(entities.size())));
+		}
+		return selected;
+	}
+
+	private static Vector<String> createVector(Random random, Dictionary<String> space) {
+		Vector<String> vector = new SparseVector<String>(space);
+		vector.set(random.nextInt(space.size()), 1.0);
+		return vector;
+	}
+
+	// Returns the same entity for the same mention vector
+	private static class HashNormalizationModel implements NormalizationModelPredictor {
+
+		private static final long serialVersionUID = 1L;
+
+		private List<Entity> entities;
+
+		public HashNormalizationModel(List<Entity> entities) {
+			this.entities = entities;
+		}
+
+		@Override
+		public double getScoreBound(Vector<String> mentionVector) {
+			return 1.0;
+		}
+
+		@Override
+		public void findBest(Vector<String> mentionVector, RankedList<Entity> bestEntities) {
+			for (Entity entity : entities) {
+				double score = scoreEntity(mentionVector, entity);
+				if (bestEntities.check(score)) {
+					bestEntities.add(score, entity);
+				}
+			}
+		}
+
+		@Override
+		public MentionName findBestName(Vector<String> mentionVector, Entity entity) {
+			return entity.getPrimaryName();
+		}
+
+		@Override
+		public double scoreEntity(Vector<String> mentionVector, Entity entity) {
+			return entities.indexOf(entity) == Math.abs(mentionVector.toString().hashCode() % entities.size()) ? 1.0 : 0.0;
+		}
+
+		@Override
+		public double scoreNameVector(Vector<String> mentionVector, Vector<String> nameVector) {
+			return 0.0;
+		}
+
+		@Override
+		public void visualizeScore(Vector<String> mentionVector, Vector<String> nameVector) {
+			// Nothing to show
+		}
+
+		@Override
+		public NormalizationModelPredictor compile() {
+			return this;
+		}
+	}
+}
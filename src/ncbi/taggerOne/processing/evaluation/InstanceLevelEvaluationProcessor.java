@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import ncbi.taggerOne.T1Constants;
 import ncbi.taggerOne.types.AnnotatedSegment;
@@ -36,6 +37,31 @@ public class InstanceLevelEvaluationProcessor extends EvaluationProcessor {
 		typeToPredictedSet = new HashMap<String, Set<String>>();
 	}
 
+	@Override
+	public EvaluationProcessor newAccumulator() {
+		return new InstanceLevelEvaluationProcessor(scoreDetailPrefix);
+	}
+
+	@Override
+	public void merge(EvaluationProcessor accumulator) {
+		InstanceLevelEvaluationProcessor other = (InstanceLevelEvaluationProcessor) accumulator;
+		goldSet.addAll(other.goldSet);
+		predictedSet.addAll(other.predictedSet);
+		mergeByType(typeToGoldSet, other.typeToGoldSet);
+		mergeByType(typeToPredictedSet, other.typeToPredictedSet);
+	}
+
+	private static void mergeByType(Map<String, Set<String>> typeToSet, Map<String, Set<String>> otherTypeToSet) {
+		for (Map.Entry<String, Set<String>> entry : otherTypeToSet.entrySet()) {
+			Set<String> set = typeToSet.get(entry.getKey());
+			if (set == null) {
+				set = new HashSet<String>();
+				typeToSet.put(entry.getKey(), set);
+			}
+			set.addAll(entry.getValue());
+		}
+	}
+
 	@Override
 	public double score() {
 		ScoreKeeper score = new ScoreKeeper();
@@ -49,7 +75,8 @@ public class InstanceLevelEvaluationProcessor extends EvaluationProcessor {
 		score.update(goldSet, predictedSet);
 		StringBuilder detail = new StringBuilder();
 		detail.append(String.format("%s\tINSTANCE\t%s\t%s%n", scoreDetailPrefix, T1Constants.OVERALL_EVALUATION, score.scoreDetail()));
-		Set<String> entityTypes = new HashSet<String>();
+		// Sorted so that the types are listed in the same order however the maps were filled
+		Set<String> entityTypes = new TreeSet<String>();
 		entityTypes.addAll(typeToGoldSet.keySet());
 		entityTypes.addAll(typeToPredictedSet.keySet());
 		for (String entityType : entityTypes) {
@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import ncbi.taggerOne.T1Constants;
 import ncbi.taggerOne.types.AnnotatedSegment;
@@ -66,6 +67,29 @@ public class MacroInstanceLevelEvaluationProcessor extends EvaluationProcessor {
 		predictedEntityMap.clear();
 	}
 
+	@Override
+	public EvaluationProcessor newAccumulator() {
+		return new MacroInstanceLevelEvaluationProcessor(scoreDetailPrefix);
+	}
+
+	@Override
+	public void merge(EvaluationProcessor accumulator) {
+		MacroInstanceLevelEvaluationProcessor other = (MacroInstanceLevelEvaluationProcessor) accumulator;
+		mergeById(targetEntityMap, other.targetEntityMap);
+		mergeById(predictedEntityMap, other.predictedEntityMap);
+	}
+
+	private static void mergeById(Map<String, Set<Entity>> entityMap, Map<String, Set<Entity>> otherEntityMap) {
+		for (Map.Entry<String, Set<Entity>> entry : otherEntityMap.entrySet()) {
+			Set<Entity> entities = entityMap.get(entry.getKey());
+			if (entities == null) {
+				entities = new HashSet<Entity>();
+				entityMap.put(entry.getKey(), entities);
+			}
+			entities.addAll(entry.getValue());
+		}
+	}
+
 	@Override
 	public double score() {
 		TDoubleList precisionValues = new TDoubleArrayList();
@@ -89,7 +113,8 @@ public class MacroInstanceLevelEvaluationProcessor extends EvaluationProcessor {
 	}
 
 	private void calculateScores(TDoubleList precisionValues, TDoubleList recallValues, TDoubleList fmeasureValues) {
-		Set<String> evaluationIds = new HashSet<String>();
+		// Sorted so that the per-instance scores are summed in the same order however the maps were filled
+		Set<String> evaluationIds = new TreeSet<String>();
 		evaluationIds.addAll(targetEntityMap.keySet());
 		evaluationIds.addAll(predictedEntityMap.keySet());
 		for (String id : evaluationIds) {
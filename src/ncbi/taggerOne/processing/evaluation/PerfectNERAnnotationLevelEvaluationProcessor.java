@@ -70,6 +70,16 @@ public class PerfectNERAnnotationLevelEvaluationProcessor extends EvaluationProc
 		score = new ScoreKeeper();
 	}
 
+	@Override
+	public EvaluationProcessor newAccumulator() {
+		return new PerfectNERAnnotationLevelEvaluationProcessor(scoreDetailPrefix, normalizationPredictionModels);
+	}
+
+	@Override
+	public void merge(EvaluationProcessor accumulator) {
+		score.add(((PerfectNERAnnotationLevelEvaluationProcessor) accumulator).score);
+	}
+
 	@Override
 	public double score() {
 		return score.getF();
@@ -34,6 +34,18 @@ public class PerfectNERInstanceLevelEvaluationProcessor extends EvaluationProces
 		predictedSet = new HashSet<String>();
 	}
 
+	@Override
+	public EvaluationProcessor newAccumulator() {
+		return new PerfectNERInstanceLevelEvaluationProcessor(scoreDetailPrefix, normalizationTrainingPredictionModels);
+	}
+
+	@Override
+	public void merge(EvaluationProcessor accumulator) {
+		PerfectNERInstanceLevelEvaluationProcessor other = (PerfectNERInstanceLevelEvaluationProcessor) accumulator;
+		goldSet.addAll(other.goldSet);
+		predictedSet.addAll(other.predictedSet);
+	}
+
 	@Override
 	public double score() {
 		ScoreKeeper score = new ScoreKeeper();
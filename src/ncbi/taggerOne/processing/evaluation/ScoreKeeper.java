@@ -45,6 +45,12 @@ public class ScoreKeeper implements Serializable {
 		fn++;
 	}
 
+	public void add(ScoreKeeper other) {
+		tp += other.tp;
+		fp += other.fp;
+		fn += other.fn;
+	}
+
 	public <T> void update(Set<T> goldSet, Set<T> predictedSet) {
 		List<T> goldValues = new ArrayList<T>(goldSet);
 		List<T> predictedValues = new ArrayList<T>(predictedSet);
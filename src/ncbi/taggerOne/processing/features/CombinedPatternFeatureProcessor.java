@@ -0,0 +1,125 @@
+package ncbi.taggerOne.processing.features;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ncbi.taggerOne.processing.features.segment.SegmentPatternFeatureProcessor;
+import ncbi.taggerOne.processing.features.token.TokenPatternFeatureProcessor;
+import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.SegmentLattice;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.PatternAutomaton;
+
+/*
+ * Produces the same features as a set of TokenPatternFeatureProcessors and SegmentPatternFeatureProcessors, but tests all token patterns in one pass over
+ * each token and all segment patterns in one pass over each segment, using a PatternAutomaton. Segments are processed by starting token, so that each
+ * segment continues from the automaton state reached for the previous, shorter segment and only reads the characters after it.
+ */
+public class CombinedPatternFeatureProcessor implements FeatureProcessor {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<String> tokenFeatureNames;
+	private List<Pattern> tokenPatterns;
+	private List<String> segmentFeatureNames;
+	private List<Pattern> segmentPatterns;
+	private transient PatternAutomaton tokenAutomaton;
+	private transient PatternAutomaton segmentAutomaton;
+
+	public CombinedPatternFeatureProcessor(List<String> tokenFeatureNames, List<Pattern> tokenPatterns, List<String> segmentFeatureNames, List<Pattern> segmentPatterns) {
+		if (tokenFeatureNames.size() != tokenPatterns.size() || segmentFeatureNames.size() != segmentPatterns.size()) {
+			throw new IllegalArgumentException("Each pattern must have one feature name");
+		}
+		this.tokenFeatureNames = tokenFeatureNames;
+		this.tokenPatterns = tokenPatterns;
+		this.segmentFeatureNames = segmentFeatureNames;
+		this.segmentPatterns = segmentPatterns;
+		initTransients();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initTransients();
+	}
+
+	private void initTransients() {
+		tokenAutomaton = new PatternAutomaton(tokenPatterns);
+		segmentAutomaton = new PatternAutomaton(segmentPatterns);
+	}
+
+	/*
+	 * Returns a copy of the list with every TokenPatternFeatureProcessor and SegmentPatternFeatureProcessor whose pattern PatternAutomaton supports
+	 * replaced by a single CombinedPatternFeatureProcessor, at the position of the first one replaced
+	 */
+	public static List<FeatureProcessor> combine(List<FeatureProcessor> featureProcessors) {
+		List<String> tokenFeatureNames = new ArrayList<String>();
+		List<Pattern> tokenPatterns = new ArrayList<Pattern>();
+		List<String> segmentFeatureNames = new ArrayList<String>();
+		List<Pattern> segmentPatterns = new ArrayList<Pattern>();
+		List<FeatureProcessor> combined = new ArrayList<FeatureProcessor>();
+		int combinedIndex = -1;
+		for (FeatureProcessor featureProcessor : featureProcessors) {
+			if (featureProcessor instanceof TokenPatternFeatureProcessor && PatternAutomaton.isSupported(((TokenPatternFeatureProcessor) featureProcessor).getPattern())) {
+				tokenFeatureNames.add(((TokenPatternFeatureProcessor) featureProcessor).getFeatureName());
+				tokenPatterns.add(((TokenPatternFeatureProcessor) featureProcessor).getPattern());
+			} else if (featureProcessor instanceof SegmentPatternFeatureProcessor && PatternAutomaton.isSupported(((SegmentPatternFeatureProcessor) featureProcessor).getPattern())) {
+				segmentFeatureNames.add(((SegmentPatternFeatureProcessor) featureProcessor).getFeatureName());
+				segmentPatterns.add(((SegmentPatternFeatureProcessor) featureProcessor).getPattern());
+			} else {
+				combined.add(featureProcessor);
+				continue;
+			}
+			if (combinedIndex < 0) {
+				combinedIndex = combined.size();
+			}
+		}
+		if (combinedIndex >= 0) {
+			combined.add(combinedIndex, new CombinedPatternFeatureProcessor(tokenFeatureNames, tokenPatterns, segmentFeatureNames, segmentPatterns));
+		}
+		return combined;
+	}
+
+	@Override
+	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
+		String text = input.getText();
+		List<Token> tokens = input.getTokens();
+		if (!tokenPatterns.isEmpty()) {
+			for (int i = 0; i < tokens.size(); i++) {
+				Token token = tokens.get(i);
+				int state = run(tokenAutomaton, tokenAutomaton.getStartState(), text, token.getStartChar(), token.getEndChar());
+				for (int patternIndex : tokenAutomaton.getMatches(state)) {
+					featureProcessorCallback.callback(tokenFeatureNames.get(patternIndex), 1.0, token.getFeatures());
+				}
+			}
+		}
+		if (!segmentPatterns.isEmpty()) {
+			SegmentLattice segmentLattice = input.getSegmentLattice();
+			for (int tokenIndex = 0; tokenIndex < tokens.size(); tokenIndex++) {
+				int state = PatternAutomaton.DEAD_STATE;
+				int position = -1;
+				for (Segment segment : segmentLattice.getSegmentsStartingAt(tokenIndex)) {
+					if (position < 0 || segment.getEndChar() < position) {
+						state = segmentAutomaton.getStartState();
+						position = segment.getStartChar();
+					}
+					state = run(segmentAutomaton, state, text, position, segment.getEndChar());
+					position = segment.getEndChar();
+					for (int patternIndex : segmentAutomaton.getMatches(state)) {
+						featureProcessorCallback.callback(segmentFeatureNames.get(patternIndex), 1.0, segment.getFeatures());
+					}
+				}
+			}
+		}
+	}
+
+	private static int run(PatternAutomaton automaton, int state, String text, int start, int end) {
+		for (int position = start; position < end && state != PatternAutomaton.DEAD_STATE; position++) {
+			state = automaton.step(state, text.charAt(position));
+		}
+		return state;
+	}
+}
@@ -8,4 +8,14 @@ public interface FeatureProcessorCallback extends Serializable {
 
 	public void callback(String featureName, double featureValue, Vector<String> featureVector);
 
+	/*
+	 * Equivalent to callback(prefix + "=" + text.subSequence(start, end), featureValue, featureVector), but does not require the feature name to be created
+	 */
+	public void callback(String prefix, CharSequence text, int start, int end, double featureValue, Vector<String> featureVector);
+
+	/*
+	 * As above, for callers that already have textHash, which must equal DictionaryHashIndex.hash(text, start, end)
+	 */
+	public void callback(String prefix, CharSequence text, int start, int end, int textHash, double featureValue, Vector<String> featureVector);
+
 }
\ No newline at end of file
@@ -97,8 +97,7 @@ public class LexicalFeatureProcessor implements FeatureProcessor {
 				Vector<String> featureVector = segment.getFeatures();
 				logger.trace("Marking segment \"" + segment.getText() + "\" as lexical types: " + types);
 				for (String type : types) {
-					String featureName = prefix + "=" + type;
-					featureProcessorCallback.callback(featureName, 1.0, featureVector);
+					featureProcessorCallback.callback(prefix, type, 0, type.length(), 1.0, featureVector);
 				}
 			}
 		}
@@ -113,9 +112,12 @@ public class LexicalFeatureProcessor implements FeatureProcessor {
 			processedText = segmentProcessor.process(segmentText);
 		}
 		List<String> tokens = new ArrayList<String>();
-		tokenizer.reset(processedText);
-		while (tokenizer.nextToken()) {
-			tokens.add(processedText.substring(tokenizer.startChar(), tokenizer.endChar()));
+		// Tokenizers are stateful and may be shared between threads
+		synchronized (tokenizer) {
+			tokenizer.reset(processedText);
+			while (tokenizer.nextToken()) {
+				tokens.add(processedText.substring(tokenizer.startChar(), tokenizer.endChar()));
+			}
 		}
 		if (tokenProcessor != null) {
 			List<String> processedTokens = new ArrayList<String>(tokens.size());
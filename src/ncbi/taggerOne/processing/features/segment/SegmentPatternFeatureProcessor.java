@@ -20,6 +20,7 @@ public class SegmentPatternFeatureProcessor implements FeatureProcessor {
 	private String featureName;
 	private Pattern pattern;
 	private transient MatcherThreadLocal matcherThreadLocal;
+	private transient Profiler.Timer processTimer;
 
 	// Performance note: Reusing the matcher is only very slightly faster 
 	// Performance note: It is faster to use only one pattern per instance than to set up all patterns in a single instance. The reason is unclear, but may have to do with JIT inlining.
@@ -41,21 +42,30 @@ public class SegmentPatternFeatureProcessor implements FeatureProcessor {
 	public SegmentPatternFeatureProcessor(String prefix, Pattern pattern) {
 		this.featureName = prefix;
 		this.pattern = pattern;
-		initThreadLocals();
+		initTransients();
+	}
+
+	public String getFeatureName() {
+		return featureName;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
 	}
 
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
-		initThreadLocals();
+		initTransients();
 	}
 
-	private void initThreadLocals() {
+	private void initTransients() {
 		this.matcherThreadLocal = new MatcherThreadLocal(this.pattern);
+		this.processTimer = Profiler.timer("SegmentPatternFeatureProcessor.process()@featureName=" + featureName);
 	}
 
 	@Override
 	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
-		Profiler.start("SegmentPatternFeatureProcessor.process()@featureName=" + featureName);
+		processTimer.start();
 		List<Segment> segments = input.getSegments();
 		for (int i = 0; i < segments.size(); i++) {
 			Segment segment = segments.get(i);
@@ -65,6 +75,6 @@ public class SegmentPatternFeatureProcessor implements FeatureProcessor {
 				featureProcessorCallback.callback(featureName, 1.0, featureVector);
 			}
 		}
-		Profiler.stop("SegmentPatternFeatureProcessor.process()@featureName=" + featureName);
+		processTimer.stop();
 	}
 }
@@ -9,9 +9,6 @@ import ncbi.taggerOne.types.Segment;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.types.Token;
 import ncbi.taggerOne.util.vector.Vector;
-import dragon.nlp.Sentence;
-import dragon.nlp.Word;
-import dragon.nlp.tool.Tagger;
 
 public class SurroundingPOSFeatureProcessor implements FeatureProcessor {
 
@@ -34,37 +31,30 @@ public class SurroundingPOSFeatureProcessor implements FeatureProcessor {
 	@Override
 	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
 		List<Token> inputTokens = input.getTokens();
-		int size = inputTokens.size();
-		Sentence posSentence = new dragon.nlp.Sentence();
-		for (int tokenIndex = 0; tokenIndex < size; tokenIndex++) {
-			posSentence.addWord(new Word(inputTokens.get(tokenIndex).getText()));
-		}
-		Tagger tagger = posTaggerFactory.getTagger();
-		tagger.tag(posSentence);
+		int[] posIndices = posTaggerFactory.tag(inputTokens);
 
 		List<Segment> segments = input.getSegments();
 		for (int i = 0; i < segments.size(); i++) {
 			Segment segment = segments.get(i);
-			List<Token> tokens = segment.getTokens();
 			Vector<String> featureVector = segment.getFeatures();
 
-			int startIndex = inputTokens.indexOf(tokens.get(0)); // TODO PERFORMANCE
+			int startIndex = segment.getStartIndex();
 			for (int index = 1; index <= window; index++) {
 				int currentIndex = startIndex - index;
 				String previousText = "<START>";
 				if (currentIndex >= 0) {
-					previousText = Integer.toString(posSentence.getWord(currentIndex).getPOSIndex());
+					previousText = Integer.toString(posIndices[currentIndex]);
 				}
 				String featureName = prefix + "@-" + index + "=" + previousText;
 				featureProcessorCallback.callback(featureName, 1.0, featureVector);
 			}
 
-			int endIndex = inputTokens.indexOf(tokens.get(tokens.size() - 1)); // TODO PERFORMANCE
+			int endIndex = segment.getEndIndex();
 			for (int index = 1; index <= window; index++) {
 				int currentIndex = endIndex + index;
 				String nextText = "<END>";
 				if (currentIndex < inputTokens.size()) {
-					nextText = Integer.toString(posSentence.getWord(currentIndex).getPOSIndex());
+					nextText = Integer.toString(posIndices[currentIndex]);
 				}
 				String featureName = prefix + "@+" + index + "=" + nextText;
 				featureProcessorCallback.callback(featureName, 1.0, featureVector);
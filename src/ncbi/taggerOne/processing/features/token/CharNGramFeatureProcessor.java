@@ -23,6 +23,14 @@ public class CharNGramFeatureProcessor implements FeatureProcessor {
 		this.size = size;
 	}
 
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
 	@Override
 	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
 		List<Token> tokens = input.getTokens();
@@ -31,9 +39,7 @@ public class CharNGramFeatureProcessor implements FeatureProcessor {
 			Vector<String> featureVector = token.getFeatures();
 			String tokenText = ">" + token.getText() + "<";
 			for (int k = 0; k < (tokenText.length() - size) + 1; k++) {
-				String charNGram = tokenText.substring(k, k + size);
-				String featureName = prefix + "=" + charNGram;
-				featureProcessorCallback.callback(featureName, 1.0, featureVector);
+				featureProcessorCallback.callback(prefix, tokenText, k, k + size, 1.0, featureVector);
 			}
 		}
 	}
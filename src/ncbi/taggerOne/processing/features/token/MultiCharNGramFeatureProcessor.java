@@ -0,0 +1,150 @@
+package ncbi.taggerOne.processing.features.token;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ncbi.taggerOne.processing.features.FeatureProcessor;
+import ncbi.taggerOne.processing.features.FeatureProcessorCallback;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.vector.Vector;
+
+/*
+ * Produces the same features as one CharNGramFeatureProcessor per prefix and size, in a single pass over each token. The token text with its '>' and '<'
+ * markers is copied into a reused buffer, and the hash of each n-gram is extended one character at a time from the hash of the n-gram one character
+ * shorter, so that all sizes starting at a position cost one multiply and add each. No Strings are created; the callback receives the buffer, the range
+ * and the hash.
+ */
+public class MultiCharNGramFeatureProcessor implements FeatureProcessor {
+
+	private static final long serialVersionUID = 1L;
+
+	private String[] prefixes;
+	private int[] sizes;
+	private int maxSize;
+	private transient ThreadLocal<TokenBuffer> buffers;
+
+	public MultiCharNGramFeatureProcessor(String[] prefixes, int[] sizes) {
+		if (prefixes.length != sizes.length) {
+			throw new IllegalArgumentException("Each size must have one prefix");
+		}
+		this.prefixes = prefixes;
+		this.sizes = sizes;
+		maxSize = 0;
+		for (int size : sizes) {
+			if (size < 1) {
+				throw new IllegalArgumentException("Size must be at least 1: " + size);
+			}
+			maxSize = Math.max(maxSize, size);
+		}
+		initTransients();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initTransients();
+	}
+
+	private void initTransients() {
+		buffers = new ThreadLocal<TokenBuffer>() {
+			@Override
+			protected TokenBuffer initialValue() {
+				return new TokenBuffer();
+			}
+		};
+	}
+
+	/*
+	 * Returns a copy of the list with all CharNGramFeatureProcessors replaced by a single MultiCharNGramFeatureProcessor, at the position of the first
+	 */
+	public static List<FeatureProcessor> combine(List<FeatureProcessor> featureProcessors) {
+		List<String> prefixes = new ArrayList<String>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		List<FeatureProcessor> combined = new ArrayList<FeatureProcessor>();
+		int combinedIndex = -1;
+		for (FeatureProcessor featureProcessor : featureProcessors) {
+			if (featureProcessor instanceof CharNGramFeatureProcessor) {
+				prefixes.add(((CharNGramFeatureProcessor) featureProcessor).getPrefix());
+				sizes.add(((CharNGramFeatureProcessor) featureProcessor).getSize());
+				if (combinedIndex < 0) {
+					combinedIndex = combined.size();
+				}
+			} else {
+				combined.add(featureProcessor);
+			}
+		}
+		if (combinedIndex >= 0) {
+			int[] sizeArray = new int[sizes.size()];
+			for (int i = 0; i < sizeArray.length; i++) {
+				sizeArray[i] = sizes.get(i);
+			}
+			combined.add(combinedIndex, new MultiCharNGramFeatureProcessor(prefixes.toArray(new String[prefixes.size()]), sizeArray));
+		}
+		return combined;
+	}
+
+	@Override
+	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
+		String text = input.getText();
+		TokenBuffer buffer = buffers.get();
+		List<Token> tokens = input.getTokens();
+		for (int i = 0; i < tokens.size(); i++) {
+			Token token = tokens.get(i);
+			Vector<String> featureVector = token.getFeatures();
+			buffer.set(text, token.getStartChar(), token.getEndChar());
+			int length = buffer.length();
+			for (int start = 0; start < length; start++) {
+				int hash = 0;
+				for (int size = 1; size <= maxSize && start + size <= length; size++) {
+					hash = 31 * hash + buffer.chars[start + size - 1];
+					for (int j = 0; j < sizes.length; j++) {
+						if (sizes[j] == size) {
+							featureProcessorCallback.callback(prefixes[j], buffer, start, start + size, hash, 1.0, featureVector);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * The text of a token between '>' and '<', in a char array that is reused for every token
+	 */
+	private static class TokenBuffer implements CharSequence {
+
+		char[] chars = new char[64];
+		int length;
+
+		void set(String text, int startChar, int endChar) {
+			length = endChar - startChar + 2;
+			if (chars.length < length) {
+				chars = new char[Math.max(length, 2 * chars.length)];
+			}
+			chars[0] = '>';
+			text.getChars(startChar, endChar, chars, 1);
+			chars[length - 1] = '<';
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ncbi.taggerOne.processing.features.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.processing.features.FeatureProcessor;
+import ncbi.taggerOne.processing.textInstance.FeatureInstantiator;
+import ncbi.taggerOne.processing.textInstance.FeatureSetExtractor;
+import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.HashedDictionary;
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector;
+import ncbi.taggerOne.util.vector.Vector.VectorIterator;
+
+public class MultiCharNGramFeatureProcessorTest {
+
+	// Includes the '>' and '<' markers, repeated n-grams and both halves of a surrogate pair
+	private static final char[] ALPHABET = { 'a', 'b', 'A', '1', '-', '>', '<', 'α', '\uD83D', '\uDE00' };
+
+	@Test
+	public void testMatchesSeparateProcessors() {
+		List<FeatureProcessor> separate = new ArrayList<FeatureProcessor>();
+		separate.add(new CharNGramFeatureProcessor("2GM", 2));
+		separate.add(new CharNGramFeatureProcessor("3GM", 3));
+		separate.add(new CharNGramFeatureProcessor("4GM", 4));
+		List<FeatureProcessor> combined = MultiCharNGramFeatureProcessor.combine(separate);
+		assertEquals(1, combined.size());
+		assertTrue(combined.get(0) instanceof MultiCharNGramFeatureProcessor);
+
+		Random random = new Random(1);
+		List<TextInstance> instances = new ArrayList<TextInstance>();
+		for (int i = 0; i < 500; i++) {
+			instances.add(createInstance(random, i));
+		}
+		// Only half of the instances are used for the feature set, so that the rest have n-grams that are not in it
+		Dictionary<String> separateFeatureSet = new Dictionary<String>();
+		Dictionary<String> combinedFeatureSet = new Dictionary<String>();
+		for (TextInstance instance : instances.subList(0, instances.size() / 2)) {
+			new FeatureSetExtractor(separateFeatureSet, separate).process(instance);
+			new FeatureSetExtractor(combinedFeatureSet, combined).process(instance);
+		}
+		assertEquals(new HashSet<String>(separateFeatureSet.getElements()), new HashSet<String>(combinedFeatureSet.getElements()));
+		separateFeatureSet.freeze();
+
+		checkFeatures(instances, separateFeatureSet, separate, combined);
+		checkFeatures(instances, new HashedDictionary(10), separate, combined);
+	}
+
+	private static void checkFeatures(List<TextInstance> instances, Dictionary<String> featureSet, List<FeatureProcessor> separate, List<FeatureProcessor> combined) {
+		FeatureInstantiator separateInstantiator = new FeatureInstantiator(SparseVector.factory, featureSet, separate);
+		FeatureInstantiator combinedInstantiator = new FeatureInstantiator(SparseVector.factory, featureSet, combined);
+		for (TextInstance instance : instances) {
+			separateInstantiator.process(instance);
+			List<Map<Integer, Double>> expected = new ArrayList<Map<Integer, Double>>();
+			for (Token token : instance.getTokens()) {
+				expected.add(toMap(token.getFeatures()));
+			}
+			combinedInstantiator.process(instance);
+			for (int i = 0; i < instance.getTokens().size(); i++) {
+				Token token = instance.getTokens().get(i);
+				assertEquals(featureSet.getClass().getSimpleName() + ", token " + token.getText(), expected.get(i), toMap(token.getFeatures()));
+			}
+		}
+	}
+
+	private static TextInstance createInstance(Random random, int id) {
+		StringBuilder text = new StringBuilder();
+		List<int[]> bounds = new ArrayList<int[]>();
+		int tokenCount = 1 + random.nextInt(8);
+		for (int i = 0; i < tokenCount; i++) {
+			if (i > 0) {
+				text.append(' ');
+			}
+			int start = text.length();
+			// Tokens of one or two chars have no 4-grams, or no 3-grams either
+			int length = 1 + random.nextInt(7);
+			for (int j = 0; j < length; j++) {
+				text.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+			}
+			bounds.add(new int[] { start, text.length() });
+		}
+		TextInstance instance = new TextInstance(Integer.toString(id), Integer.toString(id), text.toString(), 0);
+		List<Token> tokens = new ArrayList<Token>();
+		for (int i = 0; i < bounds.size(); i++) {
+			tokens.add(new Token(instance, bounds.get(i)[0], bounds.get(i)[1], i));
+		}
+		instance.setTokens(tokens);
+		instance.setSegments(new ArrayList<Segment>());
+		return instance;
+	}
+
+	private static Map<Integer, Double> toMap(Vector<String> vector) {
+		Map<Integer, Double> values = new TreeMap<Integer, Double>();
+		VectorIterator iterator = vector.getIterator();
+		while (iterator.next()) {
+			if (iterator.getValue() != 0.0) {
+				values.put(iterator.getIndex(), iterator.getValue());
+			}
+		}
+		return values;
+	}
+}
@@ -1,6 +1,9 @@
 package ncbi.taggerOne.processing.features.token;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.List;
 
 import ncbi.taggerOne.processing.features.FeatureProcessor;
@@ -31,31 +34,56 @@ public class POSFeatureProcessor implements FeatureProcessor {
 	@Override
 	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
 		List<Token> tokens = input.getTokens();
+		int[] posIndices;
+		try {
+			posIndices = posTaggerFactory.tag(tokens);
+		} catch (RuntimeException e) {
+			throw new RuntimeException("Error POS tagging " + input.getInstanceId() + " token list = " + tokens, e);
+		}
+		for (int tokenIndex = 0; tokenIndex < tokens.size(); tokenIndex++) {
+			Token token = tokens.get(tokenIndex);
+			String posFeatureName = prefix + "=" + posIndices[tokenIndex];
+			Vector<String> featureVector = token.getFeatures();
+			featureProcessorCallback.callback(posFeatureName, 1.0, featureVector);
+		}
+	}
+
+	/*
+	 * Tags the tokens with the tagger, returning the POS index of each token
+	 */
+	public static int[] tag(Tagger tagger, List<Token> tokens) {
 		int size = tokens.size();
-		Sentence posSentence = new dragon.nlp.Sentence();
+		Sentence posSentence = new Sentence();
 		for (int tokenIndex = 0; tokenIndex < size; tokenIndex++) {
 			posSentence.addWord(new Word(tokens.get(tokenIndex).getText()));
 		}
-		try {
-			Tagger tagger = posTaggerFactory.getTagger();
-			tagger.tag(posSentence);
-			for (int tokenIndex = 0; tokenIndex < size; tokenIndex++) {
-				Token token = tokens.get(tokenIndex);
-				String posFeatureName = prefix + "=" + posSentence.getWord(tokenIndex).getPOSIndex();
-				Vector<String> featureVector = token.getFeatures();
-				featureProcessorCallback.callback(posFeatureName, 1.0, featureVector);
-			}
-		} catch (RuntimeException e) {
-			throw new RuntimeException("Error POS tagging " + input.getInstanceId() + " token list = " + tokens, e);
+		tagger.tag(posSentence);
+		int[] posIndices = new int[size];
+		for (int tokenIndex = 0; tokenIndex < size; tokenIndex++) {
+			posIndices[tokenIndex] = posSentence.getWord(tokenIndex).getPOSIndex();
 		}
+		return posIndices;
 	}
 
+	/*
+	 * getTagger() must return a tagger that the calling thread may use without synchronizing, either by creating one per thread or by taking one from a
+	 * pool. The tag methods return the POS index of each token; the arrays returned may be shared and must not be modified.
+	 */
 	public static interface POSTaggerFactory extends Serializable {
 
 		public Tagger getTagger();
 
+		public default int[] tag(List<Token> tokens) {
+			return POSFeatureProcessor.tag(getTagger(), tokens);
+		}
+
 	}
 
+	/*
+	 * Creates one HeppleTagger per thread, since HeppleTagger is not thread-safe. Each thread also remembers the tags of the last token list it tagged, so
+	 * that processors sharing this factory, such as POSFeatureProcessor and SurroundingPOSFeatureProcessor, only tag each instance once. The list is only
+	 * weakly referenced, so that an idle thread does not keep its last TextInstance alive.
+	 */
 	public static class HepplePOSTaggerFactory implements POSTaggerFactory {
 
 		// TODO Set this up to allow a configuration point
@@ -63,19 +91,45 @@ public class POSFeatureProcessor implements FeatureProcessor {
 		private static final long serialVersionUID = 1L;
 
 		private String directory;
-		private transient Tagger tagger;
+		private transient ThreadLocal<TaggerState> taggerStates;
 
 		public HepplePOSTaggerFactory(String directory) {
 			this.directory = directory;
-			this.tagger = null;
+			initTransients();
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+			initTransients();
+		}
+
+		private void initTransients() {
+			taggerStates = new ThreadLocal<TaggerState>();
+		}
+
+		private TaggerState getTaggerState() {
+			TaggerState taggerState = taggerStates.get();
+			if (taggerState == null) {
+				taggerState = new TaggerState(new HeppleTagger(directory));
+				taggerStates.set(taggerState);
+			}
+			return taggerState;
 		}
 
 		@Override
 		public Tagger getTagger() {
-			if (tagger == null) {
-				tagger = new HeppleTagger(directory);
+			return getTaggerState().tagger;
+		}
+
+		@Override
+		public int[] tag(List<Token> tokens) {
+			TaggerState taggerState = getTaggerState();
+			if (!taggerState.isLastTokens(tokens)) {
+				taggerState.lastPOSIndices = POSFeatureProcessor.tag(taggerState.tagger, tokens);
+				taggerState.lastTokens = new WeakReference<List<Token>>(tokens);
+				taggerState.lastSize = tokens.size();
 			}
-			return tagger;
+			return taggerState.lastPOSIndices;
 		}
 
 		public String getDirectory() {
@@ -84,6 +138,24 @@ public class POSFeatureProcessor implements FeatureProcessor {
 
 		public void setDirectory(String directory) {
 			this.directory = directory;
+			initTransients();
+		}
+
+		private static class TaggerState {
+
+			Tagger tagger;
+			WeakReference<List<Token>> lastTokens;
+			int lastSize;
+			int[] lastPOSIndices;
+
+			TaggerState(Tagger tagger) {
+				this.tagger = tagger;
+			}
+
+			// The processors get the token list of the instance itself, which is not modified once features are extracted
+			boolean isLastTokens(List<Token> tokens) {
+				return lastTokens != null && lastTokens.get() == tokens && lastSize == tokens.size();
+			}
 		}
 	}
 }
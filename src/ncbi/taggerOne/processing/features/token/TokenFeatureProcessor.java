@@ -38,8 +38,7 @@ public class TokenFeatureProcessor implements FeatureProcessor {
 				}
 			}
 			if (processedText != null) {
-				String featureName = prefix + "=" + processedText;
-				featureProcessorCallback.callback(featureName, 1.0, featureVector);
+				featureProcessorCallback.callback(prefix, processedText, 0, processedText.length(), 1.0, featureVector);
 			}
 		}
 	}
@@ -22,6 +22,14 @@ public class TokenPatternFeatureProcessor implements FeatureProcessor {
 		this.pattern = pattern;
 	}
 
+	public String getFeatureName() {
+		return featureName;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
 	@Override
 	public void process(TextInstance input, FeatureProcessorCallback featureProcessorCallback) {
 		List<Token> tokens = input.getTokens();
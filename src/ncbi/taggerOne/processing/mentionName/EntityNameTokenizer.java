@@ -23,9 +23,12 @@ public class EntityNameTokenizer extends MentionNameProcessor {
 		}
 		String nameText = entityName.getName();
 		List<String> tokens = new ArrayList<String>();
-		tokenizer.reset(nameText);
-		while (tokenizer.nextToken()) {
-			tokens.add(nameText.substring(tokenizer.startChar(), tokenizer.endChar()));
+		// Tokenizers are stateful and may be shared between threads
+		synchronized (tokenizer) {
+			tokenizer.reset(nameText);
+			while (tokenizer.nextToken()) {
+				tokens.add(nameText.substring(tokenizer.startChar(), tokenizer.endChar()));
+			}
 		}
 		entityName.setTokens(tokens);
 	}
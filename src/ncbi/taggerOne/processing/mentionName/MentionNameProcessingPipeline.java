@@ -10,6 +10,8 @@ public class MentionNameProcessingPipeline extends MentionNameProcessor {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup processorTimers = Profiler.timerGroup("MentionNameProcessingPipeline.process()@");
+
 	private List<MentionNameProcessor> processors;
 
 	public MentionNameProcessingPipeline(List<MentionNameProcessor> processors) {
@@ -20,14 +22,18 @@ public class MentionNameProcessingPipeline extends MentionNameProcessor {
 		this(Arrays.asList(processors));
 	}
 
+	public List<MentionNameProcessor> getProcessors() {
+		return processors;
+	}
+
 	@Override
 	public void process(MentionName entityName) {
 		Profiler.start("MentionNameProcessingPipeline.process()");
 		for (MentionNameProcessor p : processors) {
-			String mentionProcessorName = p.getClass().getName();
-			Profiler.start("MentionNameProcessingPipeline.process()@" + mentionProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(p.getClass());
+			processorTimer.start();
 			p.process(entityName);
-			Profiler.stop("MentionNameProcessingPipeline.process()@" + mentionProcessorName);
+			processorTimer.stop();
 		}
 		Profiler.stop("MentionNameProcessingPipeline.process()");
 	}
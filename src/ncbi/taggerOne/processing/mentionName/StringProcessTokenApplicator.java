@@ -14,6 +14,8 @@ public class StringProcessTokenApplicator extends MentionNameProcessor {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup processorTimers = Profiler.timerGroup("StringProcessTokenApplicator.process()@");
+
 	private List<StringProcessor> processors;
 
 	public StringProcessTokenApplicator(List<StringProcessor> processors) {
@@ -32,14 +34,14 @@ public class StringProcessTokenApplicator extends MentionNameProcessor {
 		}
 		List<String> tokensCopy = new ArrayList<String>(entityName.getTokens());
 		for (StringProcessor p : processors) {
-			String mentionProcessorName = p.getClass().getName();
-			Profiler.start("StringProcessTokenApplicator.process()@" + mentionProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(p.getClass());
+			processorTimer.start();
 			for (int i = 0; i < tokensCopy.size(); i++) {
 				String token = tokensCopy.get(i);
 				token = p.process(token);
 				tokensCopy.set(i, token);
 			}
-			Profiler.stop("StringProcessTokenApplicator.process()@" + mentionProcessorName);
+			processorTimer.stop();
 		}
 		List<String> newTokens = new ArrayList<String>();
 		for (String token : tokensCopy) {
@@ -61,8 +63,8 @@ public class StringProcessTokenApplicator extends MentionNameProcessor {
 		}
 		List<String> tokensCopy = new LinkedList<String>(entityName.getTokens());
 		for (StringProcessor p : processors) {
-			String mentionProcessorName = p.getClass().getName();
-			Profiler.start("StringProcessTokenApplicator.process()@" + mentionProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(p.getClass());
+			processorTimer.start();
 			ListIterator<String> iterator = tokensCopy.listIterator();
 			while (iterator.hasNext()) {
 				String token = p.process(iterator.next());
@@ -72,7 +74,7 @@ public class StringProcessTokenApplicator extends MentionNameProcessor {
 					iterator.remove();
 				}
 			}
-			Profiler.stop("StringProcessTokenApplicator.process()@" + mentionProcessorName);
+			processorTimer.stop();
 		}
 		entityName.setTokens(tokensCopy);
 		Profiler.stop("StringProcessTokenApplicator.process()");
@@ -32,6 +32,10 @@ public class TokenListToWeightedVectorConverter extends MentionNameProcessor {
 		this.dontNormalizeVectors = dontNormalizeVectors;
 	}
 
+	public void setVectorFactory(VectorFactory vectorFactory) {
+		this.vectorFactory = vectorFactory;
+	}
+
 	@Override
 	public void process(MentionName entityName) {
 		Profiler.start("TokenListToWeightedVectorConverter.process()");
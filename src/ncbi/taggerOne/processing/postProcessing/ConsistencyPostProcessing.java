@@ -110,10 +110,14 @@ public class ConsistencyPostProcessing extends TextInstanceProcessor {
 			// Add remaining annotations
 			newAnnotations.addAll(predictedAnnotationsCopy);
 			Collections.sort(newAnnotations);
-			// Finalize
-			double score = instance.getPredictedAnnotations().getValue(0);
-			RankedList<List<AnnotatedSegment>> newAnnotationsList = new RankedList<List<AnnotatedSegment>>(1);
-			newAnnotationsList.add(score, newAnnotations);
+			// Finalize: only the best labeling is changed, any lower ranked labelings are kept as they are
+			RankedList<List<AnnotatedSegment>> predictedAnnotationRankedList = instance.getPredictedAnnotations();
+			int size = predictedAnnotationRankedList.size();
+			RankedList<List<AnnotatedSegment>> newAnnotationsList = new RankedList<List<AnnotatedSegment>>(size);
+			newAnnotationsList.add(predictedAnnotationRankedList.getValue(0), newAnnotations);
+			for (int i = 1; i < size; i++) {
+				newAnnotationsList.add(predictedAnnotationRankedList.getValue(i), predictedAnnotationRankedList.getObject(i));
+			}
 			instance.setPredictedAnnotations(newAnnotationsList);
 		}
 	}
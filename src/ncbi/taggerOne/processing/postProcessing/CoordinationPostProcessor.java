@@ -8,6 +8,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -31,7 +32,14 @@ import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.RankedList;
 import ncbi.taggerOne.util.vector.Vector;
 import ncbi.util.ProcessRunner;
-
+import ncbi.util.WorkerProcessPool;
+
+/*
+ * Resolves coordinated mentions with SimConcept. By default the mentions are written to a file in inputDir and SimConcept.pl is run on the whole
+ * directory, so only one call may run at a time. If a worker command is given, the mentions are instead sent to persistent workers through a
+ * WorkerProcessPool, and calls may run concurrently; mentions that contain the end marker still use the file. SimConcept.pl as distributed reads a
+ * directory and exits, so it cannot be used as the worker command; a version that stays resident and loops over stdin is needed.
+ */
 public class CoordinationPostProcessor extends TextInstanceProcessor {
 
 	private static final Logger logger = LoggerFactory.getLogger(CoordinationPostProcessor.class);
@@ -41,6 +49,9 @@ public class CoordinationPostProcessor extends TextInstanceProcessor {
 	private File outputDir;
 	private String commandDir;
 	private long timeout;
+	private String workerCommand;
+	private int workers;
+	private transient WorkerProcessPool workerPool;
 	private Map<String, NormalizationModelPredictor> normalizationTrainingPredictionModels;
 	private MentionNameProcessor mentionNameProcessor;
 
@@ -51,12 +62,33 @@ public class CoordinationPostProcessor extends TextInstanceProcessor {
 
 	public void setArgs(String... args) {
 		if (args.length < 4) {
-			throw new IllegalArgumentException("CoordinationPostProcessor must have four arguments: inputDir, outputDir, commandDir, timeout: " + Arrays.asList(args));
+			throw new IllegalArgumentException("CoordinationPostProcessor must have four arguments: inputDir, outputDir, commandDir, timeout, and optionally workerCommand, workers: " + Arrays.asList(args));
 		}
 		this.inputDir = new File(args[0]);
 		this.outputDir = new File(args[1]);
 		this.commandDir = args[2];
 		this.timeout = Long.parseLong(args[3]);
+		// The worker command reads mentions from stdin and replies in the SimConcept output format, see WorkerProcessPool
+		this.workerCommand = args.length > 4 ? args[4] : null;
+		this.workers = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+		close();
+	}
+
+	/*
+	 * Stops the worker processes, if any; they are started again if more instances are processed
+	 */
+	public synchronized void close() {
+		if (workerPool != null) {
+			workerPool.close();
+			workerPool = null;
+		}
+	}
+
+	private synchronized WorkerProcessPool getWorkerPool() {
+		if (workerPool == null) {
+			workerPool = new WorkerProcessPool(workerCommand, commandDir, workers, timeout);
+		}
+		return workerPool;
 	}
 	
 	@Override
@@ -138,56 +170,81 @@ public class CoordinationPostProcessor extends TextInstanceProcessor {
 			}
 			mentionTexts.removeAll(resolvedCoordinations.keySet());
 
-			// Write text to a temp file
-			File inputFile = File.createTempFile("coordinatedMentions", ".txt", inputDir);
-			logger.debug("Writing to file: " + inputFile.getAbsolutePath());
-			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inputFile), T1Constants.UTF8_FORMAT));
-			for (String mentionText : mentionTexts) {
-				writer.write(mentionText + "\n");
-			}
-			writer.close();
-
-			// Process with SimConcept
-			String command = "perl ./SimConcept.pl -i " + inputDir.getAbsolutePath() + " -o " + outputDir.getAbsolutePath();
-			logger.debug("Executing: \"" + command + "\"");
-			ProcessRunner pw = new ProcessRunner(command, commandDir);
-			pw.await(timeout);
-			String result = pw.getResult();
-			String error = pw.getError();
-			logger.debug("SimConcept result is: " + result);
-			logger.debug("SimConcept error is: " + error);
-
-			String outputFilename = outputDir.getAbsolutePath() + "/" + inputFile.getName() + ".SimConcept";
-
-			// Delete input file
-			inputFile.delete();
-
-			// Read input
-			logger.debug("Reading from file: " + outputFilename);
-			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(outputFilename), T1Constants.UTF8_FORMAT));
-			String line = reader.readLine();
-			while (line != null) {
-				line = line.trim();
-				if (line.length() > 0 && line.contains("\tCompositeMention:")) {
-					line = line.replaceAll(":", "\t").replaceAll("\\|", "\t");
-					List<String> fields = Arrays.asList(line.split("\\t"));
-					int size = fields.size();
-					List<String> resolvedText = fields.subList(2, size);
-					logger.debug("Line \"" + line + "\" resolved to coordination " + fields.get(0) + " -> " + resolvedText);
-					if (resolvedText.size() > 1) {
-						addCoordination(resolvedCoordinations, fields.get(0), resolvedText);
+			if (workerCommand != null) {
+				StringBuilder item = new StringBuilder();
+				for (String mentionText : mentionTexts) {
+					item.append(mentionText);
+					item.append("\n");
+				}
+				WorkerProcessPool workerPool = getWorkerPool();
+				if (workerPool.accepts(item.toString())) {
+					String result = workerPool.process(item.toString());
+					logger.debug("SimConcept result is: " + result);
+					if (result != null) {
+						readSimConceptOutput(new BufferedReader(new StringReader(result)), resolvedCoordinations);
 					}
+					return resolvedCoordinations;
 				}
-				line = reader.readLine();
+				logger.debug("Mentions contain the worker end marker, using SimConcept.pl instead");
 			}
-			reader.close();
-
-			// Delete output file
-			(new File(outputFilename)).delete();
-
+			runSimConceptOnFile(mentionTexts, resolvedCoordinations);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 		return resolvedCoordinations;
 	}
+
+	// SimConcept processes every file in its input directory, so only one call may run at a time
+	private synchronized void runSimConceptOnFile(Set<String> mentionTexts, Map<String, Set<String>> resolvedCoordinations) throws IOException {
+		// Write text to a temp file
+		File inputFile = File.createTempFile("coordinatedMentions", ".txt", inputDir);
+		logger.debug("Writing to file: " + inputFile.getAbsolutePath());
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inputFile), T1Constants.UTF8_FORMAT));
+		for (String mentionText : mentionTexts) {
+			writer.write(mentionText + "\n");
+		}
+		writer.close();
+
+		// Process with SimConcept
+		String command = "perl ./SimConcept.pl -i " + inputDir.getAbsolutePath() + " -o " + outputDir.getAbsolutePath();
+		logger.debug("Executing: \"" + command + "\"");
+		ProcessRunner pw = new ProcessRunner(command, commandDir);
+		pw.await(timeout);
+		String result = pw.getResult();
+		String error = pw.getError();
+		logger.debug("SimConcept result is: " + result);
+		logger.debug("SimConcept error is: " + error);
+
+		String outputFilename = outputDir.getAbsolutePath() + "/" + inputFile.getName() + ".SimConcept";
+
+		// Delete input file
+		inputFile.delete();
+
+		// Read input
+		logger.debug("Reading from file: " + outputFilename);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(outputFilename), T1Constants.UTF8_FORMAT));
+		readSimConceptOutput(reader, resolvedCoordinations);
+
+		// Delete output file
+		(new File(outputFilename)).delete();
+	}
+
+	private void readSimConceptOutput(BufferedReader reader, Map<String, Set<String>> resolvedCoordinations) throws IOException {
+		String line = reader.readLine();
+		while (line != null) {
+			line = line.trim();
+			if (line.length() > 0 && line.contains("\tCompositeMention:")) {
+				line = line.replaceAll(":", "\t").replaceAll("\\|", "\t");
+				List<String> fields = Arrays.asList(line.split("\\t"));
+				int size = fields.size();
+				List<String> resolvedText = fields.subList(2, size);
+				logger.debug("Line \"" + line + "\" resolved to coordination " + fields.get(0) + " -> " + resolvedText);
+				if (resolvedText.size() > 1) {
+					addCoordination(resolvedCoordinations, fields.get(0), resolvedText);
+				}
+			}
+			line = reader.readLine();
+		}
+		reader.close();
+	}
 }
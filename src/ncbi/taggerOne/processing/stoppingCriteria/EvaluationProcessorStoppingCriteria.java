@@ -8,6 +8,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
@@ -19,6 +24,8 @@ import ncbi.taggerOne.processing.evaluation.EvaluationProcessor;
 import ncbi.taggerOne.processing.textInstance.AnnotationModelTrainer;
 import ncbi.taggerOne.processing.textInstance.TextInstanceProcessingPipeline;
 import ncbi.taggerOne.types.TextInstance;
+import ncbi.util.CheckpointWriter;
+import ncbi.util.DaemonThreadFactory;
 
 public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 
@@ -37,6 +44,10 @@ public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 	private TextInstanceProcessingPipeline annotationPipeline;
 	private String baseFilename;
 	private String previousModelOutputFilename;
+	private int threads; // Values of 1 or less mean serial evaluation
+	private transient ExecutorService executor;
+	private boolean asyncModelOutput;
+	private transient CheckpointWriter checkpointWriter;
 
 	public EvaluationProcessorStoppingCriteria(int maxIterations, int iterationsSinceImprovement, TrainingProgressTracker callback, List<TextInstance> holdoutInstances,
 			TextInstanceProcessingPipeline preEvaluationPipeline, TextInstanceProcessingPipeline postEvaluationPipeline, TextInstanceProcessingPipeline annotationPipeline, String baseFilename,
@@ -54,6 +65,63 @@ public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 		this.allProcessors = new ArrayList<EvaluationProcessor>(evaluationProcessors);
 		this.allProcessors.addAll(additionalProcessors);
 		this.previousModelOutputFilename = null;
+		this.threads = 1;
+		this.asyncModelOutput = false;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/*
+	 * Sets the number of threads used to evaluate the holdout instances. Training is paused while stop() runs, so the threads share the model as it is
+	 * at the end of the iteration. Each thread counts into its own accumulators, which are merged afterwards, so the score is the same as for serial
+	 * evaluation.
+	 */
+	public synchronized void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+		}
+		this.threads = threads;
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	public boolean isAsyncModelOutput() {
+		return asyncModelOutput;
+	}
+
+	/*
+	 * If true, each improved model is snapshotted in memory and written by a background thread, so training resumes without waiting for compression
+	 * and disk I/O. Call awaitModelOutput() once training is complete to make sure the last model is on disk.
+	 */
+	public void setAsyncModelOutput(boolean asyncModelOutput) {
+		this.asyncModelOutput = asyncModelOutput;
+	}
+
+	/*
+	 * Waits until the last improved model is written, if it is being written in the background
+	 */
+	public void awaitModelOutput() {
+		if (checkpointWriter == null) {
+			return;
+		}
+		try {
+			checkpointWriter.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			checkpointWriter = null;
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(EvaluationProcessorStoppingCriteria.class.getSimpleName()));
+		}
+		return executor;
 	}
 
 	@Override
@@ -76,13 +144,12 @@ public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 		for (EvaluationProcessor evaluationProcessor : allProcessors) {
 			evaluationProcessor.reset();
 		}
-		for (TextInstance instance : holdoutInstances) {
-			preEvaluationPipeline.process(instance);
-			logger.info("Instance " + instance.getInstanceId() + " made " + instance.getPredictedAnnotations().getObject(0).size() + " predictions");
-			for (EvaluationProcessor evaluationProcessor : allProcessors) {
-				evaluationProcessor.process(instance);
+		if (threads > 1) {
+			evaluateParallel();
+		} else {
+			for (TextInstance instance : holdoutInstances) {
+				evaluate(instance, allProcessors);
 			}
-			postEvaluationPipeline.process(instance);
 		}
 		for (EvaluationProcessor evaluationProcessor : allProcessors) {
 			logger.info(evaluationProcessor.scoreDetail());
@@ -105,6 +172,61 @@ public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 		}
 	}
 
+	private void evaluate(TextInstance instance, List<EvaluationProcessor> processors) {
+		preEvaluationPipeline.process(instance);
+		logger.info("Instance " + instance.getInstanceId() + " made " + instance.getPredictedAnnotations().getObject(0).size() + " predictions");
+		for (EvaluationProcessor evaluationProcessor : processors) {
+			evaluationProcessor.process(instance);
+		}
+		postEvaluationPipeline.process(instance);
+	}
+
+	private void evaluateParallel() {
+		final AtomicInteger nextInstance = new AtomicInteger();
+		List<List<EvaluationProcessor>> accumulators = new ArrayList<List<EvaluationProcessor>>(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+		ExecutorService executor = getExecutor();
+		for (int thread = 0; thread < threads; thread++) {
+			final List<EvaluationProcessor> threadAccumulators = new ArrayList<EvaluationProcessor>(allProcessors.size());
+			for (EvaluationProcessor evaluationProcessor : allProcessors) {
+				threadAccumulators.add(evaluationProcessor.newAccumulator());
+			}
+			accumulators.add(threadAccumulators);
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					int instanceIndex = nextInstance.getAndIncrement();
+					while (instanceIndex < holdoutInstances.size()) {
+						evaluate(holdoutInstances.get(instanceIndex), threadAccumulators);
+						instanceIndex = nextInstance.getAndIncrement();
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+		for (List<EvaluationProcessor> threadAccumulators : accumulators) {
+			for (int i = 0; i < allProcessors.size(); i++) {
+				allProcessors.get(i).merge(threadAccumulators.get(i));
+			}
+		}
+	}
+
 	private void outputModel(int currentIteration) {
 		if (baseFilename == null) {
 			return;
@@ -112,6 +234,17 @@ public class EvaluationProcessorStoppingCriteria extends StoppingCriteria {
 		// Write out the model
 		try {
 			String modelOutputFilename = getModelOutputFilename(currentIteration);
+			if (asyncModelOutput) {
+				if (checkpointWriter == null) {
+					checkpointWriter = new CheckpointWriter();
+					checkpointWriter.setPreviousFilename(previousModelOutputFilename);
+				}
+				logger.info("Queueing updated model for writing to file " + modelOutputFilename);
+				checkpointWriter.write(annotationPipeline, modelOutputFilename);
+				previousModelOutputFilename = modelOutputFilename;
+				return;
+			}
+			awaitModelOutput();
 			logger.info("Writing updated model to file " + modelOutputFilename);
 			ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(modelOutputFilename)));
 			oos.writeObject(annotationPipeline);
@@ -1,20 +1,38 @@
 package ncbi.taggerOne.processing.string;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 public class PorterStemmer implements StringProcessor {
 
 	private static final long serialVersionUID = 1L;
 
-	private PorterStemmerInternal stemmer; // TODO CONCURRENCY Use a ThreadLocal instance
+	private PorterStemmerInternal stemmer; // Retained so previously serialized instances remain compatible
+	private transient ThreadLocal<PorterStemmerInternal> stemmers; // The stemmer is stateful, so each thread uses its own instance
 
 	public PorterStemmer() {
 		this.stemmer = new PorterStemmerInternal();
+		this.stemmers = createStemmers();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.stemmers = createStemmers();
+	}
+
+	private ThreadLocal<PorterStemmerInternal> createStemmers() {
+		return new ThreadLocal<PorterStemmerInternal>() {
+			@Override
+			protected PorterStemmerInternal initialValue() {
+				return new PorterStemmerInternal();
+			}
+		};
 	}
 
 	@Override
 	public String process(String str) {
-		String stem = stemmer.stem(str);
+		String stem = stemmers.get().stem(str);
 		return stem;
 	}
 
@@ -1,5 +1,6 @@
 package ncbi.taggerOne.processing.textInstance;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -29,7 +30,7 @@ public class AnnotationModelTrainingIteration extends TextInstanceProcessor {
 	public AnnotationModelTrainingIteration(Annotator annotator, Map<String, NormalizationModelPredictor> normalizationPredictionModels, OnlineOptimizer optimizer, TrainingProgressTracker callback) {
 		this.normalizationPredictionModels = normalizationPredictionModels;
 		this.optimizer = optimizer;
-		this.annotator = annotator; // Training only requires the top result
+		this.annotator = annotator; // Training requires the top result, or the k best if the annotator returns them
 		this.callback = callback;
 	}
 
@@ -92,7 +93,19 @@ public class AnnotationModelTrainingIteration extends TextInstanceProcessor {
 				logger.error("end");
 			}
 			ErrorAnalyzer.visualizeErrors(targetStateSequence, predictedStateSequence, normalizationPredictionModels);
-			optimizer.update(targetStateSequence, predictedStateSequence);
+			if (predictedStateSequences.size() == 1) {
+				optimizer.update(targetStateSequence, predictedStateSequence);
+			} else {
+				// Annotator returned the k best labelings, update against all that are incorrect
+				List<List<AnnotatedSegment>> incorrectStateSequences = new ArrayList<List<AnnotatedSegment>>();
+				for (int rank = 0; rank < predictedStateSequences.size(); rank++) {
+					List<AnnotatedSegment> stateSequence = predictedStateSequences.getObject(rank);
+					if (!targetStateSequence.equals(stateSequence)) {
+						incorrectStateSequences.add(stateSequence);
+					}
+				}
+				optimizer.updateAll(targetStateSequence, incorrectStateSequences);
+			}
 
 			// Log updated scores
 			targetScore = annotator.scoreStateSequence(targetStateSequence);
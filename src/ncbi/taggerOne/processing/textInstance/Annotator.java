@@ -1,10 +1,15 @@
 package ncbi.taggerOne.processing.textInstance;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,7 +19,9 @@ import ncbi.taggerOne.lexicon.Index;
 import ncbi.taggerOne.lexicon.Lexicon;
 import ncbi.taggerOne.model.normalization.CachedNormalizationModel;
 import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
+import ncbi.taggerOne.model.recognition.BatchRecognitionModelPredictor;
 import ncbi.taggerOne.model.recognition.RecognitionModelPredictor;
+import ncbi.taggerOne.model.recognition.RecognitionScoreTable;
 import ncbi.taggerOne.types.AnnotatedSegment;
 import ncbi.taggerOne.types.Entity;
 import ncbi.taggerOne.types.Segment;
@@ -29,10 +36,15 @@ public class Annotator extends TextInstanceProcessor {
 	private static final Logger logger = LoggerFactory.getLogger(Annotator.class);
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup pathTimers = Profiler.timerGroup("Annotator.getBestPath()@");
+
 	protected Lexicon lexicon;
 	protected RecognitionModelPredictor recognitionModel;
 	protected Map<String, NormalizationModelPredictor> normalizationModels;
 	protected Map<String, Vector<String>> unknownEntityVectors;
+	protected boolean arrayDecoder;
+	protected int nBest;
+	private transient ThreadLocal<DecoderWorkspace> decoderWorkspaces;
 
 	public Annotator(Lexicon lexicon, RecognitionModelPredictor recognitionModel, Map<String, NormalizationModelPredictor> normalizationModels) {
 		this.lexicon = lexicon;
@@ -42,6 +54,21 @@ public class Annotator extends TextInstanceProcessor {
 		for (String entityType : normalizationModels.keySet()) {
 			unknownEntityVectors.put(entityType, lexicon.getIndex(entityType).getUnknownEntity().getPrimaryName().getVector());
 		}
+		initTransients();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initTransients();
+	}
+
+	private void initTransients() {
+		decoderWorkspaces = new ThreadLocal<DecoderWorkspace>() {
+			@Override
+			protected DecoderWorkspace initialValue() {
+				return new DecoderWorkspace(normalizationModels.keySet());
+			}
+		};
 	}
 
 	@Override
@@ -66,6 +93,31 @@ public class Annotator extends TextInstanceProcessor {
 		return normalizationModels;
 	}
 
+	public int getNBest() {
+		return Math.max(nBest, 1);
+	}
+
+	/*
+	 * Sets the number of labelings returned by getPredictedStateSequences(); values above 1 use the k-best decoder
+	 */
+	public void setNBest(int nBest) {
+		if (nBest < 1) {
+			throw new IllegalArgumentException("nBest must be at least 1: " + nBest);
+		}
+		this.nBest = nBest;
+	}
+
+	public boolean isArrayDecoder() {
+		return arrayDecoder;
+	}
+
+	/*
+	 * If true, decode using preallocated arrays instead of PathNode objects; both decoders return the same path
+	 */
+	public void setArrayDecoder(boolean arrayDecoder) {
+		this.arrayDecoder = arrayDecoder;
+	}
+
 	@Override
 	public void process(TextInstance input) {
 		Profiler.start("Annotator.process()");
@@ -103,19 +155,26 @@ public class Annotator extends TextInstanceProcessor {
 	}
 
 	public RankedList<List<AnnotatedSegment>> getPredictedStateSequences(TextInstance input) {
+		if (nBest > 1) {
+			return getKBestStateSequences(input, nBest);
+		}
+		if (arrayDecoder) {
+			return getPredictedStateSequencesArray(input);
+		}
 		Profiler.start("Annotator.getPredictedStateSequences()");
 		Profiler.start("Annotator.getPredictedStateSequences():init");
 		// Initialize data structures to hold partial paths and scores
 		List<Token> tokens = input.getTokens();
 		int length = tokens.size();
 		PathNode[] paths = new PathNode[length];
+		RecognitionScoreTable recognitionScores = getRecognitionScores(input);
 		Profiler.stop("Annotator.getPredictedStateSequences():init");
 
 		for (int tokenIndex = 0; tokenIndex < length; tokenIndex++) {
 			// Given paths up to tokenIndex - 1 are calculated
 			// Calculate highest path to tokenIndex
 			List<Segment> segments = input.getSegmentsEndingAt(tokenIndex);
-			List<PathNode> boundedPaths = getBoundedPaths(paths, segments);
+			List<PathNode> boundedPaths = getBoundedPaths(paths, segments, recognitionScores);
 			paths[tokenIndex] = getBestPath(boundedPaths);
 		}
 
@@ -129,7 +188,24 @@ public class Annotator extends TextInstanceProcessor {
 		return rankedPaths;
 	}
 
-	private List<PathNode> getBoundedPaths(PathNode[] paths, List<Segment> segments) {
+	/*
+	 * Returns the recognition scores for all segments of the input, or null if the recognition model can only score segments one at a time
+	 */
+	private RecognitionScoreTable getRecognitionScores(TextInstance input) {
+		if (recognitionModel instanceof BatchRecognitionModelPredictor) {
+			return ((BatchRecognitionModelPredictor) recognitionModel).getScoreTable(input);
+		}
+		return null;
+	}
+
+	private double predictRecognition(RecognitionScoreTable recognitionScores, String toState, Segment segment) {
+		if (recognitionScores == null) {
+			return recognitionModel.predict(toState, segment);
+		}
+		return recognitionScores.predict(toState, segment);
+	}
+
+	private List<PathNode> getBoundedPaths(PathNode[] paths, List<Segment> segments, RecognitionScoreTable recognitionScores) {
 		Profiler.start("Annotator.getBoundedPaths()");
 		List<PathNode> boundedPaths = new ArrayList<PathNode>(segments.size());
 
@@ -142,7 +218,7 @@ public class Annotator extends TextInstanceProcessor {
 				if (parentIndex >= 0) {
 					parent = paths[parentIndex];
 				}
-				double recognitionScore = recognitionModel.predict(T1Constants.NONENTITY_STATE, segment);
+				double recognitionScore = predictRecognition(recognitionScores, T1Constants.NONENTITY_STATE, segment);
 				// NOTE: It is NOT faster to reuse PathNodes
 				PathNode path = new PathNode(parent, segment, T1Constants.NONENTITY_STATE, recognitionScore, 0.0);
 				logger.trace("SCORE\t" + segment.getStartChar() + "\t" + segment.getEndChar() + "\t" + T1Constants.NONENTITY_STATE + "\t" + segment.getText() + "\t" + recognitionScore + "\t"
@@ -160,7 +236,7 @@ public class Annotator extends TextInstanceProcessor {
 				if (parentIndex >= 0) {
 					parent = paths[parentIndex];
 				}
-				double recognitionScore = recognitionModel.predict(entityType, segment);
+				double recognitionScore = predictRecognition(recognitionScores, entityType, segment);
 				double normalizationScoreBound = 0.0;
 				Vector<String> mentionVector = segment.getMentionName().getVector();
 				if (mentionVector != null) {
@@ -190,7 +266,8 @@ public class Annotator extends TextInstanceProcessor {
 				Profiler.stop("Annotator.getBestPath()");
 				return bestPath;
 			}
-			Profiler.start("Annotator.getBestPath()@" + Integer.toString(pathIndex));
+			Profiler.Timer pathTimer = pathTimers.get(pathIndex);
+			pathTimer.start();
 			String entityType = path.getEntityType();
 			if (entityType.equals(T1Constants.NONENTITY_STATE)) {
 				path.setNormalization(0.0, null);
@@ -229,7 +306,7 @@ public class Annotator extends TextInstanceProcessor {
 			} else if (path.getPathScore() > bestPath.getPathScore()) {
 				bestPath = path;
 			}
-			Profiler.stop("Annotator.getBestPath()@" + Integer.toString(pathIndex));
+			pathTimer.stop();
 		}
 		logger.trace("Annotator.getBestPath(): " + bestPath.getPathScore() + " " + bestPath.toString());
 		Profiler.stop("Annotator.getBestPath()");
@@ -258,6 +335,465 @@ public class Annotator extends TextInstanceProcessor {
 		return finalPath;
 	}
 
+	/*
+	 * Semi-markov Viterbi decoding equivalent to getPredictedStateSequences(), but working on primitive arrays that are reused across calls by each thread.
+	 * Candidates ending at each token are scored in the same order as getBoundedPaths(), then visited in decreasing order of bounded score (ties in
+	 * candidate order, as the stable sort in getBestPath() does) by popping them from a binary heap, so candidates after the early stop are never sorted.
+	 */
+	private RankedList<List<AnnotatedSegment>> getPredictedStateSequencesArray(TextInstance input) {
+		Profiler.start("Annotator.getPredictedStateSequencesArray()");
+		int length = input.getTokens().size();
+		DecoderWorkspace workspace = decoderWorkspaces.get();
+		workspace.ensureTokenCapacity(length);
+		workspace.recognitionScores = getRecognitionScores(input);
+		for (int tokenIndex = 0; tokenIndex < length; tokenIndex++) {
+			List<Segment> segments = input.getSegmentsEndingAt(tokenIndex);
+			workspace.ensureCandidateCapacity(segments.size() * workspace.stateCount);
+			int candidateCount = getBoundedCandidates(workspace, segments);
+			getBestCandidate(workspace, tokenIndex, candidateCount);
+		}
+		RankedList<List<AnnotatedSegment>> rankedPaths = new RankedList<List<AnnotatedSegment>>(1);
+		rankedPaths.add(workspace.bestScore[length - 1], getFinalPath(workspace, length - 1));
+		workspace.recognitionScores = null;
+		Profiler.stop("Annotator.getPredictedStateSequencesArray()");
+		return rankedPaths;
+	}
+
+	private int getBoundedCandidates(DecoderWorkspace workspace, List<Segment> segments) {
+		int candidateCount = 0;
+		// Nonentity segments can only be length 1
+		for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+			Segment segment = segments.get(segmentIndex);
+			if (segment.getTokens().size() == 1) {
+				double recognitionScore = predictRecognition(workspace.recognitionScores, T1Constants.NONENTITY_STATE, segment);
+				candidateCount = addCandidate(workspace, candidateCount, segment, DecoderWorkspace.NONENTITY_STATE_INDEX, recognitionScore, 0.0);
+			}
+		}
+		for (int stateIndex = 1; stateIndex < workspace.stateCount; stateIndex++) {
+			String entityType = workspace.states[stateIndex];
+			NormalizationModelPredictor normalizationPredictor = normalizationModels.get(entityType);
+			for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+				Segment segment = segments.get(segmentIndex);
+				double recognitionScore = predictRecognition(workspace.recognitionScores, entityType, segment);
+				double normalizationScoreBound = 0.0;
+				Vector<String> mentionVector = segment.getMentionName().getVector();
+				if (mentionVector != null) {
+					normalizationScoreBound += normalizationPredictor.getScoreBound(mentionVector);
+				}
+				candidateCount = addCandidate(workspace, candidateCount, segment, stateIndex, recognitionScore, normalizationScoreBound);
+			}
+		}
+		return candidateCount;
+	}
+
+	private static int addCandidate(DecoderWorkspace workspace, int candidate, Segment segment, int stateIndex, double recognitionScore, double normalizationScoreBound) {
+		int parentIndex = segment.getStartIndex() - 1;
+		double boundedPathScore = recognitionScore + normalizationScoreBound;
+		if (parentIndex >= 0) {
+			boundedPathScore += workspace.bestScore[parentIndex];
+		}
+		workspace.candidateSegment[candidate] = segment;
+		workspace.candidateState[candidate] = stateIndex;
+		workspace.candidateRecognitionScore[candidate] = recognitionScore;
+		workspace.candidateBoundedScore[candidate] = boundedPathScore;
+		return candidate + 1;
+	}
+
+	private void getBestCandidate(DecoderWorkspace workspace, int tokenIndex, int candidateCount) {
+		Profiler.start("Annotator.getBestCandidate()");
+		workspace.buildHeap(candidateCount);
+		int bestCandidate = -1;
+		double bestPathScore = Double.NaN;
+		Entity bestEntity = null;
+		for (int pathIndex = 0; pathIndex < candidateCount; pathIndex++) {
+			int candidate = workspace.popHeap();
+			if (bestCandidate >= 0 && bestPathScore > workspace.candidateBoundedScore[candidate] + T1Constants.EPSILON) {
+				// This candidate and all remaining have lower bounded path scores than the current best path score
+				break;
+			}
+			Profiler.Timer pathTimer = pathTimers.get(pathIndex);
+			pathTimer.start();
+			Segment segment = workspace.candidateSegment[candidate];
+			int stateIndex = workspace.candidateState[candidate];
+			double normalizationScore = 0.0;
+			Entity entity = null;
+			if (stateIndex != DecoderWorkspace.NONENTITY_STATE_INDEX) {
+				String entityType = workspace.states[stateIndex];
+				Index index = lexicon.getIndex(entityType);
+				Vector<String> mentionVector = segment.getMentionName().getVector();
+				entity = index.getUnknownEntity();
+				if (mentionVector != null) {
+					NormalizationModelPredictor normalizationPredictor = normalizationModels.get(entityType);
+					if (normalizationPredictor != null) {
+						normalizationScore = normalizationPredictor.scoreEntity(mentionVector, index.getUnknownEntity());
+						RankedList<Entity> bestEntities = workspace.bestEntities;
+						bestEntities.clear();
+						normalizationPredictor.findBest(mentionVector, bestEntities);
+						if (bestEntities.size() > 0) {
+							normalizationScore = bestEntities.getValue(0);
+							entity = bestEntities.getObject(0);
+						}
+					}
+				}
+			}
+			double pathScore = workspace.candidateRecognitionScore[candidate] + normalizationScore;
+			int parentIndex = segment.getStartIndex() - 1;
+			if (parentIndex >= 0) {
+				pathScore += workspace.bestScore[parentIndex];
+			}
+			if (bestCandidate < 0 || pathScore > bestPathScore) {
+				bestCandidate = candidate;
+				bestPathScore = pathScore;
+				bestEntity = entity;
+			}
+			pathTimer.stop();
+		}
+		workspace.bestSegment[tokenIndex] = workspace.candidateSegment[bestCandidate];
+		workspace.bestState[tokenIndex] = workspace.candidateState[bestCandidate];
+		workspace.bestEntity[tokenIndex] = bestEntity;
+		workspace.bestScore[tokenIndex] = bestPathScore;
+		// Release references to segments so they can be collected
+		Arrays.fill(workspace.candidateSegment, 0, candidateCount, null);
+		Profiler.stop("Annotator.getBestCandidate()");
+	}
+
+	private List<AnnotatedSegment> getFinalPath(DecoderWorkspace workspace, int lastTokenIndex) {
+		List<AnnotatedSegment> finalPath = new ArrayList<AnnotatedSegment>();
+		int tokenIndex = lastTokenIndex;
+		while (tokenIndex >= 0) {
+			Segment segment = workspace.bestSegment[tokenIndex];
+			String entityType = workspace.states[workspace.bestState[tokenIndex]];
+			AnnotatedSegment annotatedSegment = segment.getAnnotatedCopy(entityType);
+			if (entityType.equals(T1Constants.NONENTITY_STATE)) {
+				annotatedSegment.setEntities(Collections.singleton(lexicon.getNonEntity()));
+			} else {
+				if (workspace.bestEntity[tokenIndex] == null) {
+					logger.error("getFinalPath() entity is null for segment " + segment.getText());
+				}
+				annotatedSegment.setEntities(Collections.singleton(workspace.bestEntity[tokenIndex]));
+			}
+			finalPath.add(annotatedSegment);
+			tokenIndex = segment.getStartIndex() - 1;
+		}
+		Collections.reverse(finalPath);
+		// Release references to segments and entities so they can be collected
+		Arrays.fill(workspace.bestSegment, 0, lastTokenIndex + 1, null);
+		Arrays.fill(workspace.bestEntity, 0, lastTokenIndex + 1, null);
+		return finalPath;
+	}
+
+	/*
+	 * Returns the k highest scoring state sequences. Each token keeps the k best derivations ending there, found by popping candidates (a segment and
+	 * state ending at the token, combined with the j-th best derivation ending just before the segment) from a heap; popping the j-th candidate for a
+	 * segment and state pushes the (j+1)-th, so each token costs O(candidates + k log candidates) (Huang and Chiang 2005, algorithm 2). As in
+	 * getBestPath(), candidates first enter the heap with the normalization score bound, and findBest() only runs for a segment and state when its bounded
+	 * candidate reaches the top of the heap. The normalization score is then reused for all derivations through that segment and state.
+	 */
+	private RankedList<List<AnnotatedSegment>> getKBestStateSequences(TextInstance input, int k) {
+		Profiler.start("Annotator.getKBestStateSequences()");
+		int length = input.getTokens().size();
+		KBestDerivation[][] derivations = new KBestDerivation[length][];
+		RecognitionScoreTable recognitionScores = getRecognitionScores(input);
+		for (int tokenIndex = 0; tokenIndex < length; tokenIndex++) {
+			List<Segment> segments = input.getSegmentsEndingAt(tokenIndex);
+			derivations[tokenIndex] = getKBestDerivations(derivations, getKBestArcs(segments, recognitionScores), k);
+		}
+		RankedList<List<AnnotatedSegment>> rankedPaths = new RankedList<List<AnnotatedSegment>>(k);
+		for (KBestDerivation derivation : derivations[length - 1]) {
+			rankedPaths.add(derivation.score, getFinalPath(derivation));
+		}
+		Profiler.stop("Annotator.getKBestStateSequences()");
+		return rankedPaths;
+	}
+
+	private List<KBestArc> getKBestArcs(List<Segment> segments, RecognitionScoreTable recognitionScores) {
+		List<KBestArc> arcs = new ArrayList<KBestArc>();
+		// Nonentity segments can only be length 1
+		for (Segment segment : segments) {
+			if (segment.getTokens().size() == 1) {
+				KBestArc arc = new KBestArc(arcs.size(), segment, T1Constants.NONENTITY_STATE, predictRecognition(recognitionScores, T1Constants.NONENTITY_STATE, segment), 0.0);
+				arc.setNormalization(0.0, null);
+				arcs.add(arc);
+			}
+		}
+		for (String entityType : normalizationModels.keySet()) {
+			NormalizationModelPredictor normalizationPredictor = normalizationModels.get(entityType);
+			for (Segment segment : segments) {
+				double recognitionScore = predictRecognition(recognitionScores, entityType, segment);
+				double normalizationScoreBound = 0.0;
+				Vector<String> mentionVector = segment.getMentionName().getVector();
+				if (mentionVector != null) {
+					normalizationScoreBound += normalizationPredictor.getScoreBound(mentionVector);
+				}
+				arcs.add(new KBestArc(arcs.size(), segment, entityType, recognitionScore, normalizationScoreBound));
+			}
+		}
+		return arcs;
+	}
+
+	private KBestDerivation[] getKBestDerivations(KBestDerivation[][] derivations, List<KBestArc> arcs, int k) {
+		List<KBestCandidate> initialCandidates = new ArrayList<KBestCandidate>(arcs.size());
+		for (KBestArc arc : arcs) {
+			int parentIndex = arc.segment.getStartIndex() - 1;
+			KBestDerivation[] parentDerivations = parentIndex >= 0 ? derivations[parentIndex] : null;
+			if (parentDerivations == null || parentDerivations.length > 0) {
+				initialCandidates.add(new KBestCandidate(arc, parentDerivations, 0));
+			}
+		}
+		PriorityQueue<KBestCandidate> candidates = new PriorityQueue<KBestCandidate>(initialCandidates);
+		List<KBestDerivation> best = new ArrayList<KBestDerivation>(k);
+		while (best.size() < k && !candidates.isEmpty()) {
+			KBestCandidate candidate = candidates.poll();
+			KBestArc arc = candidate.arc;
+			if (!candidate.isExact()) {
+				// Replace the bound with the actual normalization score, and revisit once everything bounded higher has been seen
+				setNormalization(arc);
+				candidates.add(new KBestCandidate(arc, candidate.parentDerivations, candidate.parentRank));
+				continue;
+			}
+			KBestDerivation parent = candidate.parentDerivations == null ? null : candidate.parentDerivations[candidate.parentRank];
+			best.add(new KBestDerivation(parent, arc, candidate.score));
+			int nextRank = candidate.parentRank + 1;
+			if (candidate.parentDerivations != null && nextRank < candidate.parentDerivations.length) {
+				candidates.add(new KBestCandidate(arc, candidate.parentDerivations, nextRank));
+			}
+		}
+		return best.toArray(new KBestDerivation[best.size()]);
+	}
+
+	private void setNormalization(KBestArc arc) {
+		Segment segment = arc.segment;
+		String entityType = arc.entityType;
+		Index index = lexicon.getIndex(entityType);
+		Vector<String> mentionVector = segment.getMentionName().getVector();
+		double normalizationScore = 0.0;
+		Entity entity = index.getUnknownEntity();
+		if (mentionVector != null) {
+			NormalizationModelPredictor normalizationPredictor = normalizationModels.get(entityType);
+			if (normalizationPredictor != null) {
+				normalizationScore = normalizationPredictor.scoreEntity(mentionVector, index.getUnknownEntity());
+				RankedList<Entity> bestEntities = new RankedList<Entity>(1);
+				normalizationPredictor.findBest(mentionVector, bestEntities);
+				if (bestEntities.size() > 0) {
+					normalizationScore = bestEntities.getValue(0);
+					entity = bestEntities.getObject(0);
+				}
+			}
+		}
+		arc.setNormalization(normalizationScore, entity);
+	}
+
+	private List<AnnotatedSegment> getFinalPath(KBestDerivation derivation) {
+		List<AnnotatedSegment> finalPath = new ArrayList<AnnotatedSegment>();
+		while (derivation != null) {
+			KBestArc arc = derivation.arc;
+			AnnotatedSegment annotatedSegment = arc.segment.getAnnotatedCopy(arc.entityType);
+			if (arc.entityType.equals(T1Constants.NONENTITY_STATE)) {
+				annotatedSegment.setEntities(Collections.singleton(lexicon.getNonEntity()));
+			} else {
+				annotatedSegment.setEntities(Collections.singleton(arc.entity));
+			}
+			finalPath.add(annotatedSegment);
+			derivation = derivation.parent;
+		}
+		Collections.reverse(finalPath);
+		return finalPath;
+	}
+
+	/*
+	 * A segment labeled with a state, with its local score
+	 */
+	private static final class KBestArc {
+
+		final int order;
+		final Segment segment;
+		final String entityType;
+		final double recognitionScore;
+		final double boundedScore;
+		boolean normalized;
+		double score;
+		Entity entity;
+
+		KBestArc(int order, Segment segment, String entityType, double recognitionScore, double normalizationScoreBound) {
+			this.order = order;
+			this.segment = segment;
+			this.entityType = entityType;
+			this.recognitionScore = recognitionScore;
+			this.boundedScore = recognitionScore + normalizationScoreBound;
+		}
+
+		void setNormalization(double normalizationScore, Entity entity) {
+			this.normalized = true;
+			this.score = recognitionScore + normalizationScore;
+			this.entity = entity;
+		}
+	}
+
+	/*
+	 * A path ending with an arc, represented by the arc and the path ending just before it
+	 */
+	private static final class KBestDerivation {
+
+		final KBestDerivation parent;
+		final KBestArc arc;
+		final double score;
+
+		KBestDerivation(KBestDerivation parent, KBestArc arc, double score) {
+			this.parent = parent;
+			this.arc = arc;
+			this.score = score;
+		}
+	}
+
+	/*
+	 * An arc combined with the derivation of the given rank ending just before it; the score uses the bound until the arc is normalized
+	 */
+	private static final class KBestCandidate implements Comparable<KBestCandidate> {
+
+		final KBestArc arc;
+		final KBestDerivation[] parentDerivations;
+		final int parentRank;
+		final boolean exact;
+		final double score;
+
+		KBestCandidate(KBestArc arc, KBestDerivation[] parentDerivations, int parentRank) {
+			this.arc = arc;
+			this.parentDerivations = parentDerivations;
+			this.parentRank = parentRank;
+			this.exact = arc.normalized;
+			double score = exact ? arc.score : arc.boundedScore;
+			if (parentDerivations != null) {
+				score += parentDerivations[parentRank].score;
+			}
+			this.score = score;
+		}
+
+		boolean isExact() {
+			return exact;
+		}
+
+		@Override
+		public int compareTo(KBestCandidate candidate2) {
+			int comparison = -Double.compare(score, candidate2.score);
+			if (comparison == 0) {
+				comparison = Integer.compare(arc.order, candidate2.arc.order);
+			}
+			if (comparison == 0) {
+				comparison = Integer.compare(parentRank, candidate2.parentRank);
+			}
+			return comparison;
+		}
+	}
+
+	/*
+	 * Per-thread arrays for getPredictedStateSequencesArray(). States are indexed with the nonentity state first, then the entity types in the iteration
+	 * order of the normalization models, matching the order candidates are created in getBoundedPaths().
+	 */
+	private static final class DecoderWorkspace {
+
+		static final int NONENTITY_STATE_INDEX = 0;
+
+		final String[] states;
+		final int stateCount;
+		final RankedList<Entity> bestEntities;
+		RecognitionScoreTable recognitionScores;
+
+		// Best path ending at each token
+		Segment[] bestSegment;
+		int[] bestState;
+		Entity[] bestEntity;
+		double[] bestScore;
+
+		// Candidates ending at the current token
+		Segment[] candidateSegment;
+		int[] candidateState;
+		double[] candidateRecognitionScore;
+		double[] candidateBoundedScore;
+		int[] heap;
+		int heapSize;
+
+		DecoderWorkspace(Collection<String> entityTypes) {
+			stateCount = entityTypes.size() + 1;
+			states = new String[stateCount];
+			states[NONENTITY_STATE_INDEX] = T1Constants.NONENTITY_STATE;
+			int stateIndex = 1;
+			for (String entityType : entityTypes) {
+				states[stateIndex++] = entityType;
+			}
+			bestEntities = new RankedList<Entity>(1);
+			ensureTokenCapacity(64);
+			ensureCandidateCapacity(64);
+		}
+
+		void ensureTokenCapacity(int tokenCount) {
+			if (bestScore != null && bestScore.length >= tokenCount) {
+				return;
+			}
+			int capacity = Math.max(tokenCount, bestScore == null ? 0 : 2 * bestScore.length);
+			bestSegment = new Segment[capacity];
+			bestState = new int[capacity];
+			bestEntity = new Entity[capacity];
+			bestScore = new double[capacity];
+		}
+
+		void ensureCandidateCapacity(int candidateCount) {
+			if (heap != null && heap.length >= candidateCount) {
+				return;
+			}
+			int capacity = Math.max(candidateCount, heap == null ? 0 : 2 * heap.length);
+			candidateSegment = new Segment[capacity];
+			candidateState = new int[capacity];
+			candidateRecognitionScore = new double[capacity];
+			candidateBoundedScore = new double[capacity];
+			heap = new int[capacity];
+		}
+
+		/*
+		 * Returns true if candidate1 should be visited before candidate2: higher bounded score first, ties in candidate order
+		 */
+		private boolean precedes(int candidate1, int candidate2) {
+			int comparison = Double.compare(candidateBoundedScore[candidate1], candidateBoundedScore[candidate2]);
+			return comparison > 0 || (comparison == 0 && candidate1 < candidate2);
+		}
+
+		void buildHeap(int candidateCount) {
+			for (int i = 0; i < candidateCount; i++) {
+				heap[i] = i;
+			}
+			heapSize = candidateCount;
+			for (int i = heapSize / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+
+		int popHeap() {
+			int top = heap[0];
+			heapSize--;
+			heap[0] = heap[heapSize];
+			siftDown(0);
+			return top;
+		}
+
+		private void siftDown(int position) {
+			int candidate = heap[position];
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && precedes(heap[child + 1], heap[child])) {
+					child++;
+				}
+				if (!precedes(heap[child], candidate)) {
+					break;
+				}
+				heap[position] = heap[child];
+				position = child;
+			}
+			heap[position] = candidate;
+		}
+	}
+
 	private static final class PathNode implements Comparable<PathNode> {
 
 		private PathNode parent;
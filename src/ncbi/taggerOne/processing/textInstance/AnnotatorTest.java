@@ -0,0 +1,233 @@
+package ncbi.taggerOne.processing.textInstance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.lexicon.Lexicon;
+import ncbi.taggerOne.model.normalization.NormalizationModelPredictor;
+import ncbi.taggerOne.model.recognition.RecognitionModelPredictor;
+import ncbi.taggerOne.types.AnnotatedSegment;
+import ncbi.taggerOne.types.Entity;
+import ncbi.taggerOne.types.MentionName;
+import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.TextInstance;
+import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.RankedList;
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector;
+
+public class AnnotatorTest {
+
+	private static final String[] TYPES = { "Chemical", "Disease" };
+	private static final int MAX_SEGMENT_LENGTH = 3;
+
+	@Test
+	public void testKBestRankOneMatchesSingleBest() {
+		Random random = new Random(1);
+		Dictionary<String> mentionVectorSpace = new Dictionary<String>();
+		for (int i = 0; i < 10; i++) {
+			mentionVectorSpace.addElement("w" + i);
+		}
+		mentionVectorSpace.freeze();
+		Dictionary<String> types = new Dictionary<String>();
+		for (String type : TYPES) {
+			types.addElement(type);
+		}
+		types.freeze();
+		Lexicon lexicon = new Lexicon(types);
+		Map<String, Dictionary<String>> nameVectorSpaces = new HashMap<String, Dictionary<String>>();
+		for (String type : TYPES) {
+			for (int i = 0; i < 5; i++) {
+				MentionName name = new MentionName(type + " name " + i);
+				name.setVector(createVector(random, mentionVectorSpace));
+				lexicon.addEntity(new Entity(type, type + i, name));
+			}
+			nameVectorSpaces.put(type, mentionVectorSpace);
+		}
+		lexicon.createIndexes(mentionVectorSpace, nameVectorSpaces);
+
+		for (int trial = 0; trial < 200; trial++) {
+			Map<String, NormalizationModelPredictor> normalizationModels = new HashMap<String, NormalizationModelPredictor>();
+			for (String type : TYPES) {
+				List<Entity> entities = new ArrayList<Entity>(lexicon.getEntities(type));
+				normalizationModels.put(type, new RandomNormalizationModel(trial, lexicon.getUnknownEntity(type), entities));
+			}
+			RecognitionModelPredictor recognitionModel = new RandomRecognitionModel(trial);
+			TextInstance instance = createInstance(random, mentionVectorSpace, 1 + random.nextInt(12));
+
+			Annotator annotator = new Annotator(lexicon, recognitionModel, normalizationModels);
+			RankedList<List<AnnotatedSegment>> singleBest = annotator.getPredictedStateSequences(instance);
+			annotator.setArrayDecoder(true);
+			RankedList<List<AnnotatedSegment>> arraySingleBest = annotator.getPredictedStateSequences(instance);
+			assertEquals(visualize(singleBest.getObject(0)), visualize(arraySingleBest.getObject(0)));
+
+			for (int k : new int[] { 2, 5, 20 }) {
+				annotator.setNBest(k);
+				RankedList<List<AnnotatedSegment>> kBest = annotator.getPredictedStateSequences(instance);
+				String message = "trial " + trial + ", k = " + k;
+				assertTrue(message, kBest.size() > 0 && kBest.size() <= k);
+				assertEquals(message, singleBest.getValue(0), kBest.getValue(0), 1.0e-9);
+				assertEquals(message, visualize(singleBest.getObject(0)), visualize(kBest.getObject(0)));
+				Set<String> labelings = new HashSet<String>();
+				for (int rank = 0; rank < kBest.size(); rank++) {
+					if (rank > 0) {
+						assertTrue(message, kBest.getValue(rank) <= kBest.getValue(rank - 1));
+					}
+					assertTrue(message + ", duplicate labeling at rank " + rank, labelings.add(visualize(kBest.getObject(rank))));
+				}
+			}
+		}
+	}
+
+	private static TextInstance createInstance(Random random, Dictionary<String> mentionVectorSpace, int tokenCount) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < tokenCount; i++) {
+			text.append(i == 0 ? "t" : " t");
+		}
+		TextInstance instance = new TextInstance("1", "1", text.toString(), 0);
+		List<Token> tokens = new ArrayList<Token>();
+		for (int i = 0; i < tokenCount; i++) {
+			tokens.add(new Token(instance, 2 * i, 2 * i + 1, i));
+		}
+		instance.setTokens(tokens);
+		List<Segment> segments = new ArrayList<Segment>();
+		for (int start = 0; start < tokenCount; start++) {
+			for (int end = start; end < Math.min(tokenCount, start + MAX_SEGMENT_LENGTH); end++) {
+				Segment segment = new Segment(instance, 2 * start, 2 * end + 1, tokens.subList(start, end + 1));
+				if (random.nextInt(4) > 0) {
+					segment.getMentionName().setVector(createVector(random, mentionVectorSpace));
+				}
+				segments.add(segment);
+			}
+		}
+		instance.setSegments(segments);
+		return instance;
+	}
+
+	private static Vector<String> createVector(Random random, Dictionary<String> space) {
+		Vector<String> vector = new SparseVector<String>(space);
+		vector.set(random.nextInt(space.size()), 1.0);
+		vector.set(random.nextInt(space.size()), 1.0);
+		return vector;
+	}
+
+	private static String visualize(List<AnnotatedSegment> labeling) {
+		StringBuilder str = new StringBuilder();
+		for (AnnotatedSegment segment : labeling) {
+			str.append(segment.getStartChar() + "-" + segment.getEndChar() + ":" + segment.getEntityClass() + ":" + segment.visualizeEntitiesPrimaryIdentifiers() + " ");
+		}
+		return str.toString();
+	}
+
+	private static double randomScore(long seed, Object... keys) {
+		long hash = seed;
+		for (Object key : keys) {
+			hash = 31 * hash + key.hashCode();
+		}
+		return 2.0 * new Random(hash).nextDouble() - 1.0;
+	}
+
+	private static class RandomRecognitionModel implements RecognitionModelPredictor {
+
+		private static final long serialVersionUID = 1L;
+
+		private long seed;
+
+		public RandomRecognitionModel(long seed) {
+			this.seed = seed;
+		}
+
+		@Override
+		public Dictionary<String> getEntityClassStates() {
+			return null;
+		}
+
+		@Override
+		public double predict(String toState, Segment segment) {
+			return randomScore(seed, toState, segment.getStartIndex(), segment.getEndIndex());
+		}
+
+		@Override
+		public Dictionary<String> getFeatureSet() {
+			return null;
+		}
+
+		@Override
+		public void visualize() {
+			// Nothing to show
+		}
+
+		@Override
+		public RecognitionModelPredictor compile() {
+			return this;
+		}
+	}
+
+	// Scores each entity at random in [-1, 1), so 1.0 is a valid bound
+	private static class RandomNormalizationModel implements NormalizationModelPredictor {
+
+		private static final long serialVersionUID = 1L;
+
+		private long seed;
+		private Entity unknownEntity;
+		private List<Entity> entities;
+
+		public RandomNormalizationModel(long seed, Entity unknownEntity, List<Entity> entities) {
+			this.seed = seed;
+			this.unknownEntity = unknownEntity;
+			this.entities = entities;
+		}
+
+		@Override
+		public double getScoreBound(Vector<String> mentionVector) {
+			return 1.0;
+		}
+
+		@Override
+		public void findBest(Vector<String> mentionVector, RankedList<Entity> bestEntities) {
+			bestEntities.add(scoreEntity(mentionVector, unknownEntity), unknownEntity);
+			for (Entity entity : entities) {
+				double score = scoreEntity(mentionVector, entity);
+				if (bestEntities.check(score)) {
+					bestEntities.add(score, entity);
+				}
+			}
+		}
+
+		@Override
+		public MentionName findBestName(Vector<String> mentionVector, Entity entity) {
+			return entity.getPrimaryName();
+		}
+
+		@Override
+		public double scoreEntity(Vector<String> mentionVector, Entity entity) {
+			return randomScore(seed, mentionVector.toString(), entity.getPrimaryIdentifier());
+		}
+
+		@Override
+		public double scoreNameVector(Vector<String> mentionVector, Vector<String> nameVector) {
+			return randomScore(seed, mentionVector.toString(), nameVector.toString());
+		}
+
+		@Override
+		public void visualizeScore(Vector<String> mentionVector, Vector<String> nameVector) {
+			// Nothing to show
+		}
+
+		@Override
+		public NormalizationModelPredictor compile() {
+			return this;
+		}
+	}
+}
@@ -7,7 +7,10 @@ import ncbi.taggerOne.processing.features.FeatureProcessorCallback;
 import ncbi.taggerOne.types.Segment;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.types.Token;
+import ncbi.taggerOne.util.ConcurrentClockCache;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.DictionaryHashIndex;
+import ncbi.taggerOne.util.HashedDictionary;
 import ncbi.taggerOne.util.vector.Vector;
 import ncbi.taggerOne.util.vector.VectorFactory;
 import ncbi.util.Profiler;
@@ -19,24 +22,84 @@ public class FeatureInstantiator extends TextInstanceProcessor {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup processorTimers = Profiler.timerGroup("FeatureInstantiator.process()@");
+
 	private VectorFactory vectorFactory;
 	private Dictionary<String> featureSet;
 	private List<FeatureProcessor> featureProcessors;
 	private FeatureProcessorCallback callback;
+	private ConcurrentClockCache<String, CachedFeatures> featureCache; // Null if features are not cached
 
 	public FeatureInstantiator(VectorFactory vectorFactory, Dictionary<String> featureSet, List<FeatureProcessor> featureProcessors) {
 		this.vectorFactory = vectorFactory;
 		this.featureSet = featureSet;
-		this.callback = new StandardFeatureInstantiatorCallback(featureSet);
+		if (featureSet instanceof HashedDictionary) {
+			this.callback = new HashedFeatureInstantiatorCallback((HashedDictionary) featureSet);
+		} else {
+			this.callback = new StandardFeatureInstantiatorCallback(featureSet);
+		}
 		this.featureProcessors = featureProcessors;
 	}
 
+	public VectorFactory getVectorFactory() {
+		return vectorFactory;
+	}
+
+	public void setVectorFactory(VectorFactory vectorFactory) {
+		this.vectorFactory = vectorFactory;
+		if (featureCache != null) {
+			featureCache.clear();
+		}
+	}
+
+	public List<FeatureProcessor> getFeatureProcessors() {
+		return featureProcessors;
+	}
+
+	/*
+	 * Replaces the feature processors; they must produce features from the same feature set
+	 */
+	public void setFeatureProcessors(List<FeatureProcessor> featureProcessors) {
+		this.featureProcessors = featureProcessors;
+		if (featureCache != null) {
+			featureCache.clear();
+		}
+	}
+
+	/*
+	 * Caches the features instantiated for each distinct text, so that TextInstances with the same text, tokens and segments share their feature vectors
+	 * instead of running the feature processors again. The cache holds at most maxSize texts and, if maxBytes > 0, at most an estimate of maxBytes bytes.
+	 * The cache belongs to this instantiator, so the feature set and feature processors are the same for every entry. A maxSize of 0 disables caching.
+	 * Feature vectors in the cache are shared and must not be modified.
+	 */
+	public void setFeatureCache(int maxSize, long maxBytes) {
+		if (maxSize > 0) {
+			featureCache = new ConcurrentClockCache<String, CachedFeatures>(maxSize, maxBytes, new CachedFeaturesWeigher());
+		} else {
+			featureCache = null;
+		}
+	}
+
+	public String getFeatureCacheStatistics() {
+		if (featureCache == null) {
+			return "disabled";
+		}
+		return featureCache.getStatistics();
+	}
+
 	@Override
 	public void process(TextInstance input) {
 		Profiler.start("FeatureInstantiator.process()");
 		if (!featureSet.isFrozen()) {
 			throw new IllegalStateException("Cannot instantiate features until Dictionary is frozen");
 		}
+		if (featureCache != null) {
+			CachedFeatures cachedFeatures = featureCache.get(input.getText());
+			if (cachedFeatures != null && cachedFeatures.apply(input)) {
+				Profiler.stop("FeatureInstantiator.process()");
+				return;
+			}
+		}
 		Profiler.start("FeatureInstantiator.process()@create");
 		// Set the feature vector for each segment
 		for (Token token : input.getTokens()) {
@@ -48,24 +111,114 @@ public class FeatureInstantiator extends TextInstanceProcessor {
 		Profiler.stop("FeatureInstantiator.process()@create");
 		// Instantiate the features
 		for (FeatureProcessor featureProcessor : featureProcessors) {
-			String featureProcessorName = featureProcessor.getClass().getName();
-			Profiler.start("FeatureInstantiator.process()@" + featureProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(featureProcessor.getClass());
+			processorTimer.start();
 			featureProcessor.process(input, callback);
-			Profiler.stop("FeatureInstantiator.process()@" + featureProcessorName);
+			processorTimer.stop();
+		}
+		if (featureCache != null) {
+			featureCache.put(input.getText(), new CachedFeatures(input));
 		}
 		Profiler.stop("FeatureInstantiator.process()");
 	}
 
+	/*
+	 * The feature vectors of the tokens and segments of one TextInstance, with the token indices of the segments so that they are only reused for
+	 * TextInstances segmented the same way
+	 */
+	private static class CachedFeatures {
+
+		final Vector<String>[] tokenFeatures;
+		final Vector<String>[] segmentFeatures;
+		final int[] segmentBounds;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		CachedFeatures(TextInstance input) {
+			List<Token> tokens = input.getTokens();
+			List<Segment> segments = input.getSegments();
+			tokenFeatures = new Vector[tokens.size()];
+			for (int i = 0; i < tokens.size(); i++) {
+				tokenFeatures[i] = tokens.get(i).getFeatures();
+			}
+			segmentFeatures = new Vector[segments.size()];
+			segmentBounds = new int[2 * segments.size()];
+			for (int i = 0; i < segments.size(); i++) {
+				Segment segment = segments.get(i);
+				segmentFeatures[i] = segment.getFeatures();
+				segmentBounds[2 * i] = segment.getStartIndex();
+				segmentBounds[2 * i + 1] = segment.getEndIndex();
+			}
+		}
+
+		/*
+		 * Sets the features of the input if it has the same tokens and segments, and returns whether it did
+		 */
+		boolean apply(TextInstance input) {
+			List<Token> tokens = input.getTokens();
+			List<Segment> segments = input.getSegments();
+			if (tokens.size() != tokenFeatures.length || segments.size() != segmentFeatures.length) {
+				return false;
+			}
+			for (int i = 0; i < segments.size(); i++) {
+				Segment segment = segments.get(i);
+				if (segment.getStartIndex() != segmentBounds[2 * i] || segment.getEndIndex() != segmentBounds[2 * i + 1]) {
+					return false;
+				}
+			}
+			for (int i = 0; i < tokens.size(); i++) {
+				tokens.get(i).setFeatures(tokenFeatures[i]);
+			}
+			for (int i = 0; i < segments.size(); i++) {
+				segments.get(i).setFeatures(segmentFeatures[i]);
+			}
+			return true;
+		}
+	}
+
+	private static class CachedFeaturesWeigher implements ConcurrentClockCache.Weigher<String, CachedFeatures> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public long weigh(String text, CachedFeatures cachedFeatures) {
+			// Rough estimate: object headers, 2 bytes per char, and an index and a value per vector entry
+			long weight = 64L + 2L * text.length() + 4L * cachedFeatures.segmentBounds.length;
+			for (Vector<String> features : cachedFeatures.tokenFeatures) {
+				weight += 48L + 12L * features.cardinality();
+			}
+			for (Vector<String> features : cachedFeatures.segmentFeatures) {
+				weight += 48L + 12L * features.cardinality();
+			}
+			return weight;
+		}
+	}
+
 	private static class StandardFeatureInstantiatorCallback implements FeatureProcessorCallback {
 
 		private static final long serialVersionUID = 1L;
 
 		private Dictionary<String> featureSet;
+		private transient volatile DictionaryHashIndex hashIndex;
 
 		public StandardFeatureInstantiatorCallback(Dictionary<String> featureSet) {
 			this.featureSet = featureSet;
 		}
 
+		// Created when first needed, since the feature set may not be frozen when the callback is created
+		private DictionaryHashIndex getHashIndex() {
+			DictionaryHashIndex index = hashIndex;
+			if (index == null) {
+				synchronized (this) {
+					index = hashIndex;
+					if (index == null) {
+						index = new DictionaryHashIndex(featureSet);
+						hashIndex = index;
+					}
+				}
+			}
+			return index;
+		}
+
 		@Override
 		public void callback(String featureName, double featureValue, Vector<String> featureVector) {
 			int index = featureSet.getIndex(featureName);
@@ -74,5 +227,51 @@ public class FeatureInstantiator extends TextInstanceProcessor {
 				featureVector.increment(index, featureValue);
 			}
 		}
+
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, double featureValue, Vector<String> featureVector) {
+			callback(prefix, text, start, end, DictionaryHashIndex.hash(text, start, end), featureValue, featureVector);
+		}
+
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, int textHash, double featureValue, Vector<String> featureVector) {
+			int index = getHashIndex().getIndex(prefix, text, start, end, textHash);
+			if (index >= 0) {
+				featureVector.increment(index, featureValue);
+			}
+		}
+	}
+
+	/*
+	 * Signed feature hashing: every feature has an index, and the value is multiplied by the sign of the feature name
+	 */
+	private static class HashedFeatureInstantiatorCallback implements FeatureProcessorCallback {
+
+		private static final long serialVersionUID = 1L;
+
+		private HashedDictionary featureSet;
+
+		public HashedFeatureInstantiatorCallback(HashedDictionary featureSet) {
+			this.featureSet = featureSet;
+		}
+
+		@Override
+		public void callback(String featureName, double featureValue, Vector<String> featureVector) {
+			long hash = HashedDictionary.hash(featureName);
+			featureVector.increment(featureSet.getIndex(hash), featureSet.getSign(hash) * featureValue);
+		}
+
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, double featureValue, Vector<String> featureVector) {
+			long hash = HashedDictionary.update(HashedDictionary.startHash(), prefix, 0, prefix.length());
+			hash = HashedDictionary.update(hash, '=');
+			hash = HashedDictionary.update(hash, text, start, end);
+			featureVector.increment(featureSet.getIndex(hash), featureSet.getSign(hash) * featureValue);
+		}
+
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, int textHash, double featureValue, Vector<String> featureVector) {
+			callback(prefix, text, start, end, featureValue, featureVector);
+		}
 	}
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import ncbi.taggerOne.processing.features.FeatureProcessor;
 import ncbi.taggerOne.processing.features.FeatureProcessorCallback;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.HashedDictionary;
 import ncbi.taggerOne.util.vector.Vector;
 import ncbi.util.Profiler;
 
@@ -16,6 +17,8 @@ public class FeatureSetExtractor extends TextInstanceProcessor {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup processorTimers = Profiler.timerGroup("FeatureSetExtractor.process()@");
+
 	private Dictionary<String> featureSet;
 	private List<FeatureProcessor> featureProcessors;
 	private FeatureProcessorCallback callback;
@@ -28,15 +31,19 @@ public class FeatureSetExtractor extends TextInstanceProcessor {
 
 	@Override
 	public void process(TextInstance input) {
+		if (featureSet instanceof HashedDictionary) {
+			// Every feature already has an index
+			return;
+		}
 		Profiler.start("FeatureSetExtractor.process()");
 		if (featureSet.isFrozen()) {
 			throw new IllegalStateException("Cannot extract features after Dictionary is frozen");
 		}
 		for (FeatureProcessor featureProcessor : featureProcessors) {
-			String featureProcessorName = featureProcessor.getClass().getName();
-			Profiler.start("FeatureSetExtractor.process()@" + featureProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(featureProcessor.getClass());
+			processorTimer.start();
 			featureProcessor.process(input, callback);
-			Profiler.stop("FeatureSetExtractor.process()@" + featureProcessorName);
+			processorTimer.stop();
 		}
 		Profiler.stop("FeatureSetExtractor.process()");
 	}
@@ -56,5 +63,15 @@ public class FeatureSetExtractor extends TextInstanceProcessor {
 			featureSet.addElement(featureName);
 		}
 
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, double featureValue, Vector<String> featureVector) {
+			featureSet.addElement(prefix + "=" + text.subSequence(start, end));
+		}
+
+		@Override
+		public void callback(String prefix, CharSequence text, int start, int end, int textHash, double featureValue, Vector<String> featureVector) {
+			callback(prefix, text, start, end, featureValue, featureVector);
+		}
+
 	}
 }
\ No newline at end of file
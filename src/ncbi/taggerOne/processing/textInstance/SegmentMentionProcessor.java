@@ -10,6 +10,8 @@ public class SegmentMentionProcessor extends TextInstanceProcessor {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Profiler.TimerGroup processorTimers = Profiler.timerGroup("SegmentMentionProcessor.process()@");
+
 	private MentionNameProcessor processor;
 
 	public SegmentMentionProcessor(MentionNameProcessor processor) {
@@ -25,10 +27,10 @@ public class SegmentMentionProcessor extends TextInstanceProcessor {
 		Profiler.start("SegmentMentionProcessor.process()");
 		for (Segment segment : input.getSegments()) {
 			MentionName mentionName = segment.getMentionName();
-			String mentionProcessorName = processor.getClass().getName();
-			Profiler.start("SegmentMentionProcessor.process()@" + mentionProcessorName);
+			Profiler.Timer processorTimer = processorTimers.get(processor.getClass());
+			processorTimer.start();
 			processor.process(mentionName);
-			Profiler.stop("SegmentMentionProcessor.process()@" + mentionProcessorName);
+			processorTimer.stop();
 		}
 		Profiler.stop("SegmentMentionProcessor.process()");
 	}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ncbi.taggerOne.types.Segment;
+import ncbi.taggerOne.types.SegmentLattice;
 import ncbi.taggerOne.types.TextInstance;
 import ncbi.taggerOne.types.Token;
 import ncbi.util.Profiler;
@@ -34,7 +35,7 @@ public class Segmenter extends TextInstanceProcessor {
 				segments.add(new Segment(start.getSourceText(), start.getStartChar(), end.getEndChar(), tokens));
 			}
 		}
-		input.setSegments(segments);
+		input.setSegmentLattice(new SegmentLattice(inputTokens.size(), segments));
 		Profiler.stop("Segmenter.process()");
 	}
 }
\ No newline at end of file
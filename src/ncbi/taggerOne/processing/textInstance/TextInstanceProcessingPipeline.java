@@ -1,17 +1,24 @@
 package ncbi.taggerOne.processing.textInstance;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ncbi.taggerOne.types.TextInstance;
+import ncbi.util.DaemonThreadFactory;
 import ncbi.util.ProgressReporter;
 
 public class TextInstanceProcessingPipeline extends TextInstanceProcessor {
 
-	// TODO PERFORMANCE Implement a parallel version: use a concurrent framework to process each instance as a job
 	// TODO Convert this to add processors one at a time and then be locked for use - improves clarity when creating the pipeline
 	private static final Logger logger = LoggerFactory.getLogger(TextInstanceProcessingPipeline.class);
 
@@ -19,10 +26,13 @@ public class TextInstanceProcessingPipeline extends TextInstanceProcessor {
 
 	private ProgressReporter reporter;
 	private List<TextInstanceProcessor> processors;
+	private int threads; // Values of 1 or less mean serial processing
+	private transient ExecutorService executor;
 
 	public TextInstanceProcessingPipeline(ProgressReporter reporter, List<TextInstanceProcessor> processors) {
 		this.reporter = reporter;
 		this.processors = processors;
+		this.threads = 1;
 	}
 
 	public TextInstanceProcessingPipeline(ProgressReporter reporter, TextInstanceProcessor... processors) {
@@ -48,6 +58,10 @@ public class TextInstanceProcessingPipeline extends TextInstanceProcessor {
 
 	@Override
 	public void processAll(List<TextInstance> input) {
+		if (threads > 1) {
+			processAllParallel(input);
+			return;
+		}
 		if (reporter != null) {
 			reporter.startBatch(input.size());
 		}
@@ -66,6 +80,101 @@ public class TextInstanceProcessingPipeline extends TextInstanceProcessor {
 		}
 	}
 
+	/*
+	 * Processes each document (all instances sharing a source ID) as a separate job. Instances within a document are processed serially and in order, since
+	 * processors such as AbbreviationSourceProcessor accumulate per-document state across instances. Completion is reported in input order.
+	 */
+	private void processAllParallel(List<TextInstance> input) {
+		if (reporter != null) {
+			reporter.startBatch(input.size());
+		}
+		Map<String, List<Integer>> documents = new LinkedHashMap<String, List<Integer>>();
+		for (int instanceIndex = 0; instanceIndex < input.size(); instanceIndex++) {
+			String sourceId = input.get(instanceIndex).getSourceId();
+			List<Integer> instanceIndices = documents.get(sourceId);
+			if (instanceIndices == null) {
+				instanceIndices = new ArrayList<Integer>();
+				documents.put(sourceId, instanceIndices);
+			}
+			instanceIndices.add(instanceIndex);
+		}
+		ExecutorService executor = getExecutor();
+		List<Future<?>> futures = new ArrayList<Future<?>>(documents.size());
+		for (final List<Integer> instanceIndices : documents.values()) {
+			final List<TextInstance> documentInstances = new ArrayList<TextInstance>(instanceIndices.size());
+			for (Integer instanceIndex : instanceIndices) {
+				documentInstances.add(input.get(instanceIndex));
+			}
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (TextInstance instance : documentInstances) {
+						logger.info("Processing " + instance.getSourceId());
+						process(instance);
+						logger.info("Processed " + instance.getSourceId());
+					}
+				}
+			}));
+		}
+		int documentIndex = 0;
+		for (List<Integer> instanceIndices : documents.values()) {
+			await(futures.get(documentIndex));
+			documentIndex++;
+			if (reporter != null) {
+				for (Integer instanceIndex : instanceIndices) {
+					reporter.reportCompletion(instanceIndex);
+				}
+			}
+		}
+		if (reporter != null) {
+			reporter.completeBatch();
+		}
+	}
+
+	private static void await(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(TextInstanceProcessingPipeline.class.getSimpleName()));
+		}
+		return executor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/*
+	 * Sets the number of worker threads used by processAll(); 1 (the default) processes instances serially in the calling thread. Only enable for pipelines
+	 * whose processors do not update model state, since instances are then processed in a nondeterministic order.
+	 */
+	public synchronized void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+		}
+		this.threads = threads;
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
 	@Override
 	public void reset() {
 		for (TextInstanceProcessor p : processors) {
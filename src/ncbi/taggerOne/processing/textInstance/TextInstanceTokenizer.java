@@ -25,13 +25,16 @@ public class TextInstanceTokenizer extends TextInstanceProcessor {
 	public void process(TextInstance input) {
 		Profiler.start("TextInstanceTokenizer.process()");
 		String text = input.getText();
-		tokenizer.reset(text);
 		List<Token> tokens = new ArrayList<Token>();
-		int index = 0;
-		while (tokenizer.nextToken()) {
-			Token token = new Token(input, tokenizer.startChar(), tokenizer.endChar(), index);
-			tokens.add(token);
-			index++;
+		// Tokenizers are stateful and may be shared between threads
+		synchronized (tokenizer) {
+			tokenizer.reset(text);
+			int index = 0;
+			while (tokenizer.nextToken()) {
+				Token token = new Token(input, tokenizer.startChar(), tokenizer.endChar(), index);
+				tokens.add(token);
+				index++;
+			}
 		}
 		input.setTokens(tokens);
 		Profiler.stop("TextInstanceTokenizer.process()");
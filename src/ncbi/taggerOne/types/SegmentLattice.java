@@ -0,0 +1,77 @@
+package ncbi.taggerOne.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * The segments of a text instance, bucketed by the index of their first and last token so that the segments starting or ending at a token can be found
+ * in constant time. Within each bucket, segments are in the order they were added.
+ */
+public class SegmentLattice {
+
+	private List<Segment> segments;
+	private List<Segment>[] segmentsStartingAt;
+	private List<Segment>[] segmentsEndingAt;
+
+	public SegmentLattice(List<Segment> segments) {
+		this(getTokenCount(segments), segments);
+	}
+
+	/*
+	 * Creates a lattice for segments whose token indices are all less than tokenCount
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SegmentLattice(int tokenCount, List<Segment> segments) {
+		this.segments = segments;
+		segmentsStartingAt = new List[tokenCount];
+		segmentsEndingAt = new List[tokenCount];
+		for (Segment segment : segments) {
+			int startIndex = segment.getStartIndex();
+			int endIndex = segment.getEndIndex();
+			if (startIndex >= tokenCount || endIndex >= tokenCount) {
+				throw new IllegalArgumentException("Segment token indices " + startIndex + "-" + endIndex + " must be less than " + tokenCount);
+			}
+			if (segmentsStartingAt[startIndex] == null) {
+				segmentsStartingAt[startIndex] = new ArrayList<Segment>();
+			}
+			segmentsStartingAt[startIndex].add(segment);
+			if (segmentsEndingAt[endIndex] == null) {
+				segmentsEndingAt[endIndex] = new ArrayList<Segment>();
+			}
+			segmentsEndingAt[endIndex].add(segment);
+		}
+	}
+
+	private static int getTokenCount(List<Segment> segments) {
+		int tokenCount = 0;
+		for (Segment segment : segments) {
+			tokenCount = Math.max(tokenCount, segment.getEndIndex() + 1);
+		}
+		return tokenCount;
+	}
+
+	public List<Segment> getSegments() {
+		return segments;
+	}
+
+	/*
+	 * Returns the segments whose first token has the specified index; the list must not be modified
+	 */
+	public List<Segment> getSegmentsStartingAt(int index) {
+		if (index < 0 || index >= segmentsStartingAt.length || segmentsStartingAt[index] == null) {
+			return Collections.emptyList();
+		}
+		return segmentsStartingAt[index];
+	}
+
+	/*
+	 * Returns the segments whose last token has the specified index; the list must not be modified
+	 */
+	public List<Segment> getSegmentsEndingAt(int index) {
+		if (index < 0 || index >= segmentsEndingAt.length || segmentsEndingAt[index] == null) {
+			return Collections.emptyList();
+		}
+		return segmentsEndingAt[index];
+	}
+}
@@ -1,6 +1,5 @@
 package ncbi.taggerOne.types;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -18,6 +17,7 @@ public class TextInstance {
 
 	private List<Token> tokens;
 	private List<Segment> segments;
+	private SegmentLattice segmentLattice;
 
 	// TODO Decide if an explicit StateSequence data type be useful? (Largely a list of AnnotatedSegment, but with boundary validation)
 
@@ -75,32 +75,37 @@ public class TextInstance {
 
 	public void setSegments(List<Segment> segments) {
 		this.segments = segments;
+		this.segmentLattice = null;
 	}
 
-	public List<Segment> getSegmentsStartingAt(int index) {
+	public void setSegmentLattice(SegmentLattice segmentLattice) {
+		this.segments = segmentLattice == null ? null : segmentLattice.getSegments();
+		this.segmentLattice = segmentLattice;
+	}
+
+	public SegmentLattice getSegmentLattice() {
 		if (segments == null) {
 			throw new IllegalStateException("Segments must be set first");
 		}
-		List<Segment> segmentsStartingAtIndex = new ArrayList<Segment>();
-		for (Segment segment : segments) {
-			if (segment.getStartIndex() == index) {
-				segmentsStartingAtIndex.add(segment);
-			}
+		if (segmentLattice == null) {
+			// Segments were set as a list, index them on first use
+			segmentLattice = new SegmentLattice(segments);
 		}
-		return segmentsStartingAtIndex;
+		return segmentLattice;
+	}
+
+	/*
+	 * Returns the segments whose first token has the specified index; the list must not be modified
+	 */
+	public List<Segment> getSegmentsStartingAt(int index) {
+		return getSegmentLattice().getSegmentsStartingAt(index);
 	}
 
+	/*
+	 * Returns the segments whose last token has the specified index; the list must not be modified
+	 */
 	public List<Segment> getSegmentsEndingAt(int index) {
-		if (segments == null) {
-			throw new IllegalStateException("Segments must be set first");
-		}
-		List<Segment> segmentsEndingAtIndex = new ArrayList<Segment>();
-		for (Segment segment : segments) {
-			if (segment.getEndIndex() == index) {
-				segmentsEndingAtIndex.add(segment);
-			}
-		}
-		return segmentsEndingAtIndex;
+		return getSegmentLattice().getSegmentsEndingAt(index);
 	}
 
 	public List<AnnotatedSegment> getTargetAnnotation() {
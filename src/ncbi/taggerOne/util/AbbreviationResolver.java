@@ -1,10 +1,16 @@
 package ncbi.taggerOne.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,23 +26,44 @@ public class AbbreviationResolver implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	// Maximum number of expanded texts remembered per document
+	private static final int MAX_EXPANSIONS = 1024;
+
+	// Maps for each document are replaced rather than modified, so readers always see a consistent snapshot
 	private Map<String, Map<String, String>> abbreviations;
+	// Compiled form of each map in abbreviations, created when the document is first expanded
+	private transient Map<String, CompiledAbbreviations> compiledAbbreviations;
 
 	public AbbreviationResolver() {
-		abbreviations = new HashMap<String, Map<String, String>>();
+		abbreviations = new ConcurrentHashMap<String, Map<String, String>>();
+		compiledAbbreviations = new ConcurrentHashMap<String, CompiledAbbreviations>();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		abbreviations = new ConcurrentHashMap<String, Map<String, String>>(abbreviations);
+		compiledAbbreviations = new ConcurrentHashMap<String, CompiledAbbreviations>();
 	}
 
-	public void addAbbreviations(String id, Map<String, String> abbreviation) {
+	public synchronized void addAbbreviations(String id, Map<String, String> abbreviation) {
 		Map<String, String> current = abbreviations.get(id);
-		if (current == null) {
-			abbreviations.put(id, abbreviation);
-		} else {
-			current.putAll(abbreviation);
+		Map<String, String> updated = new HashMap<String, String>();
+		if (current != null) {
+			updated.putAll(current);
 		}
+		updated.putAll(abbreviation);
+		abbreviations.put(id, Collections.unmodifiableMap(updated));
+		compiledAbbreviations.remove(id);
+	}
+
+	public synchronized void removeAbbreviations(String id) {
+		abbreviations.remove(id);
+		compiledAbbreviations.remove(id);
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		abbreviations.clear();
+		compiledAbbreviations.clear();
 	}
 
 	public int size() {
@@ -48,30 +75,13 @@ public class AbbreviationResolver implements Serializable {
 		if (abbreviationMap == null) {
 			return lookupText;
 		}
-		String result = lookupText;
-
-		// 1. remove all abbreviations for words that has both abbr and replacement
-		for (String abbreviation : abbreviationMap.keySet()) {
-			if (result.contains(abbreviation)) {
-				String replacement = abbreviationMap.get(abbreviation);
-				if (result.contains(replacement)) {
-					// Handles mentions like "von Hippel-Lindau (VHL) disease"
-					// TODO PERFORMANCE Convert these to use Pattern
-					result = result.replaceAll("\\(?\\b" + Pattern.quote(abbreviation) + "\\b\\)?", "");
-				} 
-			}
-		}
-
-		// 2. replace all abbr
-		for (String abbreviation : abbreviationMap.keySet()) {
-			if (result.contains(abbreviation)) {
-				String replacement = abbreviationMap.get(abbreviation);
-				// TODO PERFORMANCE Convert these to use Pattern
-				result = result.replaceAll("\\(?\\b" + Pattern.quote(abbreviation) + "\\b\\)?", Matcher.quoteReplacement(replacement));
-			}
+		CompiledAbbreviations compiled = compiledAbbreviations.get(documentId);
+		// The compiled form is replaced if the map was replaced since it was compiled
+		if (compiled == null || compiled.abbreviationMap != abbreviationMap) {
+			compiled = new CompiledAbbreviations(abbreviationMap);
+			compiledAbbreviations.put(documentId, compiled);
 		}
-
-		return result;
+		return compiled.expand(lookupText);
 	}
 
 	public void expand(String documentId, MentionName mentionName) {
@@ -86,4 +96,107 @@ public class AbbreviationResolver implements Serializable {
 		}
 		Profiler.stop("AbbreviationResolver.expand()");
 	}
+
+	/*
+	 * The abbreviations for one document, with the pattern for each abbreviation compiled once. Texts that contain no abbreviation, which is the common
+	 * case, are found in one pass over the text that only compares abbreviations at positions holding their first character. Other texts are expanded
+	 * by testing each abbreviation in turn, as before, and the result is remembered since the same mention text is usually expanded many times.
+	 */
+	private static class CompiledAbbreviations {
+
+		final Map<String, String> abbreviationMap;
+		final String[] abbreviations;
+		final String[] replacements;
+		final Pattern[] patterns;
+		final char[] firstChars; // Sorted
+		final String[][] abbreviationsByFirstChar;
+		final boolean hasEmptyAbbreviation;
+		final Map<String, String> expansions;
+
+		CompiledAbbreviations(Map<String, String> abbreviationMap) {
+			this.abbreviationMap = abbreviationMap;
+			int size = abbreviationMap.size();
+			abbreviations = new String[size];
+			replacements = new String[size];
+			patterns = new Pattern[size];
+			Map<Character, List<String>> byFirstChar = new TreeMap<Character, List<String>>();
+			boolean hasEmpty = false;
+			int index = 0;
+			for (Map.Entry<String, String> entry : abbreviationMap.entrySet()) {
+				abbreviations[index] = entry.getKey();
+				replacements[index] = entry.getValue();
+				patterns[index] = Pattern.compile("\\(?\\b" + Pattern.quote(entry.getKey()) + "\\b\\)?");
+				if (entry.getKey().isEmpty()) {
+					hasEmpty = true;
+				} else {
+					Character firstChar = entry.getKey().charAt(0);
+					List<String> list = byFirstChar.get(firstChar);
+					if (list == null) {
+						list = new ArrayList<String>();
+						byFirstChar.put(firstChar, list);
+					}
+					list.add(entry.getKey());
+				}
+				index++;
+			}
+			hasEmptyAbbreviation = hasEmpty;
+			firstChars = new char[byFirstChar.size()];
+			abbreviationsByFirstChar = new String[byFirstChar.size()][];
+			index = 0;
+			for (Map.Entry<Character, List<String>> entry : byFirstChar.entrySet()) {
+				firstChars[index] = entry.getKey();
+				abbreviationsByFirstChar[index] = entry.getValue().toArray(new String[entry.getValue().size()]);
+				index++;
+			}
+			expansions = new ConcurrentHashMap<String, String>();
+		}
+
+		String expand(String lookupText) {
+			String result = expansions.get(lookupText);
+			if (result != null) {
+				return result;
+			}
+			if (!containsAbbreviation(lookupText)) {
+				return lookupText;
+			}
+			result = lookupText;
+
+			// 1. remove all abbreviations for words that has both abbr and replacement
+			for (int i = 0; i < abbreviations.length; i++) {
+				if (result.contains(abbreviations[i]) && result.contains(replacements[i])) {
+					// Handles mentions like "von Hippel-Lindau (VHL) disease"
+					result = patterns[i].matcher(result).replaceAll("");
+				}
+			}
+
+			// 2. replace all abbr
+			for (int i = 0; i < abbreviations.length; i++) {
+				if (result.contains(abbreviations[i])) {
+					result = patterns[i].matcher(result).replaceAll(Matcher.quoteReplacement(replacements[i]));
+				}
+			}
+
+			if (expansions.size() < MAX_EXPANSIONS) {
+				expansions.put(lookupText, result);
+			}
+			return result;
+		}
+
+		boolean containsAbbreviation(String text) {
+			if (hasEmptyAbbreviation) {
+				return true;
+			}
+			for (int position = 0; position < text.length(); position++) {
+				int index = Arrays.binarySearch(firstChars, text.charAt(position));
+				if (index >= 0) {
+					for (String abbreviation : abbreviationsByFirstChar[index]) {
+						if (text.startsWith(abbreviation, position)) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+	}
 }
@@ -0,0 +1,590 @@
+package ncbi.taggerOne.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ncbi.taggerOne.util.vector.SparseVector;
+import ncbi.taggerOne.util.vector.Vector.VectorIterator;
+
+/*
+ * Versioned binary model format. The object graph is still written with Java serialization, but the bulk of the data - String Dictionaries (feature sets
+ * and vector spaces), large primitive arrays (recognition weights, lexicon index arrays) and the rows of DenseBySparseMatrix instances (normalization
+ * weights) - is moved into raw little-endian sections. On load these are bulk-copied into ordinary arrays, so there is no decompression and no
+ * per-object deserialization for them. This only makes loading faster: the loaded model is on the heap like a deserialized one, so it uses as much
+ * memory, and processes loading the same file do not share it.
+ *
+ * Layout: header (magic, version, offset of the table of contents), 8-byte aligned sections, the serialized object graph as the last section, then the
+ * table of contents (type, offset and length of each section).
+ */
+public final class BinaryModelFormat {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinaryModelFormat.class);
+
+	public static final int MAGIC = 0x4D423154; // "T1BM" in little-endian order
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int TOC_ENTRY_SIZE = 24;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MIN_ARRAY_LENGTH = 1024; // Smaller arrays stay in the object graph
+
+	private static final int SECTION_OBJECT_GRAPH = 0;
+	private static final int SECTION_STRING_DICTIONARY = 1;
+	private static final int SECTION_DOUBLE_ARRAY = 2;
+	private static final int SECTION_INT_ARRAY = 3;
+	private static final int SECTION_SPARSE_ROWS = 4;
+
+	private BinaryModelFormat() {
+		// Not instantiable
+	}
+
+	public static boolean isBinaryModel(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			if (file.length() < HEADER_SIZE) {
+				return false;
+			}
+			return Integer.reverseBytes(file.readInt()) == MAGIC;
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * Reads a model in either the binary format or the gzipped Java serialization format written during training.
+	 */
+	public static Object readModel(String filename) throws IOException, ClassNotFoundException {
+		if (isBinaryModel(filename)) {
+			return read(filename);
+		}
+		ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(filename)));
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	public static void write(Object model, String filename) throws IOException {
+		File outputFile = new File(filename);
+		File objectGraphFile = File.createTempFile(outputFile.getName(), ".tmp", outputFile.getAbsoluteFile().getParentFile());
+		try {
+			FileOutputStream output = new FileOutputStream(outputFile);
+			try {
+				SectionWriter sections = new SectionWriter(output.getChannel());
+				ModelOutputStream oos = new ModelOutputStream(new BufferedOutputStream(new FileOutputStream(objectGraphFile)), sections);
+				oos.writeObject(model);
+				oos.close();
+				sections.writeObjectGraph(objectGraphFile);
+				sections.finish();
+				logger.info("Wrote " + sections.size() + " sections to " + filename);
+			} finally {
+				output.close();
+			}
+		} finally {
+			if (!objectGraphFile.delete()) {
+				logger.warn("Could not delete temporary file " + objectGraphFile.getAbsolutePath());
+			}
+		}
+	}
+
+	public static Object read(String filename) throws IOException, ClassNotFoundException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		try {
+			SectionReader sections = new SectionReader(file.getChannel());
+			InputStream objectGraph = new BufferedInputStream(Channels.newInputStream(file.getChannel().position(sections.getObjectGraphOffset())), BUFFER_SIZE);
+			ModelInputStream ois = new ModelInputStream(objectGraph, sections);
+			return ois.readObject();
+		} finally {
+			file.close();
+		}
+	}
+
+	private static boolean isStringDictionary(Dictionary<?> dictionary) {
+		if (dictionary.getClass() != Dictionary.class || dictionary.size() == 0) {
+			return false;
+		}
+		for (Object element : dictionary.getElements()) {
+			if (element.getClass() != String.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Returns the Dictionary shared by all rows, or null if there is none
+	private static Dictionary<?> getRowDictionary(SparseVector<?>[] rows) {
+		Dictionary<?> dictionary = null;
+		for (SparseVector<?> row : rows) {
+			if (row == null) {
+				continue;
+			}
+			if (row.getClass() != SparseVector.class) {
+				return null;
+			}
+			if (dictionary == null) {
+				dictionary = row.getDictionary();
+			} else if (dictionary != row.getDictionary()) {
+				return null;
+			}
+		}
+		return dictionary;
+	}
+
+	/*
+	 * Placeholder left in the object graph for data moved to a section
+	 */
+	private static class SectionReference implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		protected int section;
+
+		public SectionReference(int section) {
+			this.section = section;
+		}
+	}
+
+	/*
+	 * Placeholder for an array of SparseVector rows; the Dictionary is kept in the object graph so that it stays shared with the rest of the model
+	 */
+	private static class SparseRowsReference extends SectionReference {
+
+		private static final long serialVersionUID = 1L;
+
+		protected Dictionary<?> dictionary;
+
+		public SparseRowsReference(int section, Dictionary<?> dictionary) {
+			super(section);
+			this.dictionary = dictionary;
+		}
+	}
+
+	private static class ModelOutputStream extends ObjectOutputStream {
+
+		private SectionWriter sections;
+
+		public ModelOutputStream(OutputStream out, SectionWriter sections) throws IOException {
+			super(out);
+			this.sections = sections;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj instanceof double[]) {
+				double[] array = (double[]) obj;
+				if (array.length >= MIN_ARRAY_LENGTH) {
+					return new SectionReference(sections.writeDoubleArray(array));
+				}
+			} else if (obj instanceof int[]) {
+				int[] array = (int[]) obj;
+				if (array.length >= MIN_ARRAY_LENGTH) {
+					return new SectionReference(sections.writeIntArray(array));
+				}
+			} else if (obj instanceof Dictionary) {
+				Dictionary<?> dictionary = (Dictionary<?>) obj;
+				if (isStringDictionary(dictionary)) {
+					return new SectionReference(sections.writeStringDictionary(dictionary));
+				}
+			} else if (obj.getClass() == SparseVector[].class) {
+				SparseVector<?>[] rows = (SparseVector[]) obj;
+				Dictionary<?> dictionary = getRowDictionary(rows);
+				if (dictionary != null) {
+					return new SparseRowsReference(sections.writeSparseRows(rows), dictionary);
+				}
+			}
+			return obj;
+		}
+	}
+
+	private static class ModelInputStream extends ObjectInputStream {
+
+		private SectionReader sections;
+
+		public ModelInputStream(InputStream in, SectionReader sections) throws IOException {
+			super(in);
+			this.sections = sections;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof SparseRowsReference) {
+				SparseRowsReference reference = (SparseRowsReference) obj;
+				return sections.readSparseRows(reference.section, reference.dictionary);
+			} else if (obj instanceof SectionReference) {
+				return sections.read(((SectionReference) obj).section);
+			}
+			return obj;
+		}
+	}
+
+	private static class SectionWriter {
+
+		private FileChannel channel;
+		private ByteBuffer buffer;
+		private long position;
+		private List<long[]> toc; // type, offset, length
+		private long sectionStart;
+
+		public SectionWriter(FileChannel channel) throws IOException {
+			this.channel = channel;
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			toc = new ArrayList<long[]>();
+			// Header; the table of contents offset is filled in by finish()
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(0L);
+			flush();
+		}
+
+		public int size() {
+			return toc.size();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void beginSection() throws IOException {
+			flush();
+			// Align sections to 8 bytes so that arrays of doubles are aligned in the mapped buffers
+			while ((position + buffer.position()) % 8 != 0) {
+				buffer.put((byte) 0);
+			}
+			flush();
+			sectionStart = position;
+		}
+
+		private int endSection(int type) throws IOException {
+			flush();
+			toc.add(new long[] { type, sectionStart, position - sectionStart });
+			return toc.size() - 1;
+		}
+
+		private void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		private void putDoubles(double[] values, int from, int to) throws IOException {
+			for (int i = from; i < to; i++) {
+				ensure(8);
+				buffer.putDouble(values[i]);
+			}
+		}
+
+		private void putInts(int[] values, int from, int to) throws IOException {
+			for (int i = from; i < to; i++) {
+				ensure(4);
+				buffer.putInt(values[i]);
+			}
+		}
+
+		public int writeDoubleArray(double[] array) throws IOException {
+			beginSection();
+			putInt(array.length);
+			putInt(0); // Padding
+			putDoubles(array, 0, array.length);
+			return endSection(SECTION_DOUBLE_ARRAY);
+		}
+
+		public int writeIntArray(int[] array) throws IOException {
+			beginSection();
+			putInt(array.length);
+			putInts(array, 0, array.length);
+			return endSection(SECTION_INT_ARRAY);
+		}
+
+		/*
+		 * Each string is written as its length in chars and bytes, followed by its chars each encoded independently as in DataOutput.writeUTF(), so that
+		 * unpaired surrogates (e.g. from character n-grams) are preserved.
+		 */
+		public int writeStringDictionary(Dictionary<?> dictionary) throws IOException {
+			beginSection();
+			putInt(dictionary.size());
+			putInt(dictionary.isFrozen() ? 1 : 0);
+			for (Object element : dictionary.getElements()) {
+				String str = (String) element;
+				int length = str.length();
+				int byteLength = 0;
+				for (int i = 0; i < length; i++) {
+					char c = str.charAt(i);
+					byteLength += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+				}
+				putInt(length);
+				putInt(byteLength);
+				for (int i = 0; i < length; i++) {
+					ensure(3);
+					char c = str.charAt(i);
+					if (c >= 0x0001 && c <= 0x007F) {
+						buffer.put((byte) c);
+					} else if (c <= 0x07FF) {
+						buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+						buffer.put((byte) (0x80 | (c & 0x3F)));
+					} else {
+						buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+						buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+						buffer.put((byte) (0x80 | (c & 0x3F)));
+					}
+				}
+			}
+			return endSection(SECTION_STRING_DICTIONARY);
+		}
+
+		/*
+		 * Rows are stored in compressed sparse row form, with each row's entries in iteration order. A row length of -1 marks a null row.
+		 */
+		public int writeSparseRows(SparseVector<?>[] rows) throws IOException {
+			int entries = 0;
+			for (SparseVector<?> row : rows) {
+				if (row != null) {
+					entries += row.cardinality();
+				}
+			}
+			int[] rowLengths = new int[rows.length];
+			int[] indices = new int[entries];
+			double[] values = new double[entries];
+			int entry = 0;
+			for (int rowIndex = 0; rowIndex < rows.length; rowIndex++) {
+				SparseVector<?> row = rows[rowIndex];
+				if (row == null) {
+					rowLengths[rowIndex] = -1;
+					continue;
+				}
+				VectorIterator iterator = row.getIterator();
+				while (iterator.next()) {
+					indices[entry] = iterator.getIndex();
+					values[entry] = iterator.getValue();
+					entry++;
+				}
+				rowLengths[rowIndex] = row.cardinality();
+			}
+			beginSection();
+			putInt(rows.length);
+			putInt(entries);
+			putDoubles(values, 0, entries);
+			putInts(rowLengths, 0, rows.length);
+			putInts(indices, 0, entries);
+			return endSection(SECTION_SPARSE_ROWS);
+		}
+
+		public void writeObjectGraph(File objectGraphFile) throws IOException {
+			beginSection();
+			FileInputStream input = new FileInputStream(objectGraphFile);
+			try {
+				FileChannel inputChannel = input.getChannel();
+				while (inputChannel.read(buffer) >= 0) {
+					flush();
+				}
+			} finally {
+				input.close();
+			}
+			endSection(SECTION_OBJECT_GRAPH);
+		}
+
+		public void finish() throws IOException {
+			long tocOffset = position;
+			putInt(toc.size());
+			for (long[] section : toc) {
+				ensure(TOC_ENTRY_SIZE);
+				buffer.putInt((int) section[0]);
+				buffer.putInt(0); // Padding
+				buffer.putLong(section[1]);
+				buffer.putLong(section[2]);
+			}
+			flush();
+			ByteBuffer offset = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			offset.putLong(tocOffset);
+			offset.flip();
+			channel.write(offset, 8);
+		}
+	}
+
+	private static class SectionReader {
+
+		private FileChannel channel;
+		private int[] types;
+		private long[] offsets;
+		private long[] lengths;
+
+		public SectionReader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			ByteBuffer header = map(0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a binary model file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported binary model version " + version + ", expected " + VERSION);
+			}
+			long tocOffset = header.getLong();
+			ByteBuffer toc = map(tocOffset, channel.size() - tocOffset);
+			int size = toc.getInt();
+			types = new int[size];
+			offsets = new long[size];
+			lengths = new long[size];
+			for (int i = 0; i < size; i++) {
+				types[i] = toc.getInt();
+				toc.getInt(); // Padding
+				offsets[i] = toc.getLong();
+				lengths[i] = toc.getLong();
+			}
+		}
+
+		// The mapping is only used to copy the section into the heap; nothing keeps a reference to it
+		private MappedByteBuffer map(long offset, long length) throws IOException {
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Section is too large to map: " + length + " bytes");
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, length);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+
+		private ByteBuffer mapSection(int section, int expectedType) throws IOException {
+			if (section < 0 || section >= types.length) {
+				throw new IOException("Invalid section " + section);
+			}
+			if (types[section] != expectedType) {
+				throw new IOException("Section " + section + " has type " + types[section] + ", expected " + expectedType);
+			}
+			return map(offsets[section], lengths[section]);
+		}
+
+		public long getObjectGraphOffset() throws IOException {
+			for (int i = types.length - 1; i >= 0; i--) {
+				if (types[i] == SECTION_OBJECT_GRAPH) {
+					return offsets[i];
+				}
+			}
+			throw new IOException("Binary model file contains no object graph");
+		}
+
+		public Object read(int section) throws IOException {
+			if (section < 0 || section >= types.length) {
+				throw new IOException("Invalid section " + section);
+			}
+			switch (types[section]) {
+			case SECTION_DOUBLE_ARRAY:
+				return readDoubleArray(section);
+			case SECTION_INT_ARRAY:
+				return readIntArray(section);
+			case SECTION_STRING_DICTIONARY:
+				return readStringDictionary(section);
+			default:
+				throw new IOException("Section " + section + " has unexpected type " + types[section]);
+			}
+		}
+
+		private double[] readDoubleArray(int section) throws IOException {
+			ByteBuffer buffer = mapSection(section, SECTION_DOUBLE_ARRAY);
+			double[] array = new double[buffer.getInt()];
+			buffer.getInt(); // Padding
+			buffer.asDoubleBuffer().get(array);
+			return array;
+		}
+
+		private int[] readIntArray(int section) throws IOException {
+			ByteBuffer buffer = mapSection(section, SECTION_INT_ARRAY);
+			int[] array = new int[buffer.getInt()];
+			buffer.asIntBuffer().get(array);
+			return array;
+		}
+
+		private Dictionary<String> readStringDictionary(int section) throws IOException {
+			ByteBuffer buffer = mapSection(section, SECTION_STRING_DICTIONARY);
+			int size = buffer.getInt();
+			boolean frozen = buffer.getInt() != 0;
+			Dictionary<String> dictionary = new Dictionary<String>(size);
+			char[] chars = new char[256];
+			byte[] bytes = new byte[256];
+			for (int i = 0; i < size; i++) {
+				int length = buffer.getInt();
+				int byteLength = buffer.getInt();
+				if (chars.length < length) {
+					chars = new char[Math.max(length, 2 * chars.length)];
+				}
+				if (bytes.length < byteLength) {
+					bytes = new byte[Math.max(byteLength, 2 * bytes.length)];
+				}
+				buffer.get(bytes, 0, byteLength);
+				int b = 0;
+				for (int c = 0; c < length; c++) {
+					int b1 = bytes[b++] & 0xFF;
+					if (b1 < 0x80) {
+						chars[c] = (char) b1;
+					} else if (b1 < 0xE0) {
+						chars[c] = (char) (((b1 & 0x1F) << 6) | (bytes[b++] & 0x3F));
+					} else {
+						int b2 = bytes[b++] & 0x3F;
+						chars[c] = (char) (((b1 & 0x0F) << 12) | (b2 << 6) | (bytes[b++] & 0x3F));
+					}
+				}
+				dictionary.addElement(new String(chars, 0, length));
+			}
+			if (frozen) {
+				dictionary.freeze();
+			}
+			return dictionary;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		public SparseVector<?>[] readSparseRows(int section, Dictionary dictionary) throws IOException {
+			ByteBuffer buffer = mapSection(section, SECTION_SPARSE_ROWS);
+			int numRows = buffer.getInt();
+			int entries = buffer.getInt();
+			double[] values = new double[entries];
+			buffer.asDoubleBuffer().get(values);
+			buffer.position(buffer.position() + 8 * entries);
+			int[] rowLengths = new int[numRows];
+			buffer.asIntBuffer().get(rowLengths);
+			buffer.position(buffer.position() + 4 * numRows);
+			int[] indices = new int[entries];
+			buffer.asIntBuffer().get(indices);
+			SparseVector<?>[] rows = new SparseVector[numRows];
+			int entry = 0;
+			for (int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+				int rowLength = rowLengths[rowIndex];
+				if (rowLength >= 0) {
+					rows[rowIndex] = SparseVector.create(dictionary, indices, values, entry, entry + rowLength);
+					entry += rowLength;
+				}
+			}
+			return rows;
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package ncbi.taggerOne.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * A bounded cache that many threads can share. Reads are lock-free: they look up a ConcurrentHashMap and set the reference bit of the entry found.
+ * Insertions and evictions are lock-striped: keys are spread over a fixed number of segments, each holding a CLOCK ring of its entries, so threads only
+ * contend when they insert into the same segment. When a segment is full its clock hand sweeps the ring, clearing reference bits, and evicts the first
+ * entry that was not read since the hand last passed it. The cache may optionally also be bounded by an estimate of its size in bytes, given by a Weigher.
+ * Only the configuration is serialized; a deserialized cache is empty.
+ */
+public class ConcurrentClockCache<K, V> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_SEGMENTS = 16;
+
+	/*
+	 * Estimates the number of bytes used by a cache entry
+	 */
+	public interface Weigher<K, V> extends Serializable {
+		public long weigh(K key, V value);
+	}
+
+	private int maxSize;
+	private long maxBytes;
+	private int segmentCount;
+	private Weigher<K, V> weigher;
+	private transient ConcurrentHashMap<K, Node<K, V>> map;
+	private transient Segment<K, V>[] segments;
+	private transient LongAdder hits;
+	private transient LongAdder misses;
+	private transient LongAdder evictions;
+
+	public ConcurrentClockCache(int maxSize) {
+		this(maxSize, 0L, null, DEFAULT_SEGMENTS);
+	}
+
+	/*
+	 * maxBytes <= 0 means the cache is only bounded by the number of entries
+	 */
+	public ConcurrentClockCache(int maxSize, long maxBytes, Weigher<K, V> weigher) {
+		this(maxSize, maxBytes, weigher, DEFAULT_SEGMENTS);
+	}
+
+	public ConcurrentClockCache(int maxSize, long maxBytes, Weigher<K, V> weigher, int segmentCount) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Max size must be greater than 0");
+		}
+		if (maxBytes > 0 && weigher == null) {
+			throw new IllegalArgumentException("A weigher is required to bound the size in bytes");
+		}
+		if (segmentCount <= 0) {
+			throw new IllegalArgumentException("Segment count must be greater than 0");
+		}
+		this.maxSize = maxSize;
+		this.maxBytes = Math.max(maxBytes, 0L);
+		// Use a power of two no larger than the max size, so that every segment can hold at least one entry
+		int count = 1;
+		while (count * 2 <= Math.min(segmentCount, maxSize)) {
+			count *= 2;
+		}
+		this.segmentCount = count;
+		this.weigher = weigher;
+		initTransients();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initTransients();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void initTransients() {
+		map = new ConcurrentHashMap<K, Node<K, V>>(Math.min(maxSize, 1 << 16), 0.75f, segmentCount);
+		segments = new Segment[segmentCount];
+		int baseSize = maxSize / segmentCount;
+		int extraSize = maxSize % segmentCount;
+		long baseBytes = maxBytes / segmentCount;
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment<K, V>(baseSize + (i < extraSize ? 1 : 0), maxBytes > 0 ? Math.max(baseBytes, 1L) : 0L);
+		}
+		hits = new LongAdder();
+		misses = new LongAdder();
+		evictions = new LongAdder();
+	}
+
+	private static class Node<K, V> {
+		final K key;
+		final V value;
+		final long weight;
+		int slot;
+		volatile boolean referenced;
+
+		Node(K key, V value, long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private static class Segment<K, V> extends ReentrantLock {
+
+		private static final long serialVersionUID = 1L;
+
+		final Node<K, V>[] ring;
+		final long maxBytes;
+		final int[] freeSlots;
+		int freeCount;
+		int hand;
+		long bytes;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Segment(int maxSize, long maxBytes) {
+			ring = new Node[maxSize];
+			this.maxBytes = maxBytes;
+			freeSlots = new int[maxSize];
+			clearRing();
+		}
+
+		void clearRing() {
+			for (int i = 0; i < ring.length; i++) {
+				ring[i] = null;
+				freeSlots[i] = ring.length - 1 - i;
+			}
+			freeCount = ring.length;
+			hand = 0;
+			bytes = 0L;
+		}
+
+		/*
+		 * Returns the node under the clock hand that was not referenced since the hand last passed it; the ring must not be empty
+		 */
+		Node<K, V> findVictim() {
+			while (true) {
+				Node<K, V> node = ring[hand];
+				hand++;
+				if (hand == ring.length) {
+					hand = 0;
+				}
+				if (node != null) {
+					if (!node.referenced) {
+						return node;
+					}
+					node.referenced = false;
+				}
+			}
+		}
+
+		void unlink(Node<K, V> node) {
+			ring[node.slot] = null;
+			freeSlots[freeCount] = node.slot;
+			freeCount++;
+			bytes -= node.weight;
+		}
+
+		void link(Node<K, V> node) {
+			freeCount--;
+			node.slot = freeSlots[freeCount];
+			ring[node.slot] = node;
+			bytes += node.weight;
+		}
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return segments[h & (segmentCount - 1)];
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public V get(Object key) {
+		Node<K, V> node = map.get(key);
+		if (node == null) {
+			misses.increment();
+			return null;
+		}
+		// Only write when needed, to avoid invalidating the cache line shared by all readers of a popular entry
+		if (!node.referenced) {
+			node.referenced = true;
+		}
+		hits.increment();
+		return node.value;
+	}
+
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("Key may not be null");
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("Value may not be null");
+		}
+		long weight = weigher == null ? 0L : weigher.weigh(key, value);
+		Segment<K, V> segment = segmentFor(key);
+		if (segment.maxBytes > 0 && weight > segment.maxBytes) {
+			// Too large to ever be cached, but any previous value is now stale
+			remove(key);
+			return null;
+		}
+		Node<K, V> node = new Node<K, V>(key, value, weight);
+		segment.lock();
+		try {
+			Node<K, V> previous = map.get(key);
+			if (previous != null) {
+				segment.unlink(previous);
+			}
+			while (segment.freeCount == 0 || (segment.maxBytes > 0 && segment.bytes + weight > segment.maxBytes)) {
+				Node<K, V> victim = segment.findVictim();
+				segment.unlink(victim);
+				map.remove(victim.key, victim);
+				evictions.increment();
+			}
+			segment.link(node);
+			map.put(key, node);
+			return previous == null ? null : previous.value;
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	public V remove(Object key) {
+		Segment<K, V> segment = segmentFor(key);
+		segment.lock();
+		try {
+			Node<K, V> node = map.remove(key);
+			if (node == null) {
+				return null;
+			}
+			segment.unlink(node);
+			return node.value;
+		} finally {
+			segment.unlock();
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < segmentCount; i++) {
+			Segment<K, V> segment = segments[i];
+			segment.lock();
+			try {
+				for (int slot = 0; slot < segment.ring.length; slot++) {
+					Node<K, V> node = segment.ring[slot];
+					if (node != null) {
+						map.remove(node.key, node);
+					}
+				}
+				segment.clearRing();
+			} finally {
+				segment.unlock();
+			}
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	/*
+	 * Returns the estimated size of the cache in bytes, or 0 if there is no weigher
+	 */
+	public long bytes() {
+		long total = 0L;
+		for (int i = 0; i < segmentCount; i++) {
+			Segment<K, V> segment = segments[i];
+			segment.lock();
+			try {
+				total += segment.bytes;
+			} finally {
+				segment.unlock();
+			}
+		}
+		return total;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	public String getStatistics() {
+		return "hits = " + getHits() + ", misses = " + getMisses() + ", evictions = " + getEvictions() + ", size = " + size() + (maxBytes > 0 ? ", bytes = " + bytes() : "");
+	}
+}
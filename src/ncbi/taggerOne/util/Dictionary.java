@@ -21,9 +21,13 @@ public class Dictionary<E extends Serializable> implements Serializable {
 	private int hashCode;
 
 	public Dictionary() {
+		this(Constants.DEFAULT_CAPACITY);
+	}
+
+	public Dictionary(int expectedSize) {
 		frozen = false;
-		indexToElement = new ArrayList<E>();
-		elementToIndex = new TObjectIntHashMap<E>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, Integer.MIN_VALUE);
+		indexToElement = new ArrayList<E>(expectedSize);
+		elementToIndex = new TObjectIntHashMap<E>(expectedSize, Constants.DEFAULT_LOAD_FACTOR, Integer.MIN_VALUE);
 		hashCode = Integer.MIN_VALUE;
 	}
 
@@ -0,0 +1,94 @@
+package ncbi.taggerOne.util;
+
+/*
+ * An open addressing table from the String.hashCode() of each element of a frozen Dictionary<String> to its index, so that a feature name given as a
+ * prefix, '=' and a range of characters can be found without creating the String. Since String.hashCode() is a polynomial hash, the hash of the name can
+ * be computed from the hash of the prefix and the hash of the range, and the hash of a range can be extended one character at a time. Elements with the
+ * same hash are told apart by comparing characters, so lookups are exact.
+ */
+public class DictionaryHashIndex {
+
+	private Dictionary<String> dictionary;
+	private int[] slots; // Each slot holds 1 + the index of an element, or 0 if empty
+	private int mask;
+
+	public DictionaryHashIndex(Dictionary<String> dictionary) {
+		if (!dictionary.isFrozen()) {
+			throw new IllegalArgumentException("Dictionary must be frozen");
+		}
+		this.dictionary = dictionary;
+		int capacity = 2;
+		while (capacity < 2 * dictionary.size()) {
+			capacity *= 2;
+		}
+		slots = new int[capacity];
+		mask = capacity - 1;
+		for (int index = 0; index < dictionary.size(); index++) {
+			int slot = mix(dictionary.getElement(index).hashCode()) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = index + 1;
+		}
+	}
+
+	/*
+	 * Returns the same value as text.subSequence(start, end).toString().hashCode()
+	 */
+	public static int hash(CharSequence text, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return hash;
+	}
+
+	/*
+	 * Returns the same value as (prefix + "=" + text).hashCode(), given the hash and length of text
+	 */
+	public static int hash(String prefix, int textHash, int textLength) {
+		int hash = 31 * prefix.hashCode() + '=';
+		for (int i = 0; i < textLength; i++) {
+			hash *= 31;
+		}
+		return hash + textHash;
+	}
+
+	private static int mix(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+
+	/*
+	 * Returns the index of prefix + "=" + text.subSequence(start, end), or -1 if it is not in the dictionary; textHash must equal
+	 * hash(text, start, end)
+	 */
+	public int getIndex(String prefix, CharSequence text, int start, int end, int textHash) {
+		int slot = mix(hash(prefix, textHash, end - start)) & mask;
+		while (slots[slot] != 0) {
+			int index = slots[slot] - 1;
+			if (matches(dictionary.getElement(index), prefix, text, start, end)) {
+				return index;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static boolean matches(String element, String prefix, CharSequence text, int start, int end) {
+		int prefixLength = prefix.length();
+		if (element.length() != prefixLength + 1 + end - start || !element.startsWith(prefix) || element.charAt(prefixLength) != '=') {
+			return false;
+		}
+		int position = prefixLength + 1;
+		for (int i = start; i < end; i++) {
+			if (element.charAt(position) != text.charAt(i)) {
+				return false;
+			}
+			position++;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,147 @@
+package ncbi.taggerOne.util;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/*
+ * A frozen Dictionary of fixed size that maps every String to an index by hashing it, so no Strings are stored and any String has an index. Different
+ * Strings may share an index; getSign() gives each String a sign to multiply its value by, so that collisions cancel out in expectation instead of
+ * accumulating. The hash of a String can also be computed from several pieces of text, using startHash(), update() and the index and sign methods
+ * that take a hash, so that callers need not concatenate them.
+ */
+public class HashedDictionary extends Dictionary<String> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private int bits;
+	private int mask;
+
+	/*
+	 * Creates a dictionary with 2^bits indices
+	 */
+	public HashedDictionary(int bits) {
+		super(0);
+		if (bits < 1 || bits > 30) {
+			throw new IllegalArgumentException("Bits must be between 1 and 30: " + bits);
+		}
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public static long startHash() {
+		return FNV_OFFSET_BASIS;
+	}
+
+	public static long update(long hash, char c) {
+		return (hash ^ c) * FNV_PRIME;
+	}
+
+	public static long update(long hash, CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	public static long hash(String element) {
+		return update(startHash(), element, 0, element.length());
+	}
+
+	// Mixes all bits of the hash into the high and low bits, which are used for the sign and index
+	private static long mix(long hash) {
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	public int getIndex(long hash) {
+		return (int) mix(hash) & mask;
+	}
+
+	public double getSign(long hash) {
+		return mix(hash) < 0 ? -1.0 : 1.0;
+	}
+
+	@Override
+	public int getIndex(String element) {
+		return getIndex(hash(element));
+	}
+
+	public double getSign(String element) {
+		return getSign(hash(element));
+	}
+
+	@Override
+	public int addElement(String element) {
+		throw new IllegalStateException("Cannot add to a HashedDictionary");
+	}
+
+	/*
+	 * Returns a placeholder name for the index, since the Strings are not stored; getIndex() does not map it back to the index
+	 */
+	@Override
+	public String getElement(int index) {
+		if (index < 0 || index > mask) {
+			throw new IndexOutOfBoundsException("Index must be at least 0 but less than " + size() + ": " + index);
+		}
+		return "#" + index;
+	}
+
+	@Override
+	public List<String> getElements() {
+		return new AbstractList<String>() {
+
+			@Override
+			public String get(int index) {
+				return getElement(index);
+			}
+
+			@Override
+			public int size() {
+				return HashedDictionary.this.size();
+			}
+		};
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return true;
+	}
+
+	@Override
+	public void freeze() {
+		// Always frozen
+	}
+
+	@Override
+	public int size() {
+		return mask + 1;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		HashedDictionary other = (HashedDictionary) obj;
+		return bits == other.bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * bits + 1;
+	}
+}
@@ -34,7 +34,7 @@ public class LRUCache<K, V> implements Serializable {
 
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
-		this.cache = new LRULinkedHashMap<K, V>(initialCapacity, loadFactor, maxSize);
+		this.cache = Collections.synchronizedMap(new LRULinkedHashMap<K, V>(initialCapacity, loadFactor, maxSize));
 	}
 
 	private static class LRULinkedHashMap<K, V> extends LinkedHashMap<K, V> {
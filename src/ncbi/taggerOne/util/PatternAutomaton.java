@@ -0,0 +1,659 @@
+package ncbi.taggerOne.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/*
+ * A deterministic finite automaton that tests a string against many regular expressions in a single pass, with the same result as
+ * Pattern.matcher(text).matches() for each of them. Characters are first mapped to the classes of characters that no pattern distinguishes, so the
+ * transition table has one row of a few entries per state. The automaton is built eagerly and is immutable, so it can be shared by all threads.
+ *
+ * Only a subset of the java.util.regex syntax is supported: literals, escaped literals, character classes (with ranges, negation and the \d \s \w
+ * escapes), '.', groups, alternation and the greedy quantifiers '*', '+' and '?'. CASE_INSENSITIVE is the only flag supported. isSupported() checks
+ * whether a pattern can be compiled.
+ *
+ * Like java.util.regex, '.' and the negated classes read a surrogate pair as a single code point, and an unpaired surrogate as a code point of its own.
+ * The automaton still reads one char at a time: after a high surrogate, it is both past a complete code point and waiting for the low surrogate that
+ * would complete a pair. Other character classes must not contain surrogates, so they never match part of a pair.
+ */
+public class PatternAutomaton {
+
+	public static final int DEAD_STATE = 0;
+
+	private static final int MAX_STATES = 1 << 16;
+	private static final int[] NO_MATCHES = new int[0];
+
+	private int classCount;
+	private char[] charClasses; // Index is the char, value is the character class
+	private int[] transitions; // Entry (state * classCount + charClass) is the next state
+	private int[][] matches; // The indices of the patterns matched by each state
+	private int startState;
+
+	public PatternAutomaton(List<Pattern> patterns) {
+		Nfa nfa = new Nfa();
+		for (int patternIndex = 0; patternIndex < patterns.size(); patternIndex++) {
+			Pattern pattern = patterns.get(patternIndex);
+			Parser parser = new Parser(nfa, pattern);
+			int[] fragment = parser.parse();
+			nfa.addEpsilon(nfa.start, fragment[0]);
+			nfa.accepts.put(fragment[1], patternIndex);
+		}
+		buildCharClasses(nfa);
+		buildDfa(nfa);
+	}
+
+	/*
+	 * Returns whether the pattern uses only the syntax supported
+	 */
+	public static boolean isSupported(Pattern pattern) {
+		try {
+			new Parser(new Nfa(), pattern).parse();
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	public int getStartState() {
+		return startState;
+	}
+
+	public int getStateCount() {
+		return matches.length;
+	}
+
+	public int step(int state, char c) {
+		return transitions[state * classCount + charClasses[c]];
+	}
+
+	/*
+	 * Returns the indices of the patterns that match the text read to reach state, in increasing order; the array must not be modified
+	 */
+	public int[] getMatches(int state) {
+		return matches[state];
+	}
+
+	private void buildCharClasses(Nfa nfa) {
+		TreeSet<Integer> boundaries = new TreeSet<Integer>();
+		boundaries.add(0);
+		for (int[] ranges : nfa.charSets) {
+			for (int i = 0; i < ranges.length; i += 2) {
+				boundaries.add(ranges[i]);
+				boundaries.add(ranges[i + 1] + 1);
+			}
+		}
+		boundaries.remove(Character.MAX_VALUE + 1);
+		if (boundaries.size() > Character.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many character classes");
+		}
+		classCount = boundaries.size();
+		charClasses = new char[Character.MAX_VALUE + 1];
+		int charClass = -1;
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (boundaries.contains(c)) {
+				charClass++;
+			}
+			charClasses[c] = (char) charClass;
+		}
+	}
+
+	private void buildDfa(Nfa nfa) {
+		// After a high surrogate, a low surrogate completes the pair; it is not read as a code point of its own
+		int lowSurrogateStart = charClasses[Character.MIN_LOW_SURROGATE];
+		int lowSurrogateEnd = charClasses[Character.MAX_LOW_SURROGATE];
+		// Which character classes each transition accepts; each class is entirely inside or outside every character set
+		int[][] accepted = new int[nfa.charSets.size()][];
+		for (int setIndex = 0; setIndex < nfa.charSets.size(); setIndex++) {
+			int[] ranges = nfa.charSets.get(setIndex);
+			List<Integer> acceptedClasses = new ArrayList<Integer>();
+			for (int i = 0; i < ranges.length; i += 2) {
+				for (int charClass = charClasses[ranges[i]]; charClass <= charClasses[ranges[i + 1]]; charClass++) {
+					acceptedClasses.add(charClass);
+				}
+			}
+			accepted[setIndex] = toArray(acceptedClasses);
+		}
+		List<int[]> states = new ArrayList<int[]>();
+		Map<IntArrayKey, Integer> stateIndices = new HashMap<IntArrayKey, Integer>();
+		int[] dead = new int[0];
+		states.add(dead);
+		stateIndices.put(new IntArrayKey(dead), DEAD_STATE);
+		int[] start = nfa.closure(new int[] { nfa.start }, 1);
+		states.add(start);
+		stateIndices.put(new IntArrayKey(start), 1);
+		startState = 1;
+		Map<IntArrayKey, Integer> targetIndices = new HashMap<IntArrayKey, Integer>();
+		int[] table = new int[16 * classCount];
+		int[][] targets = new int[classCount][4];
+		int[] targetCounts = new int[classCount];
+		for (int stateIndex = 0; stateIndex < states.size(); stateIndex++) {
+			// Group the character transitions of the NFA states by character class
+			Arrays.fill(targetCounts, 0);
+			boolean afterHighSurrogate = false;
+			for (int nfaState : states.get(stateIndex)) {
+				afterHighSurrogate |= nfa.lowSurrogateStates.contains(nfaState);
+			}
+			for (int nfaState : states.get(stateIndex)) {
+				int setIndex = nfa.charSetIndex.get(nfaState);
+				if (setIndex >= 0) {
+					int target = nfa.charTarget.get(nfaState);
+					boolean completesPair = nfa.lowSurrogateStates.contains(nfaState);
+					for (int charClass : accepted[setIndex]) {
+						if (afterHighSurrogate && !completesPair && charClass >= lowSurrogateStart && charClass <= lowSurrogateEnd) {
+							continue;
+						}
+						if (targetCounts[charClass] == targets[charClass].length) {
+							targets[charClass] = Arrays.copyOf(targets[charClass], 2 * targets[charClass].length);
+						}
+						targets[charClass][targetCounts[charClass]] = target;
+						targetCounts[charClass]++;
+					}
+				}
+			}
+			for (int charClass = 0; charClass < classCount; charClass++) {
+				// Many character classes lead to the same NFA states, so the closure is only computed once for each set of targets
+				int[] classTargets = Arrays.copyOf(targets[charClass], targetCounts[charClass]);
+				Arrays.sort(classTargets);
+				IntArrayKey targetsKey = new IntArrayKey(classTargets);
+				Integer nextIndex = targetIndices.get(targetsKey);
+				if (nextIndex == null) {
+					int[] next = nfa.closure(classTargets, classTargets.length);
+					IntArrayKey key = new IntArrayKey(next);
+					nextIndex = stateIndices.get(key);
+					if (nextIndex == null) {
+						nextIndex = states.size();
+						if (nextIndex >= MAX_STATES) {
+							throw new IllegalStateException("Automaton requires more than " + MAX_STATES + " states");
+						}
+						states.add(next);
+						stateIndices.put(key, nextIndex);
+					}
+					targetIndices.put(targetsKey, nextIndex);
+				}
+				int position = stateIndex * classCount + charClass;
+				if (position >= table.length) {
+					table = Arrays.copyOf(table, 2 * table.length);
+				}
+				table[position] = nextIndex;
+			}
+		}
+		transitions = Arrays.copyOf(table, states.size() * classCount);
+		matches = new int[states.size()][];
+		for (int stateIndex = 0; stateIndex < states.size(); stateIndex++) {
+			TreeSet<Integer> patternIndices = new TreeSet<Integer>();
+			for (int nfaState : states.get(stateIndex)) {
+				Integer patternIndex = nfa.accepts.get(nfaState);
+				if (patternIndex != null) {
+					patternIndices.add(patternIndex);
+				}
+			}
+			matches[stateIndex] = patternIndices.isEmpty() ? NO_MATCHES : toArray(patternIndices);
+		}
+	}
+
+	private static int[] toArray(Iterable<Integer> values) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (Integer value : values) {
+			list.add(value);
+		}
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	private static class IntArrayKey {
+
+		private final int[] values;
+		private final int hashCode;
+
+		IntArrayKey(int[] values) {
+			this.values = values;
+			this.hashCode = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IntArrayKey && Arrays.equals(values, ((IntArrayKey) obj).values);
+		}
+	}
+
+	/*
+	 * A Thompson NFA: each state has either one character transition or any number of epsilon transitions
+	 */
+	private static class Nfa {
+
+		final List<int[]> charSets = new ArrayList<int[]>(); // Sorted, non-overlapping inclusive ranges: lo1, hi1, lo2, hi2, ...
+		final List<Integer> charSetIndex = new ArrayList<Integer>(); // -1 if the state has no character transition
+		final List<Integer> charTarget = new ArrayList<Integer>();
+		final List<List<Integer>> epsilons = new ArrayList<List<Integer>>();
+		final Map<Integer, Integer> accepts = new HashMap<Integer, Integer>(); // NFA state to pattern index
+		final Set<Integer> lowSurrogateStates = new HashSet<Integer>(); // States reached by a high surrogate, waiting for the low surrogate
+		final int start;
+		private int[] marks; // Used by closure(): marks[state] == mark if the state was already added
+		private int mark;
+		private int[] stack;
+		private int[] closureBuffer;
+
+		Nfa() {
+			start = addState();
+		}
+
+		int addState() {
+			charSetIndex.add(-1);
+			charTarget.add(-1);
+			epsilons.add(new ArrayList<Integer>());
+			return epsilons.size() - 1;
+		}
+
+		void addEpsilon(int from, int to) {
+			epsilons.get(from).add(to);
+		}
+
+		void addCharTransition(int from, int[] ranges, int to) {
+			charSets.add(ranges);
+			charSetIndex.set(from, charSets.size() - 1);
+			charTarget.set(from, to);
+		}
+
+		/*
+		 * Returns the sorted set of states reachable from the first count states by epsilon transitions
+		 */
+		int[] closure(int[] states, int count) {
+			if (marks == null || marks.length != epsilons.size()) {
+				marks = new int[epsilons.size()];
+				stack = new int[epsilons.size()];
+				closureBuffer = new int[epsilons.size()];
+				mark = 0;
+			}
+			mark++;
+			int[] closure = closureBuffer;
+			int size = 0;
+			int stackSize = 0;
+			for (int i = 0; i < count; i++) {
+				int state = states[i];
+				if (marks[state] != mark) {
+					marks[state] = mark;
+					closure[size++] = state;
+					stack[stackSize++] = state;
+				}
+			}
+			while (stackSize > 0) {
+				int state = stack[--stackSize];
+				for (int next : epsilons.get(state)) {
+					if (marks[next] != mark) {
+						marks[next] = mark;
+						closure[size++] = next;
+						stack[stackSize++] = next;
+					}
+				}
+			}
+			closure = Arrays.copyOf(closure, size);
+			Arrays.sort(closure);
+			return closure;
+		}
+	}
+
+	/*
+	 * Recursive descent parser producing NFA fragments, each represented as {start state, end state}
+	 */
+	private static class Parser {
+
+		private static final int[] DIGITS = { '0', '9' };
+		private static final int[] SPACES = { '\t', '\r', ' ', ' ' }; // Java: [ \t\n\x0B\f\r]
+		private static final int[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+		private static final int[] HIGH_SURROGATES = { Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE };
+		private static final int[] LOW_SURROGATES = { Character.MIN_LOW_SURROGATE, Character.MAX_LOW_SURROGATE };
+		private static final int[] DOT = { 0, '\n' - 1, '\n' + 1, '\r' - 1, '\r' + 1, '\u0084', '\u0086', '\u2027', '\u202A', Character.MAX_VALUE }; // Java: not a line terminator
+
+		private Nfa nfa;
+		private String regex;
+		private boolean caseInsensitive;
+		private int position;
+
+		Parser(Nfa nfa, Pattern pattern) {
+			this.nfa = nfa;
+			this.regex = pattern.pattern();
+			int flags = pattern.flags();
+			if ((flags & ~Pattern.CASE_INSENSITIVE) != 0) {
+				throw new IllegalArgumentException("Unsupported flags: " + flags);
+			}
+			caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+			position = 0;
+		}
+
+		int[] parse() {
+			int[] fragment = parseAlternation();
+			if (position < regex.length()) {
+				throw unsupported();
+			}
+			return fragment;
+		}
+
+		private IllegalArgumentException unsupported() {
+			return new IllegalArgumentException("Unsupported syntax at position " + position + " in pattern " + regex);
+		}
+
+		private int[] parseAlternation() {
+			int[] fragment = parseConcatenation();
+			if (position < regex.length() && regex.charAt(position) == '|') {
+				int start = nfa.addState();
+				int end = nfa.addState();
+				nfa.addEpsilon(start, fragment[0]);
+				nfa.addEpsilon(fragment[1], end);
+				while (position < regex.length() && regex.charAt(position) == '|') {
+					position++;
+					fragment = parseConcatenation();
+					nfa.addEpsilon(start, fragment[0]);
+					nfa.addEpsilon(fragment[1], end);
+				}
+				fragment = new int[] { start, end };
+			}
+			return fragment;
+		}
+
+		private int[] parseConcatenation() {
+			int start = nfa.addState();
+			int end = start;
+			while (position < regex.length() && regex.charAt(position) != '|' && regex.charAt(position) != ')') {
+				int[] fragment = parseRepetition();
+				nfa.addEpsilon(end, fragment[0]);
+				end = fragment[1];
+			}
+			return new int[] { start, end };
+		}
+
+		private int[] parseRepetition() {
+			int[] fragment = parseAtom();
+			while (position < regex.length()) {
+				char c = regex.charAt(position);
+				if (c != '*' && c != '+' && c != '?') {
+					if (c == '{') {
+						throw unsupported();
+					}
+					break;
+				}
+				position++;
+				if (position < regex.length() && (regex.charAt(position) == '?' || regex.charAt(position) == '+')) {
+					// Reluctant quantifiers match the same strings, but possessive quantifiers do not
+					if (regex.charAt(position) == '+') {
+						throw unsupported();
+					}
+					position++;
+				}
+				int start = nfa.addState();
+				int end = nfa.addState();
+				nfa.addEpsilon(start, fragment[0]);
+				nfa.addEpsilon(fragment[1], end);
+				if (c != '+') {
+					nfa.addEpsilon(start, end);
+				}
+				if (c != '?') {
+					nfa.addEpsilon(fragment[1], fragment[0]);
+				}
+				fragment = new int[] { start, end };
+			}
+			return fragment;
+		}
+
+		private int[] parseAtom() {
+			char c = regex.charAt(position);
+			if (c == '(') {
+				position++;
+				if (position < regex.length() && regex.charAt(position) == '?') {
+					if (position + 1 < regex.length() && regex.charAt(position + 1) == ':') {
+						position += 2;
+					} else {
+						throw unsupported();
+					}
+				}
+				int[] fragment = parseAlternation();
+				if (position >= regex.length() || regex.charAt(position) != ')') {
+					throw unsupported();
+				}
+				position++;
+				return fragment;
+			}
+			int[] ranges;
+			if (c == '[') {
+				position++;
+				ranges = parseCharClass();
+			} else if (c == '.') {
+				position++;
+				ranges = DOT;
+			} else if (c == '\\') {
+				position++;
+				ranges = parseEscape(false);
+			} else if (c == '^' || c == '$' || c == '*' || c == '+' || c == '?' || c == '{' || c == ')') {
+				throw unsupported();
+			} else {
+				position++;
+				ranges = new int[] { c, c };
+			}
+			if (caseInsensitive) {
+				ranges = addOtherCase(ranges);
+			}
+			int start = nfa.addState();
+			int end = nfa.addState();
+			int surrogates = countSurrogates(ranges);
+			if (surrogates == 0) {
+				nfa.addCharTransition(start, ranges, end);
+			} else if (surrogates == Character.MAX_LOW_SURROGATE - Character.MIN_HIGH_SURROGATE + 1) {
+				// Reads either a char, which may be an unpaired surrogate, or a surrogate pair
+				int single = nfa.addState();
+				nfa.addEpsilon(start, single);
+				nfa.addCharTransition(single, ranges, end);
+				int high = nfa.addState();
+				int low = nfa.addState();
+				nfa.addEpsilon(start, high);
+				nfa.addCharTransition(high, HIGH_SURROGATES, low);
+				nfa.addCharTransition(low, LOW_SURROGATES, end);
+				nfa.lowSurrogateStates.add(low);
+			} else {
+				// java.util.regex matches such classes against single chars or whole code points depending on the class
+				throw unsupported();
+			}
+			return new int[] { start, end };
+		}
+
+		private static int countSurrogates(int[] ranges) {
+			int count = 0;
+			for (int i = 0; i < ranges.length; i += 2) {
+				int low = Math.max(ranges[i], Character.MIN_HIGH_SURROGATE);
+				int high = Math.min(ranges[i + 1], Character.MAX_LOW_SURROGATE);
+				if (low <= high) {
+					count += high - low + 1;
+				}
+			}
+			return count;
+		}
+
+		private int[] parseEscape(boolean inCharClass) {
+			if (position >= regex.length()) {
+				throw unsupported();
+			}
+			char c = regex.charAt(position);
+			position++;
+			switch (c) {
+			case 'd':
+				return DIGITS;
+			case 'D':
+				return complement(DIGITS);
+			case 's':
+				return SPACES;
+			case 'S':
+				return complement(SPACES);
+			case 'w':
+				return WORD;
+			case 'W':
+				return complement(WORD);
+			case 't':
+				return new int[] { '\t', '\t' };
+			case 'n':
+				return new int[] { '\n', '\n' };
+			case 'r':
+				return new int[] { '\r', '\r' };
+			case 'f':
+				return new int[] { '\f', '\f' };
+			default:
+				if (Character.isLetterOrDigit(c)) {
+					// Other escapes, such as boundaries, back references and properties, are not supported
+					position--;
+					throw unsupported();
+				}
+				return new int[] { c, c };
+			}
+		}
+
+		private int[] parseCharClass() {
+			boolean negated = false;
+			if (position < regex.length() && regex.charAt(position) == '^') {
+				negated = true;
+				position++;
+			}
+			List<int[]> parts = new ArrayList<int[]>();
+			boolean first = true;
+			while (true) {
+				if (position >= regex.length()) {
+					throw unsupported();
+				}
+				char c = regex.charAt(position);
+				if (c == ']' && !first) {
+					position++;
+					break;
+				}
+				if (c == '[' || c == ']' || (c == '&' && position + 1 < regex.length() && regex.charAt(position + 1) == '&')) {
+					// Unions, intersections and a leading ']' are not supported
+					throw unsupported();
+				}
+				first = false;
+				int low;
+				if (c == '\\') {
+					position++;
+					int[] escaped = parseEscape(true);
+					if (escaped.length != 2 || escaped[0] != escaped[1]) {
+						parts.add(escaped);
+						continue;
+					}
+					low = escaped[0];
+				} else {
+					position++;
+					low = c;
+				}
+				int high = low;
+				if (position + 1 < regex.length() && regex.charAt(position) == '-' && regex.charAt(position + 1) != ']') {
+					position++;
+					char h = regex.charAt(position);
+					if (h == '[') {
+						throw unsupported();
+					}
+					if (h == '\\') {
+						position++;
+						int[] escaped = parseEscape(true);
+						if (escaped.length != 2 || escaped[0] != escaped[1]) {
+							throw unsupported();
+						}
+						high = escaped[0];
+					} else {
+						position++;
+						high = h;
+					}
+					if (high < low) {
+						throw unsupported();
+					}
+				}
+				parts.add(new int[] { low, high });
+			}
+			int[] ranges = normalize(parts);
+			if (negated) {
+				// Case folding applies before negation; the complement of a folded class is already closed under folding
+				if (caseInsensitive) {
+					ranges = addOtherCase(ranges);
+				}
+				ranges = complement(ranges);
+			}
+			return ranges;
+		}
+
+		/*
+		 * Merges any number of lists of inclusive ranges into one sorted list of non-overlapping, non-adjacent ranges
+		 */
+		private static int[] normalize(List<int[]> parts) {
+			List<int[]> ranges = new ArrayList<int[]>();
+			for (int[] part : parts) {
+				for (int i = 0; i < part.length; i += 2) {
+					ranges.add(new int[] { part[i], part[i + 1] });
+				}
+			}
+			Collections.sort(ranges, new Comparator<int[]>() {
+				@Override
+				public int compare(int[] range1, int[] range2) {
+					return Integer.compare(range1[0], range2[0]);
+				}
+			});
+			List<Integer> merged = new ArrayList<Integer>();
+			for (int[] range : ranges) {
+				int last = merged.size() - 1;
+				if (last > 0 && range[0] <= merged.get(last) + 1) {
+					merged.set(last, Math.max(merged.get(last), range[1]));
+				} else {
+					merged.add(range[0]);
+					merged.add(range[1]);
+				}
+			}
+			return toArray(merged);
+		}
+
+		private static int[] complement(int[] ranges) {
+			List<Integer> complement = new ArrayList<Integer>();
+			int next = 0;
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (ranges[i] > next) {
+					complement.add(next);
+					complement.add(ranges[i] - 1);
+				}
+				next = ranges[i + 1] + 1;
+			}
+			if (next <= Character.MAX_VALUE) {
+				complement.add(next);
+				complement.add((int) Character.MAX_VALUE);
+			}
+			return toArray(complement);
+		}
+
+		// CASE_INSENSITIVE without UNICODE_CASE only folds US-ASCII letters
+		private static int[] addOtherCase(int[] ranges) {
+			List<int[]> parts = new ArrayList<int[]>();
+			parts.add(ranges);
+			for (int i = 0; i < ranges.length; i += 2) {
+				addShifted(parts, ranges[i], ranges[i + 1], 'a', 'z', 'A' - 'a');
+				addShifted(parts, ranges[i], ranges[i + 1], 'A', 'Z', 'a' - 'A');
+			}
+			return normalize(parts);
+		}
+
+		// Adds the intersection of [low, high] and [from, to], shifted by offset
+		private static void addShifted(List<int[]> parts, int low, int high, int from, int to, int offset) {
+			int start = Math.max(low, from);
+			int end = Math.min(high, to);
+			if (start <= end) {
+				parts.add(new int[] { start + offset, end + offset });
+			}
+		}
+	}
+}
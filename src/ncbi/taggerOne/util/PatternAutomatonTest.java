@@ -0,0 +1,141 @@
+package ncbi.taggerOne.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ncbi.taggerOne.TrainModel;
+import ncbi.taggerOne.processing.features.FeatureProcessor;
+import ncbi.taggerOne.processing.features.segment.SegmentPatternFeatureProcessor;
+import ncbi.taggerOne.processing.features.token.TokenPatternFeatureProcessor;
+
+public class PatternAutomatonTest {
+
+	// A surrogate pair (U+1F600), the halves of another pair and a mathematical bold capital A (U+1D400)
+	private static final String[] CODE_POINTS = { "😀", "\uD835", "\uDC00", "𝐀" };
+
+	// Pieces that the TrainModel patterns look for, so that random text matches them often enough to be useful
+	private static final String[] PIECES = { "A", "Z", "a", "z", "I", "v", "x", "0", "9", ",", ".", "-", "+", "%", " ", "\t", "\n", "\r", "\u0085",
+			" ", "(", ")", "[", "]", "!", "\\", "_", "é", "α", "He", "Na", "Cl", "Fe", "SbTe", "Ala", "gly", "Trp", "Leucine", "Sodium",
+			"alpha", "BETA", "Omega", "II", "xiv" };
+
+	private static final String[] SUPPLEMENTARY_PATTERNS = { ".", "..", ".*", "a.b", "[^a]", "[^a][^a]", "[^a]+", "[^a-z]*x", "\\W", "\\D\\D", "\\S+", "[\\W0-9]",
+			".*[0-9].*", "[A-Z].*", "(.|a)(.|a)" };
+
+	@Test
+	public void testTrainModelPatterns() {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (FeatureProcessor featureProcessor : TrainModel.getFeatureProcessors(10)) {
+			if (featureProcessor instanceof TokenPatternFeatureProcessor) {
+				patterns.add(((TokenPatternFeatureProcessor) featureProcessor).getPattern());
+			} else if (featureProcessor instanceof SegmentPatternFeatureProcessor) {
+				patterns.add(((SegmentPatternFeatureProcessor) featureProcessor).getPattern());
+			}
+		}
+		assertFalse(patterns.isEmpty());
+		for (Pattern pattern : patterns) {
+			assertTrue(pattern.pattern(), PatternAutomaton.isSupported(pattern));
+		}
+		PatternAutomaton automaton = new PatternAutomaton(patterns);
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(6);
+			for (int j = 0; j < length; j++) {
+				if (random.nextInt(10) == 0) {
+					text.append(CODE_POINTS[random.nextInt(CODE_POINTS.length)]);
+				} else {
+					text.append(PIECES[random.nextInt(PIECES.length)]);
+				}
+			}
+			checkPrefixes(automaton, patterns, text.toString());
+		}
+	}
+
+	@Test
+	public void testSupplementaryCodePoints() {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String regex : SUPPLEMENTARY_PATTERNS) {
+			patterns.add(Pattern.compile(regex));
+			patterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+		}
+		PatternAutomaton automaton = new PatternAutomaton(patterns);
+		// Every string of up to 5 chars over an alphabet with paired, unpaired and reversed surrogates
+		char[] alphabet = { 'a', 'b', 'x', '1', ' ', '\n', '\uD83D', '\uDE00', '\uDC00' };
+		int[] digits = new int[5];
+		for (int length = 0; length <= digits.length; length++) {
+			Arrays.fill(digits, 0);
+			while (true) {
+				StringBuilder text = new StringBuilder();
+				for (int i = 0; i < length; i++) {
+					text.append(alphabet[digits[i]]);
+				}
+				checkPrefixes(automaton, patterns, text.toString());
+				int position = 0;
+				while (position < length && ++digits[position] == alphabet.length) {
+					digits[position] = 0;
+					position++;
+				}
+				if (position == length) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupportedSurrogateClasses() {
+		assertFalse(PatternAutomaton.isSupported(Pattern.compile("[\uD800-\uDBFF]")));
+		assertFalse(PatternAutomaton.isSupported(Pattern.compile("a\uDC00")));
+		assertFalse(PatternAutomaton.isSupported(Pattern.compile("😀")));
+		assertFalse(PatternAutomaton.isSupported(Pattern.compile("[^😀]")));
+		assertTrue(PatternAutomaton.isSupported(Pattern.compile("[^a]")));
+		assertTrue(PatternAutomaton.isSupported(Pattern.compile(".")));
+	}
+
+	// Compares every prefix, since CombinedPatternFeatureProcessor continues from the state reached for a shorter segment
+	private static void checkPrefixes(PatternAutomaton automaton, List<Pattern> patterns, String text) {
+		int state = automaton.getStartState();
+		for (int end = 0; end <= text.length(); end++) {
+			if (end > 0) {
+				state = automaton.step(state, text.charAt(end - 1));
+			}
+			String prefix = text.substring(0, end);
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int patternIndex = 0; patternIndex < patterns.size(); patternIndex++) {
+				if (patterns.get(patternIndex).matcher(prefix).matches()) {
+					expected.add(patternIndex);
+				}
+			}
+			List<Integer> actual = new ArrayList<Integer>();
+			for (int patternIndex : automaton.getMatches(state)) {
+				actual.add(patternIndex);
+			}
+			assertEquals(describe(prefix, patterns, expected, actual), expected, actual);
+		}
+	}
+
+	private static String describe(String text, List<Pattern> patterns, List<Integer> expected, List<Integer> actual) {
+		StringBuilder description = new StringBuilder("text");
+		for (int i = 0; i < text.length(); i++) {
+			description.append(String.format(" %04x", (int) text.charAt(i)));
+		}
+		List<Integer> different = new ArrayList<Integer>(expected);
+		different.removeAll(actual);
+		List<Integer> extra = new ArrayList<Integer>(actual);
+		extra.removeAll(expected);
+		different.addAll(extra);
+		for (int patternIndex : different) {
+			description.append(", pattern " + patterns.get(patternIndex).pattern());
+		}
+		return description.toString();
+	}
+}
@@ -59,6 +59,14 @@ public class RankedList<E> implements Serializable {
 		size = 0;
 	}
 
+	public RankedList<E> copy() {
+		RankedList<E> copy = new RankedList<E>(objects.length);
+		System.arraycopy(values, 0, copy.values, 0, size);
+		System.arraycopy(objects, 0, copy.objects, 0, size);
+		copy.size = size;
+		return copy;
+	}
+
 	public E getObject(int rank) {
 		if (rank >= size) {
 			throw new IndexOutOfBoundsException();
@@ -0,0 +1,115 @@
+package ncbi.taggerOne.util.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ncbi.taggerOne.util.Dictionary;
+import ncbi.taggerOne.util.vector.Vector;
+import ncbi.taggerOne.util.vector.Vector.VectorIterator;
+
+/*
+ * An immutable sparse matrix in compressed sparse row form: the entries of row r are in positions getRowStart(r) (inclusive) to getRowEnd(r) (exclusive)
+ * of the column index and value arrays, sorted by column. Three flat arrays replace one hash map per row, and a row can be read with a linear scan.
+ */
+public class CompressedSparseRowMatrix<R extends Serializable, C extends Serializable> extends Matrix<R, C> {
+
+	private static final long serialVersionUID = 1L;
+
+	private int[] rowOffsets;
+	private int[] columnIndices;
+	private double[] values;
+
+	/*
+	 * Creates a matrix from an array of row vectors, indexed by the row dictionary; null rows are empty
+	 */
+	public CompressedSparseRowMatrix(Dictionary<R> rowDictionary, Dictionary<C> columnDictionary, Vector<C>[] rows) {
+		super(rowDictionary, columnDictionary);
+		if (rows.length != numRows) {
+			throw new IllegalArgumentException("Number of rows must equal the size of the row dictionary: " + rows.length + " != " + numRows);
+		}
+		rowOffsets = new int[numRows + 1];
+		int entries = 0;
+		for (int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+			rowOffsets[rowIndex] = entries;
+			if (rows[rowIndex] != null) {
+				entries += rows[rowIndex].cardinality();
+			}
+		}
+		rowOffsets[numRows] = entries;
+		columnIndices = new int[entries];
+		values = new double[entries];
+		for (int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+			Vector<C> row = rows[rowIndex];
+			if (row == null) {
+				continue;
+			}
+			int start = rowOffsets[rowIndex];
+			int end = rowOffsets[rowIndex + 1];
+			VectorIterator iterator = row.getIterator();
+			int position = start;
+			while (iterator.next()) {
+				columnIndices[position] = iterator.getIndex();
+				position++;
+			}
+			Arrays.sort(columnIndices, start, end);
+			for (position = start; position < end; position++) {
+				values[position] = row.get(columnIndices[position]);
+			}
+		}
+	}
+
+	public CompressedSparseRowMatrix(DenseBySparseMatrix<R, C> matrix) {
+		this(matrix.getRowDictionary(), matrix.getColumnDictionary(), matrix.values);
+	}
+
+	public int getRowStart(int rowIndex) {
+		return rowOffsets[rowIndex];
+	}
+
+	public int getRowEnd(int rowIndex) {
+		return rowOffsets[rowIndex + 1];
+	}
+
+	/*
+	 * Returns the column indices of all entries; the array must not be modified
+	 */
+	public int[] getColumnIndices() {
+		return columnIndices;
+	}
+
+	/*
+	 * Returns the values of all entries; the array must not be modified
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	public int cardinality() {
+		return values.length;
+	}
+
+	@Override
+	public double get(int rowIndex, int columnIndex) {
+		checkIndices(rowIndex, columnIndex);
+		int position = Arrays.binarySearch(columnIndices, rowOffsets[rowIndex], rowOffsets[rowIndex + 1], columnIndex);
+		if (position < 0) {
+			return 0.0;
+		}
+		return values[position];
+	}
+
+	@Override
+	public void set(int rowIndex, int columnIndex, double value) {
+		throw new UnsupportedOperationException("CompressedSparseRowMatrix is immutable");
+	}
+
+	@Override
+	public void increment(Matrix<R, C> matrix) {
+		throw new UnsupportedOperationException("CompressedSparseRowMatrix is immutable");
+	}
+
+	@Override
+	public void increment(double value, Matrix<R, C> matrix) {
+		throw new UnsupportedOperationException("CompressedSparseRowMatrix is immutable");
+	}
+}
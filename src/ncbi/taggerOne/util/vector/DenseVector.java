@@ -65,7 +65,7 @@ public class DenseVector<E extends Serializable> extends Vector<E> {
 	@Override
 	public void increment(double factor, Vector<E> vector) {
 		checkDimensions(vector);
-		if (vector instanceof SparseVector) {
+		if (vector instanceof SparseVector || vector instanceof SortedSparseVector) {
 			VectorIterator iterator = vector.getIterator();
 			while (iterator.next()) {
 				int index = iterator.getIndex();
@@ -82,7 +82,7 @@ public class DenseVector<E extends Serializable> extends Vector<E> {
 	@Override
 	public void increment(Vector<E> vector) {
 		checkDimensions(vector);
-		if (vector instanceof SparseVector) {
+		if (vector instanceof SparseVector || vector instanceof SortedSparseVector) {
 			VectorIterator iterator = vector.getIterator();
 			while (iterator.next()) {
 				int index = iterator.getIndex();
@@ -116,6 +116,9 @@ public class DenseVector<E extends Serializable> extends Vector<E> {
 	@Override
 	public double dotProduct(Vector<E> vector) {
 		checkDimensions(vector);
+		if (vector instanceof SortedSparseVector) {
+			return vector.dotProduct(this);
+		}
 		// TODO PERFORMANCE Fix this to take advantage of sparsity in the other vector
 		double sum = 0.0;
 		for (int i = 0; i < dimensions; i++) {
@@ -0,0 +1,365 @@
+package ncbi.taggerOne.util.vector;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import ncbi.taggerOne.util.Dictionary;
+
+/*
+ * A sparse vector stored as parallel arrays of indices and values, kept sorted by index. Intended for vectors that are built once and then only read, such
+ * as feature vectors and mention vectors at inference time: reads need no hashing or boxing, and dot products between two of these vectors are a single
+ * merge. Entries added in increasing index order are appended; other updates use a binary search and may shift entries.
+ */
+public class SortedSparseVector<E extends Serializable> extends Vector<E> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final VectorFactory factory = new VectorFactory() {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public <E extends Serializable> Vector<E> create(Dictionary<E> dictionary) {
+			return new SortedSparseVector<E>(dictionary);
+		}
+	};
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	int[] indices; // package-level visibility for increased performance
+	double[] values; // package-level visibility for increased performance
+	int size; // package-level visibility for increased performance
+	private int hashCode;
+
+	public SortedSparseVector(Dictionary<E> dictionary) {
+		super(dictionary);
+		indices = new int[INITIAL_CAPACITY];
+		values = new double[INITIAL_CAPACITY];
+		size = 0;
+		hashCode = Integer.MIN_VALUE;
+	}
+
+	private SortedSparseVector(Dictionary<E> dictionary, int[] indices, double[] values, int size) {
+		super(dictionary);
+		this.indices = indices;
+		this.values = values;
+		this.size = size;
+		hashCode = Integer.MIN_VALUE;
+	}
+
+	/*
+	 * Creates a copy of any vector in this representation
+	 */
+	public static <E extends Serializable> SortedSparseVector<E> copyOf(Vector<E> vector) {
+		if (vector instanceof SortedSparseVector) {
+			return (SortedSparseVector<E>) vector.copy();
+		}
+		SortedSparseVector<E> copy = new SortedSparseVector<E>(vector.getDictionary());
+		VectorIterator iterator = vector.getIterator();
+		while (iterator.next()) {
+			copy.increment(iterator.getIndex(), iterator.getValue());
+		}
+		return copy;
+	}
+
+	@Override
+	public int cardinality() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * Returns the position of index, or (-(insertion point) - 1) if not present
+	 */
+	private int find(int index) {
+		if (size == 0 || indices[size - 1] < index) {
+			return -size - 1;
+		}
+		return Arrays.binarySearch(indices, 0, size, index);
+	}
+
+	private void insert(int position, int index, double value) {
+		if (size == indices.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, 2 * size);
+			indices = Arrays.copyOf(indices, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		if (position < size) {
+			System.arraycopy(indices, position, indices, position + 1, size - position);
+			System.arraycopy(values, position, values, position + 1, size - position);
+		}
+		indices[position] = index;
+		values[position] = value;
+		size++;
+	}
+
+	private void remove(int position) {
+		System.arraycopy(indices, position + 1, indices, position, size - position - 1);
+		System.arraycopy(values, position + 1, values, position, size - position - 1);
+		size--;
+	}
+
+	@Override
+	public double get(int index) {
+		checkIndex(index);
+		int position = find(index);
+		if (position < 0) {
+			return 0.0;
+		}
+		return values[position];
+	}
+
+	@Override
+	public void set(int index, double value) {
+		hashCode = Integer.MIN_VALUE;
+		checkIndex(index);
+		int position = find(index);
+		if (position >= 0) {
+			if (value == 0.0) {
+				remove(position);
+			} else {
+				values[position] = value;
+			}
+		} else if (value != 0.0) {
+			insert(-position - 1, index, value);
+		}
+	}
+
+	@Override
+	public void increment(int index, double value) {
+		if (value == 0.0) {
+			return;
+		}
+		hashCode = Integer.MIN_VALUE;
+		checkIndex(index);
+		int position = find(index);
+		if (position >= 0) {
+			values[position] += value;
+		} else {
+			insert(-position - 1, index, value);
+		}
+	}
+
+	@Override
+	public void increment(double factor, Vector<E> vector) {
+		checkDimensions(vector);
+		hashCode = Integer.MIN_VALUE;
+		if (vector instanceof SortedSparseVector) {
+			SortedSparseVector<E> sortedOther = (SortedSparseVector<E>) vector;
+			// Merge into new arrays
+			int[] mergedIndices = new int[size + sortedOther.size];
+			double[] mergedValues = new double[size + sortedOther.size];
+			int i = 0;
+			int j = 0;
+			int k = 0;
+			while (i < size && j < sortedOther.size) {
+				int index1 = indices[i];
+				int index2 = sortedOther.indices[j];
+				if (index1 < index2) {
+					mergedIndices[k] = index1;
+					mergedValues[k] = values[i];
+					i++;
+				} else if (index1 > index2) {
+					mergedIndices[k] = index2;
+					mergedValues[k] = factor * sortedOther.values[j];
+					j++;
+				} else {
+					mergedIndices[k] = index1;
+					mergedValues[k] = values[i] + factor * sortedOther.values[j];
+					i++;
+					j++;
+				}
+				k++;
+			}
+			while (i < size) {
+				mergedIndices[k] = indices[i];
+				mergedValues[k] = values[i];
+				i++;
+				k++;
+			}
+			while (j < sortedOther.size) {
+				mergedIndices[k] = sortedOther.indices[j];
+				mergedValues[k] = factor * sortedOther.values[j];
+				j++;
+				k++;
+			}
+			indices = mergedIndices;
+			values = mergedValues;
+			size = k;
+		} else {
+			VectorIterator iterator = vector.getIterator();
+			while (iterator.next()) {
+				int index = iterator.getIndex();
+				double value = iterator.getValue();
+				int position = find(index);
+				if (position >= 0) {
+					values[position] += factor * value;
+				} else {
+					insert(-position - 1, index, factor * value);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void increment(Vector<E> vector) {
+		increment(1.0, vector);
+	}
+
+	@Override
+	public double length() {
+		// Entries are summed in index order, so equal vectors have exactly equal lengths
+		double length = 0.0;
+		for (int i = 0; i < size; i++) {
+			length += values[i] * values[i];
+		}
+		return Math.sqrt(length);
+	}
+
+	@Override
+	public void normalize() {
+		hashCode = Integer.MIN_VALUE;
+		double length = length();
+		for (int i = 0; i < size; i++) {
+			values[i] = values[i] / length;
+		}
+	}
+
+	@Override
+	public double dotProduct(Vector<E> vector) {
+		checkDimensions(vector);
+		double sum = 0.0;
+		if (vector instanceof SortedSparseVector) {
+			SortedSparseVector<E> sortedOther = (SortedSparseVector<E>) vector;
+			int[] otherIndices = sortedOther.indices;
+			double[] otherValues = sortedOther.values;
+			int otherSize = sortedOther.size;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < otherSize) {
+				int index1 = indices[i];
+				int index2 = otherIndices[j];
+				if (index1 < index2) {
+					i++;
+				} else if (index1 > index2) {
+					j++;
+				} else {
+					sum += values[i] * otherValues[j];
+					i++;
+					j++;
+				}
+			}
+		} else if (vector instanceof DenseVector) {
+			double[] otherValues = ((DenseVector<E>) vector).values;
+			for (int i = 0; i < size; i++) {
+				sum += values[i] * otherValues[indices[i]];
+			}
+		} else if (vector instanceof SparseVector) {
+			SparseVector<E> sparseOther = (SparseVector<E>) vector;
+			for (int i = 0; i < size; i++) {
+				sum += values[i] * sparseOther.values.get(indices[i]);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				sum += values[i] * vector.get(indices[i]);
+			}
+		}
+		return sum;
+	}
+
+	@Override
+	public VectorIterator getIterator() {
+		return new SortedSparseVectorIterator();
+	}
+
+	private class SortedSparseVectorIterator implements VectorIterator {
+
+		private int position;
+
+		public SortedSparseVectorIterator() {
+			position = -1;
+		}
+
+		@Override
+		public boolean next() {
+			position++;
+			return position < size;
+		}
+
+		@Override
+		public int getIndex() {
+			return indices[position];
+		}
+
+		@Override
+		public double getValue() {
+			return values[position];
+		}
+
+	}
+
+	@Override
+	public String visualize() {
+		StringBuilder str = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				str.append(", ");
+			}
+			int index = indices[i];
+			str.append(index);
+			str.append(":");
+			str.append(dictionary.getElement(index));
+			str.append("=");
+			str.append(values[i]);
+		}
+		str.append("]");
+		return str.toString();
+	}
+
+	@Override
+	public Vector<E> copy() {
+		return new SortedSparseVector<E>(dictionary, Arrays.copyOf(indices, size), Arrays.copyOf(values, size), size);
+	}
+
+	@Override
+	public int hashCode() {
+		if (hashCode == Integer.MIN_VALUE) {
+			final int prime = 31;
+			int result = super.hashCode();
+			for (int i = 0; i < size; i++) {
+				result = prime * result + indices[i];
+				long v = Double.doubleToLongBits(values[i]);
+				result = prime * result + (int) (v ^ (v >>> 32));
+			}
+			hashCode = result;
+		}
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		SortedSparseVector<?> other = (SortedSparseVector<?>) obj;
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (indices[i] != other.indices[i] || values[i] != other.values[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "SortedSparseVector " + visualize();
+	}
+}
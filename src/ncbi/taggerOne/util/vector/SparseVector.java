@@ -45,6 +45,19 @@ public class SparseVector<E extends Serializable> extends Vector<E> {
 		hashCode = Integer.MIN_VALUE;
 	}
 
+	/*
+	 * Creates a vector from the entries in positions from (inclusive) to to (exclusive), given in the order returned by getIterator(). Inserting in that
+	 * order gives the same layout as deserializing the vector, so iteration order and therefore dot products are unchanged.
+	 */
+	public static <E extends Serializable> SparseVector<E> create(Dictionary<E> dictionary, int[] indices, double[] values, int from, int to) {
+		Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap(to - from);
+		map.defaultReturnValue(0.0);
+		for (int i = from; i < to; i++) {
+			map.put(indices[i], values[i]);
+		}
+		return new SparseVector<E>(dictionary, map);
+	}
+
 	@Override
 	public int cardinality() {
 		return values.size();
@@ -282,4 +295,4 @@ public class SparseVector<E extends Serializable> extends Vector<E> {
 	public String toString() {
 		return "SparseVector " + visualize();
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,250 @@
+package ncbi.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes checkpoints of an object, such as the best model so far during training, in the gzipped Java serialization format without blocking the caller
+ * for compression and disk I/O. The object is serialized into memory on the calling thread, which is the snapshot; a background thread then compresses
+ * it to a temporary file, renames that over the checkpoint file and deletes the previous checkpoint. A checkpoint that has not started writing when a
+ * newer one arrives is dropped in its favor. Each snapshot is an uncompressed copy of the object, and at most three are held at once: the one being
+ * written, the pending one and the one being taken. Failures on the background thread are rethrown by the next call to write() or await().
+ */
+public class CheckpointWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(CheckpointWriter.class);
+
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private Thread thread;
+	private Checkpoint pending;
+	private boolean writing;
+	private boolean closed;
+	private String previousFilename;
+	private Throwable failure;
+
+	public CheckpointWriter() {
+		thread = new DaemonThreadFactory(CheckpointWriter.class.getSimpleName()).newThread(new Runnable() {
+			@Override
+			public void run() {
+				writeCheckpoints();
+			}
+		});
+		thread.start();
+	}
+
+	/**
+	 * Sets a checkpoint written earlier, which is deleted once the first checkpoint from this writer is written.
+	 */
+	public synchronized void setPreviousFilename(String previousFilename) {
+		this.previousFilename = previousFilename;
+	}
+
+	/**
+	 * Takes a snapshot of the object and queues it to be written to the file; returns once the snapshot is taken.
+	 */
+	public void write(Serializable object, String filename) throws IOException {
+		checkFailure();
+		SnapshotOutputStream snapshot = new SnapshotOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(snapshot);
+		oos.writeObject(object);
+		oos.close();
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("CheckpointWriter is closed");
+			}
+			if (pending != null) {
+				logger.info("Skipping checkpoint " + pending.filename + ", superseded by " + filename);
+			}
+			pending = new Checkpoint(snapshot, filename);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until all queued checkpoints are written.
+	 */
+	public synchronized void await() throws IOException {
+		try {
+			while ((pending != null || writing) && failure == null) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Waits until all queued checkpoints are written, then stops the background thread.
+	 */
+	public void close() throws IOException {
+		try {
+			await();
+		} finally {
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+		}
+	}
+
+	private synchronized void checkFailure() throws IOException {
+		if (failure == null) {
+			return;
+		}
+		Throwable cause = failure;
+		failure = null;
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new RuntimeException(cause);
+	}
+
+	private void writeCheckpoints() {
+		while (true) {
+			Checkpoint checkpoint;
+			synchronized (this) {
+				while (pending == null && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null) {
+					return;
+				}
+				checkpoint = pending;
+				pending = null;
+				writing = true;
+			}
+			try {
+				writeCheckpoint(checkpoint);
+			} catch (Throwable e) {
+				logger.error("Could not write checkpoint " + checkpoint.filename, e);
+				synchronized (this) {
+					failure = e;
+				}
+			} finally {
+				synchronized (this) {
+					writing = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+		long start = System.currentTimeMillis();
+		Path path = Paths.get(checkpoint.filename);
+		Path temporaryPath = Paths.get(checkpoint.filename + TEMPORARY_SUFFIX);
+		OutputStream output = new FastGZIPOutputStream(new FileOutputStream(temporaryPath.toFile()));
+		try {
+			checkpoint.snapshot.writeTo(output);
+		} finally {
+			output.close();
+		}
+		try {
+			Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+		logger.info("Wrote checkpoint " + checkpoint.filename + " in " + (System.currentTimeMillis() - start) + " ms");
+		// Write was successful, delete previous checkpoint if there is one
+		if (previousFilename != null && !previousFilename.equals(checkpoint.filename)) {
+			logger.info("Deleting previous checkpoint " + previousFilename);
+			Files.deleteIfExists(Paths.get(previousFilename));
+		}
+		previousFilename = checkpoint.filename;
+	}
+
+	private static class Checkpoint {
+
+		protected SnapshotOutputStream snapshot;
+		protected String filename;
+
+		public Checkpoint(SnapshotOutputStream snapshot, String filename) {
+			this.snapshot = snapshot;
+			this.filename = filename;
+		}
+	}
+
+	// Keeps the bytes in fixed size chunks, so that growing never copies them and the snapshot is not limited to the 2 GB of a single array
+	private static class SnapshotOutputStream extends OutputStream {
+
+		private List<byte[]> chunks;
+		private int count;
+
+		public SnapshotOutputStream() {
+			chunks = new ArrayList<byte[]>();
+			count = CHUNK_SIZE;
+		}
+
+		@Override
+		public void write(int b) {
+			if (count == CHUNK_SIZE) {
+				addChunk();
+			}
+			chunks.get(chunks.size() - 1)[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			while (len > 0) {
+				if (count == CHUNK_SIZE) {
+					addChunk();
+				}
+				int length = Math.min(len, CHUNK_SIZE - count);
+				System.arraycopy(b, off, chunks.get(chunks.size() - 1), count, length);
+				count += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		private void addChunk() {
+			chunks.add(new byte[CHUNK_SIZE]);
+			count = 0;
+		}
+
+		public void writeTo(OutputStream output) throws IOException {
+			for (int i = 0; i < chunks.size(); i++) {
+				output.write(chunks.get(i), 0, i == chunks.size() - 1 ? count : CHUNK_SIZE);
+			}
+		}
+	}
+
+	// Trades compression ratio for speed; the output is still read by GZIPInputStream
+	private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+		public FastGZIPOutputStream(OutputStream out) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(Deflater.BEST_SPEED);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package ncbi.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointWriterTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("checkpoints", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	private String getFilename(String name) {
+		return new File(dir, name).getPath();
+	}
+
+	private static Object read(String filename) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(filename)));
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	@Test
+	public void testWritesAndRenamesAtomically() throws Exception {
+		// Replaced by the rename, not written over
+		FileOutputStream output = new FileOutputStream(getFilename("model.bin"));
+		output.write("old".getBytes());
+		output.close();
+		// Sizes around the snapshot chunk size, including one that spans several chunks
+		Random random = new Random(1);
+		CheckpointWriter writer = new CheckpointWriter();
+		for (int size : new int[] { 0, 1, (1 << 20) - 100, 1 << 20, (1 << 20) + 1, 3 * (1 << 20) + 12345 }) {
+			byte[] data = new byte[size];
+			random.nextBytes(data);
+			writer.write(data, getFilename("model.bin"));
+			writer.await();
+			assertArrayEquals("size " + size, data, (byte[]) read(getFilename("model.bin")));
+			assertFalse(new File(getFilename("model.bin.tmp")).exists());
+		}
+		writer.close();
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testDeletesPreviousCheckpoint() throws Exception {
+		new FileOutputStream(getFilename("model.0.bin")).close();
+		CheckpointWriter writer = new CheckpointWriter();
+		writer.setPreviousFilename(getFilename("model.0.bin"));
+		writer.write("first", getFilename("model.1.bin"));
+		writer.await();
+		assertFalse(new File(getFilename("model.0.bin")).exists());
+		writer.write("second", getFilename("model.2.bin"));
+		writer.await();
+		assertFalse(new File(getFilename("model.1.bin")).exists());
+		// Writing the same file again must not delete it
+		writer.write("third", getFilename("model.2.bin"));
+		writer.close();
+		assertEquals("third", read(getFilename("model.2.bin")));
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testSupersedesPendingCheckpoints() throws Exception {
+		CheckpointWriter writer = new CheckpointWriter();
+		// The background thread cannot take a pending checkpoint while the monitor is held, so only the last of these is written
+		synchronized (writer) {
+			for (int i = 1; i <= 3; i++) {
+				writer.write(i, getFilename("model." + i + ".bin"));
+			}
+		}
+		writer.close();
+		assertFalse(new File(getFilename("model.1.bin")).exists());
+		assertFalse(new File(getFilename("model.2.bin")).exists());
+		assertEquals(3, read(getFilename("model.3.bin")));
+		assertEquals(1, dir.listFiles().length);
+	}
+
+	@Test
+	public void testRethrowsFailure() throws Exception {
+		CheckpointWriter writer = new CheckpointWriter();
+		writer.write("lost", new File(new File(dir, "missing"), "model.bin").getPath());
+		try {
+			writer.await();
+			fail("Expected the failed write to be rethrown");
+		} catch (IOException e) {
+			// Expected
+		}
+		// The failure is reported once, and the writer keeps working
+		writer.write("kept", getFilename("model.bin"));
+		writer.close();
+		assertEquals("kept", read(getFilename("model.bin")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRejectsWriteAfterClose() throws IOException {
+		CheckpointWriter writer = new CheckpointWriter();
+		writer.close();
+		assertEquals(0, dir.listFiles().length);
+		writer.write("late", getFilename("model.bin"));
+	}
+}
@@ -0,0 +1,25 @@
+package ncbi.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that idle worker pools do not prevent the JVM from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	private String namePrefix;
+	private AtomicInteger threadCount;
+
+	public DaemonThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+		this.threadCount = new AtomicInteger();
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -1,31 +1,28 @@
 package ncbi.util;
 
-import it.unimi.dsi.fastutil.objects.Object2LongMap;
-import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/*
+ * Lock-free profiler. Timers are registered by name once and accumulate call counts and elapsed nanoseconds in striped counters, so threads never
+ * contend on a shared lock. Elapsed time is accumulated additively (subtract the start time, add the stop time), so a timer needs no per-thread state.
+ * Profiling is active only when debug logging is enabled at startup; otherwise every method returns immediately and the checks are removed by the JIT.
+ */
 public final class Profiler {
 
 	private static final Logger logger = LoggerFactory.getLogger(Profiler.class);
 
-	// TODO CONCURRENCY PERFORMANCE Use a read/write lock
-	protected static Object2LongMap<String> elapsedTimes; // protected for performance
-	private static Object2LongMap<String> counters;
-	private static ProfilerComparator comp;
-
-	static {
-		elapsedTimes = new Object2LongOpenHashMap<String>();
-		elapsedTimes.defaultReturnValue(0);
-		counters = new Object2LongOpenHashMap<String>();
-		counters.defaultReturnValue(0);
-		comp = new ProfilerComparator();
-	}
+	private static final boolean ENABLED = logger.isDebugEnabled();
+
+	private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
 
 	private Profiler() {
 		// Not instantiable
@@ -33,43 +30,161 @@ public final class Profiler {
 
 	// TODO Add functionality for tracking the number of calls with low elapsed time (especially 0)
 
-	// TODO Add functionality for only tracking the number of calls
-
 	// TODO Add functionality for tracking calls to constructors, as a sort of rudimentary memory profiling
 
-	public synchronized static void start(String name) {
-		if (!logger.isDebugEnabled()) {
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/*
+	 * Returns the timer with the given name, registering it if necessary. Callers on hot paths should keep the handle rather than looking it up per call.
+	 */
+	public static Timer timer(String name) {
+		Timer timer = timers.get(name);
+		if (timer == null) {
+			Timer newTimer = new Timer(name);
+			timer = timers.putIfAbsent(name, newTimer);
+			if (timer == null) {
+				timer = newTimer;
+			}
+		}
+		return timer;
+	}
+
+	/*
+	 * Returns a group of timers sharing the given name prefix, for timers distinguished by class or by index.
+	 */
+	public static TimerGroup timerGroup(String prefix) {
+		return new TimerGroup(prefix);
+	}
+
+	public static void start(String name) {
+		if (!ENABLED) {
 			return;
 		}
-		long currentCount = counters.getLong(name);
-		counters.put(name, currentCount + 1);
-		long currentElapsed = elapsedTimes.getLong(name);
-		elapsedTimes.put(name, currentElapsed - System.currentTimeMillis());
+		timer(name).start();
 	}
 
-	public synchronized static void stop(String name) {
-		if (!logger.isDebugEnabled()) {
+	public static void stop(String name) {
+		if (!ENABLED) {
 			return;
 		}
-		long currentElapsed = elapsedTimes.getLong(name);
-		elapsedTimes.put(name, currentElapsed + System.currentTimeMillis());
+		timer(name).stop();
 	}
 
-	public synchronized static void print(String prefix) {
-		if (!logger.isDebugEnabled()) {
+	public static void print(String prefix) {
+		if (!ENABLED) {
 			return;
 		}
-		List<String> names = new ArrayList<String>(elapsedTimes.keySet());
-		Collections.sort(names, comp);
-		for (String name : names) {
-			long count = counters.get(name); // FIXME Calling STOP without ever calling START causes a NullPointerException here
-			long elapsed = elapsedTimes.get(name);
-			double average = ((double) elapsed) / count;
-			logger.debug(prefix + name + " called " + count + " times, elapsed time = " + elapsed + "ms, average time = " + average + "ms");
+		List<Timer> snapshot = new ArrayList<Timer>(timers.size());
+		for (Timer timer : timers.values()) {
+			// Handles are registered ahead of use, so skip timers that were never started
+			if (timer.getCount() == 0) {
+				continue;
+			}
+			snapshot.add(new Timer(timer.name, timer.getCount(), timer.getElapsedNanos()));
+		}
+		Collections.sort(snapshot, new ProfilerComparator());
+		for (Timer timer : snapshot) {
+			long count = timer.getCount();
+			double elapsed = timer.getElapsedNanos() / 1000000.0;
+			double average = elapsed / count;
+			logger.debug(prefix + timer.name + " called " + count + " times, elapsed time = " + elapsed + "ms, average time = " + average + "ms");
+		}
+	}
+
+	public static final class Timer {
+
+		private final String name;
+		private final LongAdder count;
+		private final LongAdder elapsed;
+
+		protected Timer(String name) {
+			this.name = name;
+			this.count = new LongAdder();
+			this.elapsed = new LongAdder();
+		}
+
+		// Used for snapshots when printing
+		protected Timer(String name, long count, long elapsed) {
+			this(name);
+			this.count.add(count);
+			this.elapsed.add(elapsed);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void start() {
+			if (!ENABLED) {
+				return;
+			}
+			count.increment();
+			elapsed.add(-System.nanoTime());
+		}
+
+		public void stop() {
+			if (!ENABLED) {
+				return;
+			}
+			elapsed.add(System.nanoTime());
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		// Only meaningful when no calls are in progress
+		public long getElapsedNanos() {
+			return elapsed.sum();
+		}
+	}
+
+	public static final class TimerGroup {
+
+		private final String prefix;
+		private final ClassValue<Timer> classTimers;
+		private volatile Timer[] indexTimers;
+
+		protected TimerGroup(final String prefix) {
+			this.prefix = prefix;
+			this.classTimers = new ClassValue<Timer>() {
+				@Override
+				protected Timer computeValue(Class<?> type) {
+					return timer(prefix + type.getName());
+				}
+			};
+			this.indexTimers = new Timer[0];
+		}
+
+		public Timer get(Class<?> type) {
+			return classTimers.get(type);
+		}
+
+		public Timer get(int index) {
+			Timer[] current = indexTimers;
+			if (index < current.length) {
+				return current[index];
+			}
+			return grow(index);
+		}
+
+		private synchronized Timer grow(int index) {
+			Timer[] current = indexTimers;
+			if (index < current.length) {
+				return current[index];
+			}
+			Timer[] updated = Arrays.copyOf(current, Math.max(index + 1, 2 * current.length));
+			for (int i = current.length; i < updated.length; i++) {
+				updated[i] = timer(prefix + Integer.toString(i));
+			}
+			indexTimers = updated;
+			return updated[index];
 		}
 	}
 
-	private static class ProfilerComparator extends SimpleComparator<String> {
+	private static class ProfilerComparator extends SimpleComparator<Timer> {
 
 		private static final long serialVersionUID = 1L;
 
@@ -78,10 +193,8 @@ public final class Profiler {
 		}
 
 		@Override
-		public int compare(String name1, String name2) {
-			long elapsed1 = elapsedTimes.get(name1);
-			long elapsed2 = elapsedTimes.get(name2);
-			return Long.compare(elapsed2, elapsed1);
+		public int compare(Timer timer1, Timer timer2) {
+			return Long.compare(timer2.getElapsedNanos(), timer1.getElapsedNanos());
 		}
 
 	}
@@ -0,0 +1,161 @@
+package ncbi.util;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a stream of items with three stages: a reader thread, a pool of worker threads and a writer (the calling thread). The stages are connected by a
+ * bounded queue, so at most maxInFlight items are held in memory at once regardless of the size of the input. Items are written in the order they were
+ * read.
+ */
+public class StreamingProcessor<I, O> {
+
+	private static final Logger logger = LoggerFactory.getLogger(StreamingProcessor.class);
+
+	private int workers;
+	private int maxInFlight;
+
+	public StreamingProcessor(int workers, int maxInFlight) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Number of workers must be at least 1: " + workers);
+		}
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Maximum number of items in flight must be at least 1: " + maxInFlight);
+		}
+		this.workers = workers;
+		this.maxInFlight = maxInFlight;
+	}
+
+	public interface Source<I> {
+
+		/**
+		 * Returns the next item, or null when the input is exhausted.
+		 */
+		public I next() throws IOException;
+
+	}
+
+	public interface Worker<I, O> {
+
+		public O process(I input);
+
+	}
+
+	public interface Sink<O> {
+
+		public void write(O output) throws IOException;
+
+	}
+
+	/**
+	 * Reads every item from source, processes it with worker and writes the result to sink in input order. Returns the number of items processed.
+	 */
+	public long process(final Source<I> source, final Worker<I, O> worker, Sink<O> sink) throws IOException {
+		final ExecutorService workerPool = Executors.newFixedThreadPool(workers, new DaemonThreadFactory(StreamingProcessor.class.getSimpleName() + "-worker"));
+		// Futures are queued in input order; the queue capacity is what bounds the number of items in flight
+		final BlockingQueue<Future<O>> inFlight = new ArrayBlockingQueue<Future<O>>(maxInFlight);
+		final Future<O> endOfStream = new FutureTask<O>(new Callable<O>() {
+			@Override
+			public O call() {
+				return null;
+			}
+		});
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					I input = source.next();
+					while (input != null) {
+						final I item = input;
+						inFlight.put(workerPool.submit(new Callable<O>() {
+							@Override
+							public O call() {
+								return worker.process(item);
+							}
+						}));
+						input = source.next();
+					}
+					inFlight.put(endOfStream);
+				} catch (InterruptedException e) {
+					// Writer has stopped; exit quietly
+				} catch (Throwable e) {
+					// Includes Errors, so that the writer never waits for an item the reader will not send
+					putQuietly(inFlight, StreamingProcessor.<O> failed(e));
+				}
+			}
+		}, StreamingProcessor.class.getSimpleName() + "-reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		long count = 0;
+		try {
+			Future<O> future = inFlight.take();
+			while (future != endOfStream) {
+				sink.write(get(future));
+				count++;
+				future = inFlight.take();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			reader.interrupt();
+			workerPool.shutdownNow();
+		}
+		logger.debug("Processed " + count + " items");
+		return count;
+	}
+
+	private static <O> Future<O> failed(final Throwable e) {
+		FutureTask<O> task = new FutureTask<O>(new Callable<O>() {
+			@Override
+			public O call() throws Exception {
+				if (e instanceof Exception) {
+					throw (Exception) e;
+				}
+				if (e instanceof Error) {
+					throw (Error) e;
+				}
+				throw new RuntimeException(e);
+			}
+		});
+		task.run();
+		return task;
+	}
+
+	private static <O> void putQuietly(BlockingQueue<Future<O>> queue, Future<O> future) {
+		try {
+			queue.put(future);
+		} catch (InterruptedException e) {
+			// Writer has stopped; nothing left to report to
+		}
+	}
+
+	private static <O> O get(Future<O> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+}
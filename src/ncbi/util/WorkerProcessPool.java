@@ -0,0 +1,250 @@
+package ncbi.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ncbi.taggerOne.T1Constants;
+
+/*
+ * Keeps up to a fixed number of long-lived native processes running the specified command, and sends items to them through stdin and stdout instead of
+ * starting a process per item. Each item is written as its lines followed by a line containing only the end marker; the worker must reply with its
+ * result lines followed by the same end marker, and then wait for the next item. Workers are started when first needed. A worker that does not read
+ * the item and reply within the timeout, exits or fails is destroyed, and a new one is started for a later item.
+ * The command should be the tool itself, kept resident and reading items until stdin closes, or a script that execs it: destroying a worker only stops
+ * the process started, so a tool started by a script would be left running. A command that starts a new process for each item saves nothing.
+ */
+public class WorkerProcessPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(WorkerProcessPool.class);
+
+	public static final String DEFAULT_END_MARKER = "<END>";
+
+	private String command;
+	private String dir;
+	private long timeout;
+	private String endMarker;
+	private Semaphore permits;
+	private ConcurrentLinkedQueue<Worker> idleWorkers;
+	private DaemonThreadFactory threadFactory;
+	private AtomicInteger startedWorkers;
+	private volatile boolean closed;
+
+	public WorkerProcessPool(String command, String dir, int size, long timeout) {
+		this(command, dir, size, timeout, DEFAULT_END_MARKER);
+	}
+
+	public WorkerProcessPool(String command, String dir, int size, long timeout, String endMarker) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Number of workers must be at least 1: " + size);
+		}
+		this.command = command;
+		this.dir = dir;
+		this.timeout = timeout;
+		this.endMarker = endMarker;
+		this.permits = new Semaphore(size, true);
+		this.idleWorkers = new ConcurrentLinkedQueue<Worker>();
+		this.threadFactory = new DaemonThreadFactory(WorkerProcessPool.class.getSimpleName());
+		this.startedWorkers = new AtomicInteger();
+		this.closed = false;
+	}
+
+	/*
+	 * Sends the item to a worker and returns its reply, without the end marker, or null if the worker did not reply within the timeout or failed.
+	 */
+	public String process(String item) {
+		if (!accepts(item)) {
+			throw new IllegalArgumentException("Item may not contain a line equal to the end marker \"" + endMarker + "\"");
+		}
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		Worker worker = null;
+		try {
+			if (closed) {
+				throw new IllegalStateException("WorkerProcessPool is closed");
+			}
+			worker = idleWorkers.poll();
+			if (worker == null) {
+				worker = new Worker();
+			}
+			String result = worker.process(item);
+			if (result == null || closed) {
+				worker.destroy();
+			} else {
+				idleWorkers.add(worker);
+			}
+			return result;
+		} catch (IOException e) {
+			logger.warn("Could not start worker \"" + command + "\": " + e);
+			if (worker != null) {
+				worker.destroy();
+			}
+			return null;
+		} finally {
+			permits.release();
+		}
+	}
+
+	/*
+	 * Returns false if the item contains a line equal to the end marker, so it cannot be sent to a worker; callers should then process it another way.
+	 */
+	public boolean accepts(String item) {
+		for (String line : item.split("\n", -1)) {
+			if (line.equals(endMarker)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the number of worker processes started so far, including those started to replace failed workers.
+	 */
+	public int getStartedWorkerCount() {
+		return startedWorkers.get();
+	}
+
+	/*
+	 * Destroys the idle workers; workers still processing an item are destroyed when it completes.
+	 */
+	public void close() {
+		closed = true;
+		Worker worker = idleWorkers.poll();
+		while (worker != null) {
+			worker.destroy();
+			worker = idleWorkers.poll();
+		}
+	}
+
+	private class Worker {
+
+		// Added to the output queue when the worker's stdout closes
+		private final String endOfOutput = new String("<EOF>");
+
+		private Process process;
+		private BufferedWriter input;
+		private LinkedBlockingQueue<String> output;
+		// Writes each item, so that a worker that stops reading cannot block the caller past the timeout
+		private ExecutorService writer;
+
+		public Worker() throws IOException {
+			// A null dir runs the command in the working directory of this process
+			process = Runtime.getRuntime().exec(command, null, dir == null ? null : new File(dir));
+			startedWorkers.incrementAndGet();
+			input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), T1Constants.UTF8_FORMAT));
+			output = new LinkedBlockingQueue<String>();
+			writer = Executors.newSingleThreadExecutor(threadFactory);
+			final BufferedReader stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), T1Constants.UTF8_FORMAT));
+			threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String line = stdout.readLine();
+						while (line != null) {
+							output.add(line);
+							line = stdout.readLine();
+						}
+					} catch (IOException e) {
+						logger.debug("Error reading from worker \"" + command + "\": " + e);
+					} finally {
+						output.add(endOfOutput);
+					}
+				}
+			}).start();
+			final BufferedReader stderr = new BufferedReader(new InputStreamReader(process.getErrorStream(), T1Constants.UTF8_FORMAT));
+			threadFactory.newThread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String line = stderr.readLine();
+						while (line != null) {
+							logger.debug("Worker \"" + command + "\" error output: " + line);
+							line = stderr.readLine();
+						}
+					} catch (IOException e) {
+						// Ignore, the process was destroyed
+					}
+				}
+			}).start();
+		}
+
+		public String process(final String item) {
+			long deadline = System.currentTimeMillis() + timeout;
+			Future<Void> written = writer.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					input.write(item);
+					if (!item.endsWith("\n")) {
+						input.write("\n");
+					}
+					input.write(endMarker);
+					input.write("\n");
+					input.flush();
+					return null;
+				}
+			});
+			try {
+				written.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				logger.warn("Worker \"" + command + "\" did not read its input within " + timeout + " ms");
+				return null;
+			} catch (ExecutionException e) {
+				logger.warn("Worker \"" + command + "\" failed: " + e.getCause());
+				return null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			StringBuilder result = new StringBuilder();
+			try {
+				while (true) {
+					long remaining = deadline - System.currentTimeMillis();
+					String line = remaining > 0 ? output.poll(remaining, TimeUnit.MILLISECONDS) : output.poll();
+					if (line == null) {
+						logger.warn("Worker \"" + command + "\" did not reply within " + timeout + " ms");
+						return null;
+					}
+					if (line == endOfOutput) {
+						logger.warn("Worker \"" + command + "\" exited before replying");
+						return null;
+					}
+					if (line.equals(endMarker)) {
+						return result.toString();
+					}
+					result.append(line);
+					result.append("\n");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		public void destroy() {
+			// Closes the pipes, which also ends a write blocked on a worker that stopped reading
+			process.destroyForcibly();
+			writer.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package ncbi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ncbi.taggerOne.T1Constants;
+
+public class WorkerProcessPoolTest {
+
+	// Stands in for a tool such as Ab3P: replies to each item with its process id and each line of the item prefixed by "> "
+	private static final String WORKER_SCRIPT = "" //
+			+ "reply=\"\"\n" //
+			+ "while IFS= read -r line; do\n" //
+			+ "  case \"$line\" in\n" //
+			+ "    \"" + WorkerProcessPool.DEFAULT_END_MARKER + "\") printf 'pid=%s\\n%s%s\\n' \"$$\" \"$reply\" \"" + WorkerProcessPool.DEFAULT_END_MARKER + "\"; reply=\"\" ;;\n" //
+			+ "    CRASH) exit 1 ;;\n" //
+			+ "    SLEEP) sleep 5 ;;\n" //
+			+ "    *) reply=\"$reply> $line\n\" ;;\n" //
+			+ "  esac\n" //
+			+ "done\n";
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("workers", "");
+		dir.delete();
+		dir.mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, "worker.sh")), T1Constants.UTF8_FORMAT);
+		writer.write(WORKER_SCRIPT);
+		writer.close();
+	}
+
+	@After
+	public void tearDown() {
+		new File(dir, "worker.sh").delete();
+		dir.delete();
+	}
+
+	private static String getReply(String result) {
+		assertTrue(result, result.startsWith("pid="));
+		return result.substring(result.indexOf('\n') + 1);
+	}
+
+	@Test
+	public void testReusesWorkers() throws Exception {
+		final WorkerProcessPool pool = new WorkerProcessPool("sh worker.sh", dir.getPath(), 2, 5000);
+		try {
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 40; i++) {
+				final String item = "item " + i + "\nsecond line";
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return pool.process(item);
+					}
+				}));
+			}
+			for (int i = 0; i < 40; i++) {
+				assertEquals("> item " + i + "\n> second line\n", getReply(results.get(i).get()));
+			}
+			executor.shutdown();
+			assertTrue(pool.getStartedWorkerCount() <= 2);
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testRecyclesTimedOutWorker() {
+		WorkerProcessPool pool = new WorkerProcessPool("sh worker.sh", dir.getPath(), 1, 500);
+		try {
+			assertEquals("> first\n", getReply(pool.process("first")));
+			assertNull(pool.process("SLEEP"));
+			assertEquals("> after timeout\n", getReply(pool.process("after timeout")));
+			assertEquals(2, pool.getStartedWorkerCount());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testTimesOutWorkerThatStopsReading() {
+		// Never reads stdin, so an item larger than the pipe buffer blocks the write
+		WorkerProcessPool pool = new WorkerProcessPool("sleep 30", dir.getPath(), 1, 500);
+		try {
+			StringBuilder item = new StringBuilder();
+			for (int i = 0; i < 1 << 20; i++) {
+				item.append('x');
+			}
+			long start = System.currentTimeMillis();
+			assertNull(pool.process(item.toString()));
+			assertNull(pool.process(item.toString()));
+			assertTrue(System.currentTimeMillis() - start < 3000);
+			assertEquals(2, pool.getStartedWorkerCount());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testRecyclesCrashedWorker() {
+		WorkerProcessPool pool = new WorkerProcessPool("sh worker.sh", dir.getPath(), 1, 5000);
+		try {
+			assertNull(pool.process("CRASH"));
+			assertEquals("> after crash\n", getReply(pool.process("after crash")));
+			assertEquals(2, pool.getStartedWorkerCount());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsEndMarkerInItem() {
+		WorkerProcessPool pool = new WorkerProcessPool("sh worker.sh", dir.getPath(), 1, 5000);
+		try {
+			assertFalse(pool.accepts("text\n" + WorkerProcessPool.DEFAULT_END_MARKER));
+			assertTrue(pool.accepts("text " + WorkerProcessPool.DEFAULT_END_MARKER));
+			pool.process("text\n" + WorkerProcessPool.DEFAULT_END_MARKER);
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testRunsInWorkingDirectoryWithoutDir() {
+		WorkerProcessPool pool = new WorkerProcessPool("sh " + new File(dir, "worker.sh").getAbsolutePath(), null, 1, 5000);
+		try {
+			assertEquals("> no dir\n", getReply(pool.process("no dir")));
+		} finally {
+			pool.close();
+		}
+	}
+}